@@ -0,0 +1,218 @@
+package scheduler.service;
+
+import scheduler.store.AccountStore;
+import scheduler.store.Credentials;
+import scheduler.store.Storage;
+import scheduler.util.Config;
+import scheduler.util.PasswordHasher;
+import scheduler.util.Util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+// Streams a "username,password" CSV into Patients or Caregivers, one chunk at a time:
+// duplicates are found with one IN (...) query per chunk, salts and hashes are computed in
+// parallel on a ForkJoinPool, and the chunk is written with one batched insert (see
+// AccountStore.existing and insertAll). Each chunk is committed before the next one is read,
+// so duplicates across chunks show up in the next query and memory stays proportional to the
+// chunk size, not the file size.
+public class AccountImporter {
+    // SQL Server accepts at most 2100 parameters per statement
+    private static final int MAX_CHUNK_SIZE = 2000;
+
+    private final AccountService.Role role;
+    private final int chunkSize;
+    private final ForkJoinPool hashPool;
+
+    public AccountImporter(AccountService.Role role, int chunkSize, ForkJoinPool hashPool) {
+        if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Chunk size must be between 1 and " + MAX_CHUNK_SIZE);
+        }
+        this.role = role;
+        this.chunkSize = chunkSize;
+        this.hashPool = hashPool;
+    }
+
+    public static AccountImporter fromConfig(AccountService.Role role) {
+        return new AccountImporter(role, Config.getInt("scheduler.import.chunkSize", 1000),
+                ForkJoinPool.commonPool());
+    }
+
+    public Report importCsv(BufferedReader reader) throws IOException, SQLException {
+        long start = System.nanoTime();
+        Report report = new Report();
+        List<Row> chunk = new ArrayList<>(chunkSize);
+        Set<String> chunkNames = new HashSet<>();
+        String line;
+        boolean first = true;
+        while ((line = reader.readLine()) != null) {
+            Row row = parse(line);
+            if (first) {
+                first = false;
+                if (row != null && row.username.equalsIgnoreCase("username")) {
+                    continue;
+                }
+            }
+            report.rowsRead++;
+            if (row == null) {
+                report.invalid++;
+                continue;
+            }
+            if (!chunkNames.add(row.username)) {
+                report.duplicatesInFile++;
+                continue;
+            }
+            chunk.add(row);
+            if (chunk.size() == chunkSize) {
+                writeChunk(chunk, report);
+                chunk.clear();
+                chunkNames.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            writeChunk(chunk, report);
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    private void writeChunk(List<Row> chunk, Report report) throws SQLException {
+        // only usernames the filter cannot rule out need the IN (...) query
+        UsernameFilter filter = UsernameFilter.getInstance();
+        AccountStore accounts = Storage.getInstance().accounts();
+        List<String> maybeTaken = new ArrayList<>();
+        for (Row row : chunk) {
+            if (filter.mightExist(role, row.username)) {
+                maybeTaken.add(row.username);
+            }
+        }
+        Set<String> taken = accounts.existing(role, maybeTaken);
+        List<Row> fresh = new ArrayList<>(chunk.size());
+        for (Row row : chunk) {
+            if (taken.contains(row.username)) {
+                report.duplicatesInDatabase++;
+            } else {
+                fresh.add(row);
+            }
+        }
+        if (fresh.isEmpty()) {
+            return;
+        }
+
+        hashAll(fresh);
+
+        PasswordHasher hasher = PasswordHasher.getInstance();
+        List<String> usernames = new ArrayList<>(fresh.size());
+        List<Credentials> credentials = new ArrayList<>(fresh.size());
+        for (Row row : fresh) {
+            usernames.add(row.username);
+            credentials.add(new Credentials(row.salt, row.hash, hasher.getAlgorithm(), hasher.getIterations()));
+        }
+        boolean[] inserted = accounts.insertAll(role, usernames, credentials);
+        for (int i = 0; i < fresh.size(); i++) {
+            if (inserted[i]) {
+                report.imported++;
+                filter.add(role, usernames.get(i));
+                CredentialCache.getInstance().invalidate(role, usernames.get(i));
+            } else {
+                // created by somebody else since the query
+                report.duplicatesInDatabase++;
+            }
+        }
+    }
+
+    // PBKDF2 dominates the cost of an import, so the chunk is hashed in parallel on the import's
+    // own pool rather than queued behind logins on the hasher's
+    private void hashAll(List<Row> rows) throws SQLException {
+        try {
+            hashPool.submit(() -> rows.parallelStream().forEach(row -> {
+                row.salt = Util.generateSalt();
+                row.hash = PasswordHasher.getInstance().hashHere(row.password, row.salt);
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while hashing passwords", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to hash passwords", e.getCause());
+        }
+    }
+
+    // "username,password"; surrounding whitespace is ignored, passwords may not contain commas
+    private static Row parse(String line) {
+        int comma = line.indexOf(',');
+        if (comma < 0 || line.indexOf(',', comma + 1) >= 0) {
+            return null;
+        }
+        String username = line.substring(0, comma).trim();
+        String password = line.substring(comma + 1).trim();
+        if (username.isEmpty() || password.isEmpty() || username.length() > 255) {
+            return null;
+        }
+        return new Row(username, password);
+    }
+
+    private static class Row {
+        private final String username;
+        private final String password;
+        private byte[] salt;
+        private byte[] hash;
+
+        private Row(String username, String password) {
+            this.username = username;
+            this.password = password;
+        }
+    }
+
+    public static class Report {
+        private long rowsRead;
+        private long imported;
+        private long duplicatesInFile;
+        private long duplicatesInDatabase;
+        private long invalid;
+        private long elapsedNanos;
+
+        public long getRowsRead() {
+            return rowsRead;
+        }
+
+        public long getImported() {
+            return imported;
+        }
+
+        public long getDuplicatesInFile() {
+            return duplicatesInFile;
+        }
+
+        public long getDuplicatesInDatabase() {
+            return duplicatesInDatabase;
+        }
+
+        public long getInvalid() {
+            return invalid;
+        }
+
+        public long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : rowsRead / (elapsedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Imported %d of %d rows in %d ms (%.1f rows/s): "
+                            + "%d duplicates in file, %d already in database, %d invalid",
+                    imported, rowsRead, getElapsedMillis(), getRowsPerSecond(),
+                    duplicatesInFile, duplicatesInDatabase, invalid);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package scheduler.service;
+
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+import scheduler.store.Storage;
+import scheduler.util.Util;
+
+import java.sql.SQLException;
+
+public class AccountService {
+
+    public enum Role {
+        PATIENT,
+        CAREGIVER
+    }
+
+    private AccountService() {
+    }
+
+    public static boolean usernameExists(Role role, String username) throws SQLException {
+        // most usernames being checked are new, and the filter rules those out without a query
+        UsernameFilter filter = UsernameFilter.getInstance();
+        if (!filter.mightExist(role, username)) {
+            return false;
+        }
+        if (Storage.getInstance().accounts().exists(role, username)) {
+            return true;
+        }
+        filter.recordFalsePositive(role);
+        return false;
+    }
+
+    // returns false if the username is already taken
+    public static boolean createAccount(Role role, String username, String password) throws SQLException {
+        if (usernameExists(role, username)) {
+            return false;
+        }
+        byte[] salt = Util.generateSalt();
+        byte[] hash = Util.generateHash(password, salt);
+        if (role == Role.PATIENT) {
+            new Patient.PatientBuilder(username, salt, hash).build().saveToDB();
+        } else {
+            new Caregiver.CaregiverBuilder(username, salt, hash).build().saveToDB();
+        }
+        return true;
+    }
+}
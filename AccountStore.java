@@ -0,0 +1,34 @@
+package scheduler.store;
+
+import scheduler.service.AccountService;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+// Patients and Caregivers. Usernames are compared case-insensitively, like the database does.
+public interface AccountStore {
+
+    // null if there is no such account
+    Credentials find(AccountService.Role role, String username) throws SQLException;
+
+    boolean exists(AccountService.Role role, String username) throws SQLException;
+
+    // the usernames of the collection that are taken, as given
+    Set<String> existing(AccountService.Role role, Collection<String> usernames) throws SQLException;
+
+    // fails (SQLIntegrityConstraintViolationException) if the username is taken
+    void insert(AccountService.Role role, String username, Credentials credentials) throws SQLException;
+
+    // inserts every account that is not taken; returns which ones were inserted
+    boolean[] insertAll(AccountService.Role role, List<String> usernames, List<Credentials> credentials)
+            throws SQLException;
+
+    void updateCredentials(AccountService.Role role, String username, Credentials credentials) throws SQLException;
+
+    long count(AccountService.Role role) throws SQLException;
+
+    void forEachUsername(AccountService.Role role, Consumer<String> action) throws SQLException;
+}
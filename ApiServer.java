@@ -0,0 +1,469 @@
+package scheduler.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import scheduler.Session;
+import scheduler.SessionRegistry;
+import scheduler.db.ConnectionManager;
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+import scheduler.service.AccountService;
+import scheduler.service.AppointmentService;
+import scheduler.service.InventoryService;
+import scheduler.service.Reservation;
+import scheduler.service.ReservationCoordinator;
+import scheduler.service.ScheduleService;
+import scheduler.util.Config;
+import scheduler.util.JsonReader;
+import scheduler.util.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// JSON-over-HTTP front end for kiosks and web clients. Every request runs on its own virtual thread;
+// the logged-in user is looked up from the "Authorization: Bearer <token>" header instead of
+// living in the process.
+//
+//   POST   /patients                 {"username", "password"}  create a patient
+//   POST   /caregivers               {"username", "password"}  create a caregiver
+//   POST   /sessions/patient         {"username", "password"}  log in, returns a token
+//   POST   /sessions/caregiver       {"username", "password"}  log in, returns a token
+//   DELETE /sessions                                           log out
+//   GET    /schedule?date=yyyy-mm-dd                           available caregivers and vaccines
+//   POST   /reservations             {"date", "vaccine"}       reserve (patients)
+//   GET    /appointments?from=&limit=&after=                   the user's appointments, a page at a time
+//   DELETE /appointments/{id}                                  cancel an appointment
+//   POST   /availabilities           {"date"}                  upload availability (caregivers)
+//   POST   /vaccines/{name}/doses    {"doses"}                 add doses (caregivers)
+public class ApiServer {
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    // the most appointments one GET /appointments returns; "next" leads to the rest
+    private static final int PAGE_SIZE = Config.getInt("scheduler.http.pageSize", 100);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final SessionRegistry sessions;
+
+    public ApiServer(int port, SessionRegistry sessions) throws IOException {
+        this.sessions = sessions;
+        this.server = HttpServer.create(new InetSocketAddress(port), Config.getInt("scheduler.http.backlog", 256));
+        this.executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/patients", new CreateAccountHandler(AccountService.Role.PATIENT));
+        server.createContext("/caregivers", new CreateAccountHandler(AccountService.Role.CAREGIVER));
+        server.createContext("/sessions", new SessionHandler());
+        server.createContext("/schedule", new ScheduleHandler());
+        server.createContext("/reservations", new ReservationHandler());
+        server.createContext("/appointments", new AppointmentHandler());
+        server.createContext("/availabilities", new AvailabilityHandler());
+        server.createContext("/vaccines", new DosesHandler());
+    }
+
+    public static void main(String[] args) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Config.getInt("scheduler.http.port", 8080);
+        ApiServer api;
+        try {
+            api = new ApiServer(port, SessionRegistry.getInstance());
+        } catch (IOException e) {
+            System.out.println("Failed to start HTTP API on port " + port);
+            e.printStackTrace();
+            return;
+        }
+        api.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            api.stop(Config.getInt("scheduler.http.shutdownGraceSeconds", 5));
+            InventoryService.getInstance().shutdown();
+            ConnectionManager.shutdown();
+        }, "scheduler-http-shutdown"));
+        System.out.println("Scheduler HTTP API listening on port " + api.getPort());
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    // port 0 binds an ephemeral port, which is handy for local testing with java.net.http.HttpClient
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop(int graceSeconds) {
+        server.stop(graceSeconds);
+        executor.shutdown();
+    }
+
+    private static class ApiException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private interface Body {
+        void write(JsonWriter json) throws IOException, SQLException;
+    }
+
+    private abstract class Endpoint implements HttpHandler {
+
+        abstract void serve(HttpExchange exchange, String method, String subPath) throws Exception;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                // already decoded, so a '+' in a vaccine name stays a '+'
+                String path = exchange.getRequestURI().getPath();
+                String context = exchange.getHttpContext().getPath();
+                String subPath = path.length() > context.length() ? path.substring(context.length() + 1) : "";
+                serve(exchange, exchange.getRequestMethod(), subPath);
+            } catch (ApiException e) {
+                error(exchange, e.status, e.getMessage());
+            } catch (IllegalArgumentException e) {
+                error(exchange, 400, e.getMessage() == null ? "Bad request" : e.getMessage());
+            } catch (SQLException e) {
+                e.printStackTrace();
+                error(exchange, 500, "Database error, please try again");
+            } catch (IOException e) {
+                // the client went away while we were writing
+            } catch (Exception e) {
+                e.printStackTrace();
+                error(exchange, 500, "Internal error");
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    private class CreateAccountHandler extends Endpoint {
+        private final AccountService.Role role;
+
+        CreateAccountHandler(AccountService.Role role) {
+            this.role = role;
+        }
+
+        @Override
+        void serve(HttpExchange exchange, String method, String subPath) throws Exception {
+            requireRoute(method, subPath, "POST", "");
+            Map<String, String> body = readBody(exchange);
+            String username = required(body, "username");
+            String password = required(body, "password");
+            if (!AccountService.createAccount(role, username, password)) {
+                throw new ApiException(409, "Username taken, try again!");
+            }
+            respond(exchange, 201, json -> json.beginObject().field("username", username).endObject());
+        }
+    }
+
+    private class SessionHandler extends Endpoint {
+        @Override
+        void serve(HttpExchange exchange, String method, String subPath) throws Exception {
+            if (method.equals("DELETE") && subPath.isEmpty()) {
+                Session session = sessions.remove(bearerToken(exchange));
+                if (session == null) {
+                    throw new ApiException(401, "Please login first.");
+                }
+                exchange.sendResponseHeaders(204, -1);
+                return;
+            }
+            if (!method.equals("POST") || !(subPath.equals("patient") || subPath.equals("caregiver"))) {
+                throw new ApiException(404, "Not found");
+            }
+            Map<String, String> body = readBody(exchange);
+            String username = required(body, "username");
+            String password = required(body, "password");
+            Session session = new Session(new PrintWriter(Writer.nullWriter()));
+            if (subPath.equals("patient")) {
+                Patient patient = new Patient.PatientGetter(username, password).get();
+                if (patient == null) {
+                    throw new ApiException(401, "Login failed.");
+                }
+                session.setCurrentPatient(patient);
+            } else {
+                Caregiver caregiver = new Caregiver.CaregiverGetter(username, password).get();
+                if (caregiver == null) {
+                    throw new ApiException(401, "Login failed.");
+                }
+                session.setCurrentCaregiver(caregiver);
+            }
+            String token = sessions.register(session);
+            respond(exchange, 200, json -> json.beginObject()
+                    .field("token", token)
+                    .field("role", subPath)
+                    .field("username", username)
+                    .endObject());
+        }
+    }
+
+    private class ScheduleHandler extends Endpoint {
+        @Override
+        void serve(HttpExchange exchange, String method, String subPath) throws Exception {
+            requireRoute(method, subPath, "GET", "");
+            requireSession(exchange);
+            String date = queryParameter(exchange, "date");
+            if (date == null) {
+                throw new IllegalArgumentException("Missing query parameter: date");
+            }
+            Date d = Date.valueOf(date);
+            SortedSet<String> caregivers = ScheduleService.availableCaregivers(d);
+            Map<String, Integer> vaccines = ScheduleService.vaccineInventory();
+            respond(exchange, 200, json -> {
+                json.beginObject().field("date", d.toString());
+                json.name("caregivers").beginArray();
+                for (String caregiver : caregivers) {
+                    json.value(caregiver);
+                }
+                json.endArray();
+                json.name("vaccines").beginArray();
+                for (Map.Entry<String, Integer> vaccine : vaccines.entrySet()) {
+                    json.beginObject()
+                            .field("name", vaccine.getKey())
+                            .field("doses", vaccine.getValue())
+                            .endObject();
+                }
+                json.endArray().endObject();
+            });
+        }
+    }
+
+    private class ReservationHandler extends Endpoint {
+        @Override
+        void serve(HttpExchange exchange, String method, String subPath) throws Exception {
+            requireRoute(method, subPath, "POST", "");
+            Patient patient = requireSession(exchange).getCurrentPatient();
+            if (patient == null) {
+                throw new ApiException(403, "Please login as a patient!");
+            }
+            Map<String, String> body = readBody(exchange);
+            Date date = Date.valueOf(required(body, "date"));
+            String vaccineName = required(body, "vaccine");
+            Reservation reservation = ReservationCoordinator.getInstance().reserve(patient.getUsername(), date, vaccineName);
+            switch (reservation.getStatus()) {
+                case RESERVED:
+                    respond(exchange, 201, json -> json.beginObject()
+                            .field("appointmentId", reservation.getAppointmentId())
+                            .field("caregiver", reservation.getCaregiverUsername())
+                            .field("date", date.toString())
+                            .field("vaccine", vaccineName)
+                            .endObject());
+                    return;
+                case NO_CAREGIVER:
+                    throw new ApiException(409, "no caregiver available");
+                case NO_VACCINE:
+                    throw new ApiException(404, "No Vaccine!");
+                case NO_DOSES:
+                    throw new ApiException(409, "Not enough available doses!");
+                default:
+                    throw new ApiException(503, "Please try again!");
+            }
+        }
+    }
+
+    private class AppointmentHandler extends Endpoint {
+        @Override
+        void serve(HttpExchange exchange, String method, String subPath) throws Exception {
+            Session session = requireSession(exchange);
+            Patient patient = session.getCurrentPatient();
+            Caregiver caregiver = session.getCurrentCaregiver();
+            if (method.equals("GET") && subPath.isEmpty()) {
+                AccountService.Role role = patient != null ? AccountService.Role.PATIENT : AccountService.Role.CAREGIVER;
+                String username = patient != null ? patient.getUsername() : caregiver.getUsername();
+                String counterpart = patient != null ? "caregiver" : "patient";
+                // paging: ?from=<date>&limit=<n>&after=<appointment id>, at most PAGE_SIZE a page
+                String fromParameter = queryParameter(exchange, "from");
+                String limitParameter = queryParameter(exchange, "limit");
+                LocalDate from = fromParameter == null ? null : Date.valueOf(fromParameter).toLocalDate();
+                int limit = limitParameter == null ? PAGE_SIZE : Integer.parseInt(limitParameter);
+                if (limit <= 0) {
+                    throw new IllegalArgumentException("limit must be positive");
+                }
+                int pageSize = Math.min(limit, PAGE_SIZE);
+                String after = queryParameter(exchange, "after");
+                respond(exchange, 200, json -> {
+                    String[] last = new String[1];
+                    json.beginObject().name("appointments").beginArray();
+                    int count = AppointmentService.forEachAppointment(role, username, from, after, pageSize,
+                            (id, vaccine, date, other) -> {
+                                json.beginObject()
+                                        .field("appointmentId", id)
+                                        .field("vaccine", vaccine)
+                                        .field("date", date.toString())
+                                        .field(counterpart, other)
+                                        .endObject();
+                                last[0] = id;
+                            });
+                    json.endArray();
+                    if (count == pageSize) {
+                        // pass as after= to get the next page
+                        json.field("next", last[0]);
+                    }
+                    json.endObject();
+                });
+                return;
+            }
+            if (!method.equals("DELETE") || subPath.isEmpty()) {
+                throw new ApiException(404, "Not found");
+            }
+            AppointmentService.CancelResult result = AppointmentService.cancel(subPath,
+                    patient == null ? null : patient.getUsername(),
+                    caregiver == null ? null : caregiver.getUsername());
+            if (result == AppointmentService.CancelResult.NOT_FOUND) {
+                throw new ApiException(404, "Appointment with ID " + subPath + " not found.");
+            } else if (result == AppointmentService.CancelResult.FORBIDDEN) {
+                throw new ApiException(403, "You don't have permission to cancel this appointment.");
+            }
+            respond(exchange, 200, json -> json.beginObject()
+                    .field("appointmentId", subPath)
+                    .field("canceled", true)
+                    .endObject());
+        }
+    }
+
+    private class AvailabilityHandler extends Endpoint {
+        @Override
+        void serve(HttpExchange exchange, String method, String subPath) throws Exception {
+            requireRoute(method, subPath, "POST", "");
+            Caregiver caregiver = requireCaregiver(exchange);
+            Date date = Date.valueOf(required(readBody(exchange), "date"));
+            caregiver.uploadAvailability(date);
+            respond(exchange, 201, json -> json.beginObject()
+                    .field("caregiver", caregiver.getUsername())
+                    .field("date", date.toString())
+                    .endObject());
+        }
+    }
+
+    private class DosesHandler extends Endpoint {
+        @Override
+        void serve(HttpExchange exchange, String method, String subPath) throws Exception {
+            if (!method.equals("POST") || !subPath.endsWith("/doses")) {
+                throw new ApiException(404, "Not found");
+            }
+            requireCaregiver(exchange);
+            String vaccineName = subPath.substring(0, subPath.length() - "/doses".length());
+            int doses = Integer.parseInt(required(readBody(exchange), "doses"));
+            if (vaccineName.isEmpty() || doses <= 0) {
+                throw new IllegalArgumentException("Please try again!");
+            }
+            int available = InventoryService.getInstance().addOrCreate(vaccineName, doses);
+            respond(exchange, 200, json -> json.beginObject()
+                    .field("vaccine", vaccineName)
+                    .field("doses", available)
+                    .endObject());
+        }
+    }
+
+    private Session requireSession(HttpExchange exchange) throws ApiException {
+        Session session = sessions.get(bearerToken(exchange));
+        if (session == null || !session.isLoggedIn()) {
+            throw new ApiException(401, "Please login first.");
+        }
+        return session;
+    }
+
+    private Caregiver requireCaregiver(HttpExchange exchange) throws ApiException {
+        Caregiver caregiver = requireSession(exchange).getCurrentCaregiver();
+        if (caregiver == null) {
+            throw new ApiException(403, "Please login as a caregiver first!");
+        }
+        return caregiver;
+    }
+
+    private static void requireRoute(String method, String subPath, String expectedMethod, String expectedSubPath)
+            throws ApiException {
+        if (!subPath.equals(expectedSubPath)) {
+            throw new ApiException(404, "Not found");
+        }
+        if (!method.equals(expectedMethod)) {
+            throw new ApiException(405, "Method not allowed");
+        }
+    }
+
+    private static String bearerToken(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            return null;
+        }
+        return header.substring(7).trim();
+    }
+
+    private static String queryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            if (key.equals(name)) {
+                return eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            }
+        }
+        return null;
+    }
+
+    private static Map<String, String> readBody(HttpExchange exchange) throws IOException, ApiException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] chunk = new byte[4096];
+            int n;
+            while ((n = in.read(chunk)) != -1) {
+                if (buffer.size() + n > MAX_BODY_BYTES) {
+                    throw new ApiException(413, "Request body too large");
+                }
+                buffer.write(chunk, 0, n);
+            }
+        }
+        return JsonReader.parseObject(buffer.toString(StandardCharsets.UTF_8));
+    }
+
+    private static String required(Map<String, String> body, String name) {
+        String value = body.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing field: " + name);
+        }
+        return value;
+    }
+
+    // Writes the whole body before sending the headers, so a failure halfway (a database error in
+    // the middle of a page of appointments) still becomes an error status instead of a 200 with a
+    // cut-off document. Bodies are at most a page, see PAGE_SIZE.
+    private static void respond(HttpExchange exchange, int status, Body body) throws IOException, SQLException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        JsonWriter json = new JsonWriter(new BufferedWriter(new OutputStreamWriter(buffer, StandardCharsets.UTF_8)));
+        body.write(json);
+        json.flush();
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, buffer.size());
+        try (OutputStream out = exchange.getResponseBody()) {
+            buffer.writeTo(out);
+        }
+    }
+
+    private static void error(HttpExchange exchange, int status, String message) {
+        try {
+            respond(exchange, status, json -> json.beginObject().field("error", message).endObject());
+        } catch (IOException | SQLException | RuntimeException e) {
+            // the client is gone; nothing more we can report
+        }
+    }
+}
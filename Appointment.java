@@ -0,0 +1,52 @@
+package scheduler.store;
+
+import java.time.LocalDate;
+
+// One row of Appointments.
+public class Appointment {
+    private final String appointmentId;
+    private final LocalDate date;
+    private final String patientUsername;
+    private final String caregiverUsername;
+    private final String vaccineName;
+
+    public Appointment(String appointmentId, LocalDate date, String patientUsername, String caregiverUsername,
+                       String vaccineName) {
+        this.appointmentId = appointmentId;
+        this.date = date;
+        this.patientUsername = patientUsername;
+        this.caregiverUsername = caregiverUsername;
+        this.vaccineName = vaccineName;
+    }
+
+    public String getAppointmentId() {
+        return appointmentId;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public String getPatientUsername() {
+        return patientUsername;
+    }
+
+    public String getCaregiverUsername() {
+        return caregiverUsername;
+    }
+
+    public String getVaccineName() {
+        return vaccineName;
+    }
+
+    @Override
+    public String toString() {
+        return "Appointment{" +
+                "appointmentId='" + appointmentId + '\'' +
+                ", date=" + date +
+                ", patientUsername='" + patientUsername + '\'' +
+                ", caregiverUsername='" + caregiverUsername + '\'' +
+                ", vaccineName='" + vaccineName + '\'' +
+                '}';
+    }
+}
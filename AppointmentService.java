@@ -0,0 +1,103 @@
+package scheduler.service;
+
+import scheduler.store.Appointment;
+import scheduler.store.AppointmentStore;
+import scheduler.store.Storage;
+
+import java.io.IOException;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class AppointmentService {
+
+    public enum CancelResult {
+        CANCELED,
+        NOT_FOUND,
+        // the appointment belongs to somebody else
+        FORBIDDEN
+    }
+
+    // receives appointments one row at a time, so callers can stream them out
+    public interface AppointmentVisitor {
+        void visit(String appointmentId, String vaccineName, Date date, String counterpart) throws IOException;
+    }
+
+    private AppointmentService() {
+    }
+
+    // Cancels an appointment on behalf of the given patient or caregiver (the other one is null):
+    // the appointment is deleted, the caregiver's slot is made available again and the dose is returned.
+    public static CancelResult cancel(String appointmentId, String patientUsername, String caregiverUsername)
+            throws SQLException {
+        AppointmentStore appointments = Storage.getInstance().appointments();
+        Appointment appointment = appointments.find(appointmentId);
+        if (appointment == null) {
+            return CancelResult.NOT_FOUND;
+        }
+
+        // Check if the appointment belongs to the logged-in caregiver or patient
+        if (!((caregiverUsername != null && caregiverUsername.equals(appointment.getCaregiverUsername())) ||
+                (patientUsername != null && patientUsername.equals(appointment.getPatientUsername())))) {
+            return CancelResult.FORBIDDEN;
+        }
+
+        // Delete the appointment and give its slot back; a concurrent cancel may have beaten us to it
+        if (!appointments.cancel(appointment)) {
+            return CancelResult.NOT_FOUND;
+        }
+        AvailabilityIndex.getInstance().add(appointment.getDate(), appointment.getCaregiverUsername());
+        CaregiverLoad.getInstance().canceled(appointment.getCaregiverUsername());
+
+        // Increase available doses for the canceled appointment
+        InventoryService.getInstance().add(appointment.getVaccineName(), 1);
+        return CancelResult.CANCELED;
+    }
+
+    // Closes the caregiver's days from..to (inclusive), e.g. when a clinic closes: their free slots
+    // on those days go, and so do their appointments, whose doses are given back. Returns how many
+    // appointments were canceled.
+    public static int cancelAll(String caregiverUsername, LocalDate from, LocalDate to) throws SQLException {
+        List<Appointment> canceled = Storage.getInstance().appointments().cancelAll(caregiverUsername, from, to);
+        AvailabilityIndex.getInstance().removeAll(caregiverUsername, from, to);
+        return released(canceled, false);
+    }
+
+    // Cancels those of the appointments that belong to the patient or caregiver; returns how many
+    // were canceled.
+    public static int cancelAll(AccountService.Role role, String username, List<String> appointmentIds)
+            throws SQLException {
+        return released(Storage.getInstance().appointments().cancelAll(role, username, appointmentIds), true);
+    }
+
+    // the doses of canceled appointments become available again, once per vaccine, and the slots
+    // too if the store gave them back
+    private static int released(List<Appointment> canceled, boolean slots) throws SQLException {
+        Map<String, Integer> doses = new HashMap<>();
+        for (Appointment appointment : canceled) {
+            if (slots) {
+                AvailabilityIndex.getInstance().add(appointment.getDate(), appointment.getCaregiverUsername());
+            }
+            CaregiverLoad.getInstance().canceled(appointment.getCaregiverUsername());
+            doses.merge(appointment.getVaccineName(), 1, Integer::sum);
+        }
+        for (Map.Entry<String, Integer> entry : doses.entrySet()) {
+            InventoryService.getInstance().add(entry.getKey(), entry.getValue());
+        }
+        return canceled.size();
+    }
+
+    // A page of the appointments of a patient (counterpart = caregiver) or of a caregiver
+    // (counterpart = patient), as AppointmentStore.forEach pages them; returns how many were visited.
+    public static int forEachAppointment(AccountService.Role role, String username, LocalDate from, String afterId,
+                                         int limit, AppointmentVisitor visitor) throws SQLException, IOException {
+        boolean patient = role == AccountService.Role.PATIENT;
+        return Storage.getInstance().appointments().forEach(role, username, from, afterId, limit,
+                appointment -> visitor.visit(appointment.getAppointmentId(), appointment.getVaccineName(),
+                        Date.valueOf(appointment.getDate()),
+                        patient ? appointment.getCaregiverUsername() : appointment.getPatientUsername()));
+    }
+}
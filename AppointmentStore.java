@@ -0,0 +1,60 @@
+package scheduler.store;
+
+import scheduler.service.AccountService;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+// Appointments, booked against and canceled back into Availabilities.
+public interface AppointmentStore {
+
+    interface Visitor {
+        void visit(Appointment appointment) throws IOException;
+    }
+
+    // Atomically claims the slot of the first candidate caregiver (in order) that still has one on
+    // the appointment's date and inserts the appointment with that caregiver. Returns the index of
+    // the caregiver, or -1 if every candidate's slot was gone; the caregiver of the given
+    // appointment is ignored.
+    int book(Appointment appointment, List<String> candidates) throws SQLException;
+
+    // Books several appointments of one date in one transaction: claims the slots of the candidates
+    // in order and gives the k-th slot claimed to the k-th appointment. Returns, for each
+    // appointment, the index of its caregiver in candidates, or -1 if the candidates ran out first.
+    // Candidates up to the last one claimed (all of them, if some appointment got -1) were tried.
+    int[] bookAll(List<Appointment> appointments, List<String> candidates) throws SQLException;
+
+    // caregiver -> number of appointments, for caregivers that have any
+    Map<String, Integer> countByCaregiver() throws SQLException;
+
+    // null if there is no such appointment
+    Appointment find(String appointmentId) throws SQLException;
+
+    // deletes the appointment and gives its slot back, atomically; false if it was already gone
+    boolean cancel(Appointment appointment) throws SQLException;
+
+    // Closes the caregiver's days from..to (inclusive): deletes their free slots on those days and
+    // cancels their appointments, in one transaction, without giving the slots back. Returns the
+    // appointments canceled.
+    List<Appointment> cancelAll(String caregiverUsername, LocalDate from, LocalDate to) throws SQLException;
+
+    // Cancels those of the given appointments that belong to the patient or caregiver and gives
+    // the slots back, in one transaction. Returns the appointments canceled; ids that were not
+    // found, or belong to somebody else, are left out.
+    List<Appointment> cancelAll(AccountService.Role role, String username, List<String> appointmentIds)
+            throws SQLException;
+
+    // One page of the appointments of a patient or caregiver, in appointment id order: those on or
+    // after from (null for any date) with an id after afterId (null to start at the first), at most
+    // limit of them. Returns how many were visited; fewer than limit means there are no more.
+    int forEach(AccountService.Role role, String username, LocalDate from, String afterId, int limit,
+                Visitor visitor) throws SQLException, IOException;
+
+    // every appointment of a patient or caregiver
+    default int forEach(AccountService.Role role, String username, Visitor visitor) throws SQLException, IOException {
+        return forEach(role, username, null, null, Integer.MAX_VALUE, visitor);
+    }
+}
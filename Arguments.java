@@ -0,0 +1,174 @@
+package scheduler;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+// One command line, split on whitespace in a single pass without a regex or a String[]: only the
+// start and end of every token are kept, and a token becomes a String when a handler asks for it.
+// Token 0 is the command name. Integer and date arguments are parsed once, when the command checks
+// its arguments, and kept here for the handler. The registry keeps one instance per thread; its
+// arrays start small and grow (up to MAX_TOKENS) only for the rare long line, like a cancel_all
+// with many ids.
+public class Arguments {
+    static final int MAX_TOKENS = 1024;
+    private static final int INITIAL_TOKENS = 16;
+
+    private int[] starts = new int[INITIAL_TOKENS];
+    private int[] ends = new int[INITIAL_TOKENS];
+    private int[] ints = new int[INITIAL_TOKENS];
+    private LocalDate[] dates = new LocalDate[INITIAL_TOKENS];
+    private String line;
+    private int length;
+
+    // false if the line has more than MAX_TOKENS tokens
+    boolean parse(String line) {
+        this.line = line;
+        length = 0;
+        int i = 0;
+        int n = line.length();
+        while (i < n) {
+            while (i < n && line.charAt(i) <= ' ') {
+                i++;
+            }
+            if (i == n) {
+                break;
+            }
+            if (length == starts.length) {
+                if (length == MAX_TOKENS) {
+                    return false;
+                }
+                grow();
+            }
+            starts[length] = i;
+            while (i < n && line.charAt(i) > ' ') {
+                i++;
+            }
+            ends[length++] = i;
+        }
+        return true;
+    }
+
+    private void grow() {
+        int capacity = Math.min(MAX_TOKENS, starts.length * 2);
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        ints = Arrays.copyOf(ints, capacity);
+        dates = Arrays.copyOf(dates, capacity);
+    }
+
+    // the tokens as Strings, for callers that keep them past the next parse
+    String[] toArray() {
+        String[] tokens = new String[length];
+        for (int i = 0; i < length; i++) {
+            tokens[i] = getString(i);
+        }
+        return tokens;
+    }
+
+    // the number of tokens, the command name included
+    public int length() {
+        return length;
+    }
+
+    public String getString(int i) {
+        return line.substring(starts[i], ends[i]);
+    }
+
+    // compares without making a String of the token
+    public boolean is(int i, String literal) {
+        return i < length && ends[i] - starts[i] == literal.length()
+                && line.regionMatches(starts[i], literal, 0, literal.length());
+    }
+
+    // String.hashCode of token i
+    int hash(int i) {
+        int h = 0;
+        for (int k = starts[i]; k < ends[i]; k++) {
+            h = 31 * h + line.charAt(k);
+        }
+        return h;
+    }
+
+    public int getInt(int i) {
+        return ints[i];
+    }
+
+    public LocalDate getDate(int i) {
+        return dates[i];
+    }
+
+    // an optional sign and up to ten digits that fit in an int
+    boolean parseInt(int i) {
+        int k = starts[i];
+        int end = ends[i];
+        boolean negative = k < end && line.charAt(k) == '-';
+        if (negative || (k < end && line.charAt(k) == '+')) {
+            k++;
+        }
+        if (k == end || end - k > 10) {
+            return false;
+        }
+        long value = 0;
+        for (; k < end; k++) {
+            char c = line.charAt(k);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+            value = value * 10 + (c - '0');
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            return false;
+        }
+        ints[i] = (int) value;
+        return true;
+    }
+
+    // yyyy-[m]m-[d]d, the format Date.valueOf reads, but a day the month does not have is rejected
+    boolean parseDate(int i) {
+        int k = starts[i];
+        int end = ends[i];
+        int year = digits(k, Math.min(k + 4, end));
+        k += 4;
+        if (year < 0 || k >= end || line.charAt(k) != '-') {
+            return false;
+        }
+        int monthEnd = line.indexOf('-', k + 1);
+        if (monthEnd < 0 || monthEnd >= end) {
+            return false;
+        }
+        int month = monthEnd - k - 1 <= 2 ? digits(k + 1, monthEnd) : -1;
+        int day = end - monthEnd - 1 <= 2 ? digits(monthEnd + 1, end) : -1;
+        if (month < 0 || day < 0) {
+            return false;
+        }
+        try {
+            dates[i] = LocalDate.of(year, month, day);
+            return true;
+        } catch (DateTimeException e) {
+            return false;
+        }
+    }
+
+    // the value of line[from, to), -1 if it is empty or not all digits
+    private int digits(int from, int to) {
+        if (from >= to) {
+            return -1;
+        }
+        int value = 0;
+        for (int k = from; k < to; k++) {
+            char c = line.charAt(k);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return line;
+    }
+}
@@ -0,0 +1,174 @@
+package scheduler.service;
+
+import scheduler.util.Config;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Decides which of a date's free caregivers a reservation tries first. Concurrent reservations
+// that all try the same caregiver first fight over one slot (and one row lock) until it is taken,
+// so every strategy but "first" spreads them out. Chosen with scheduler.reserve.strategy:
+//   first         username order, as before
+//   round_robin   username order, starting after the caregiver the previous reservation of the date started at
+//   least_loaded  fewest appointments first (see CaregiverLoad)
+//   two_choices   of two random caregivers the one with fewer appointments, repeatedly
+public interface AssignmentStrategy {
+
+    // up to limit of the free caregivers (in username order), in the order to try them
+    List<String> candidates(LocalDate date, SortedSet<String> free, int limit) throws SQLException;
+
+    String getName();
+
+    static AssignmentStrategy fromConfig() {
+        String name = Config.get("scheduler.reserve.strategy", "round_robin").toLowerCase(Locale.ROOT);
+        switch (name) {
+            case "first":
+                return new First();
+            case "round_robin":
+                return new RoundRobin();
+            case "least_loaded":
+                return new LeastLoaded(CaregiverLoad.getInstance());
+            case "two_choices":
+                return new TwoChoices(CaregiverLoad.getInstance());
+            default:
+                throw new IllegalArgumentException("Unknown assignment strategy " + name);
+        }
+    }
+
+    class First implements AssignmentStrategy {
+        @Override
+        public List<String> candidates(LocalDate date, SortedSet<String> free, int limit) {
+            List<String> candidates = new ArrayList<>(Math.min(limit, free.size()));
+            for (String caregiver : free) {
+                if (candidates.size() == limit) {
+                    break;
+                }
+                candidates.add(caregiver);
+            }
+            return candidates;
+        }
+
+        @Override
+        public String getName() {
+            return "first";
+        }
+    }
+
+    class RoundRobin implements AssignmentStrategy {
+        // date -> the caregiver the last reservation of the date started at
+        private final ConcurrentHashMap<LocalDate, String> cursors = new ConcurrentHashMap<>();
+
+        @Override
+        public List<String> candidates(LocalDate date, SortedSet<String> free, int limit) {
+            List<String> candidates = new ArrayList<>(Math.min(limit, free.size()));
+            if (free.isEmpty()) {
+                return candidates;
+            }
+            String start = cursors.compute(date, (d, last) -> {
+                SortedSet<String> after = last == null ? free : free.tailSet(last + "\0");
+                return after.isEmpty() ? free.first() : after.first();
+            });
+            // from the start to the end, then around from the beginning
+            for (String caregiver : free.tailSet(start)) {
+                if (candidates.size() == limit) {
+                    return candidates;
+                }
+                candidates.add(caregiver);
+            }
+            for (String caregiver : free.headSet(start)) {
+                if (candidates.size() == limit) {
+                    break;
+                }
+                candidates.add(caregiver);
+            }
+            return candidates;
+        }
+
+        @Override
+        public String getName() {
+            return "round_robin";
+        }
+    }
+
+    class LeastLoaded implements AssignmentStrategy {
+        private final CaregiverLoad load;
+
+        public LeastLoaded(CaregiverLoad load) {
+            this.load = load;
+        }
+
+        @Override
+        public List<String> candidates(LocalDate date, SortedSet<String> free, int limit) throws SQLException {
+            List<Loaded> all = new ArrayList<>(free.size());
+            for (String caregiver : free) {
+                all.add(new Loaded(caregiver, load.get(caregiver)));
+            }
+            // ties in username order, as the set is
+            all.sort(Comparator.comparingInt(l -> l.appointments));
+            List<String> candidates = new ArrayList<>(Math.min(limit, all.size()));
+            for (int i = 0; i < all.size() && i < limit; i++) {
+                candidates.add(all.get(i).caregiver);
+            }
+            return candidates;
+        }
+
+        @Override
+        public String getName() {
+            return "least_loaded";
+        }
+
+        private static class Loaded {
+            private final String caregiver;
+            private final int appointments;
+
+            private Loaded(String caregiver, int appointments) {
+                this.caregiver = caregiver;
+                this.appointments = appointments;
+            }
+        }
+    }
+
+    class TwoChoices implements AssignmentStrategy {
+        private final CaregiverLoad load;
+
+        public TwoChoices(CaregiverLoad load) {
+            this.load = load;
+        }
+
+        @Override
+        public List<String> candidates(LocalDate date, SortedSet<String> free, int limit) throws SQLException {
+            List<String> left = new ArrayList<>(free);
+            List<String> candidates = new ArrayList<>(Math.min(limit, left.size()));
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (candidates.size() < limit && !left.isEmpty()) {
+                int pick = random.nextInt(left.size());
+                if (left.size() > 1) {
+                    int other = random.nextInt(left.size() - 1);
+                    if (other >= pick) {
+                        other++;
+                    }
+                    if (load.get(left.get(other)) < load.get(left.get(pick))) {
+                        pick = other;
+                    }
+                }
+                candidates.add(left.get(pick));
+                // swap-remove, the order of what is left does not matter
+                left.set(pick, left.get(left.size() - 1));
+                left.remove(left.size() - 1);
+            }
+            return candidates;
+        }
+
+        @Override
+        public String getName() {
+            return "two_choices";
+        }
+    }
+}
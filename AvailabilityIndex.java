@@ -0,0 +1,251 @@
+package scheduler.service;
+
+import scheduler.store.Storage;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// The Availabilities table in memory: date -> caregivers with a free slot that day, in username
+// order. Each date maps to an immutable set that is replaced (never modified) on every change,
+// so a reader holding a set always sees a consistent snapshot without taking a lock. The table
+// stays authoritative: the index is updated after each write commits, slots are still claimed
+// with a DELETE, and reconcile() compares the index to the table and repairs it.
+// Like the inventory, it assumes this process is the only one writing Availabilities.
+public class AvailabilityIndex {
+    private static final AvailabilityIndex INSTANCE = new AvailabilityIndex();
+
+    private final ConcurrentSkipListMap<LocalDate, SortedSet<String>> dates = new ConcurrentSkipListMap<>();
+    private volatile boolean loaded = false;
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder added = new LongAdder();
+    private final LongAdder removed = new LongAdder();
+    private final LongAdder reconciliations = new LongAdder();
+
+    public AvailabilityIndex() {
+    }
+
+    public static AvailabilityIndex getInstance() {
+        return INSTANCE;
+    }
+
+    // caregivers available on the date, in username order; never null
+    public SortedSet<String> caregivers(LocalDate date) throws SQLException {
+        ensureLoaded();
+        lookups.increment();
+        SortedSet<String> caregivers = dates.get(date);
+        return caregivers == null ? Collections.emptySortedSet() : caregivers;
+    }
+
+    public boolean hasAvailability(LocalDate date) throws SQLException {
+        return !caregivers(date).isEmpty();
+    }
+
+    public void add(LocalDate date, String caregiverUsername) throws SQLException {
+        ensureLoaded();
+        dates.compute(date, (d, caregivers) -> with(caregivers, caregiverUsername));
+        added.increment();
+    }
+
+    public void addAll(String caregiverUsername, Collection<LocalDate> days) throws SQLException {
+        for (LocalDate date : days) {
+            add(date, caregiverUsername);
+        }
+    }
+
+    public void remove(LocalDate date, String caregiverUsername) throws SQLException {
+        ensureLoaded();
+        dates.computeIfPresent(date, (d, caregivers) -> without(caregivers, caregiverUsername));
+        removed.increment();
+    }
+
+    // the caregiver from every date from..to (inclusive)
+    public void removeAll(String caregiverUsername, LocalDate from, LocalDate to) throws SQLException {
+        ensureLoaded();
+        for (LocalDate date : dates.subMap(from, true, to, true).keySet()) {
+            remove(date, caregiverUsername);
+        }
+    }
+
+    private static SortedSet<String> with(SortedSet<String> caregivers, String caregiverUsername) {
+        if (caregivers != null && caregivers.contains(caregiverUsername)) {
+            return caregivers;
+        }
+        TreeSet<String> copy = caregivers == null ? new TreeSet<>() : new TreeSet<>(caregivers);
+        copy.add(caregiverUsername);
+        return Collections.unmodifiableSortedSet(copy);
+    }
+
+    // null drops the date from the map
+    private static SortedSet<String> without(SortedSet<String> caregivers, String caregiverUsername) {
+        if (!caregivers.contains(caregiverUsername)) {
+            return caregivers;
+        }
+        TreeSet<String> copy = new TreeSet<>(caregivers);
+        copy.remove(caregiverUsername);
+        return copy.isEmpty() ? null : Collections.unmodifiableSortedSet(copy);
+    }
+
+    private void ensureLoaded() throws SQLException {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            for (Map.Entry<LocalDate, TreeSet<String>> entry : readTable().entrySet()) {
+                dates.put(entry.getKey(), Collections.unmodifiableSortedSet(entry.getValue()));
+            }
+            loaded = true;
+        }
+    }
+
+    private static Map<LocalDate, TreeSet<String>> readTable() throws SQLException {
+        Map<LocalDate, TreeSet<String>> table = new HashMap<>();
+        Storage.getInstance().availabilities().forEach(
+                (date, caregiver) -> table.computeIfAbsent(date, d -> new TreeSet<>()).add(caregiver));
+        return table;
+    }
+
+    // Compares the index with the Availabilities table and makes the index match it.
+    // Writes that commit while the table is being read may be reported (and repaired) spuriously.
+    public Reconciliation reconcile() throws SQLException {
+        ensureLoaded();
+        Map<LocalDate, TreeSet<String>> table = readTable();
+        int rows = 0;
+        int missing = 0;
+        int stale = 0;
+        for (Map.Entry<LocalDate, TreeSet<String>> entry : table.entrySet()) {
+            SortedSet<String> indexed = dates.getOrDefault(entry.getKey(), Collections.emptySortedSet());
+            for (String caregiver : entry.getValue()) {
+                rows++;
+                if (!indexed.contains(caregiver)) {
+                    dates.compute(entry.getKey(), (d, caregivers) -> with(caregivers, caregiver));
+                    missing++;
+                }
+            }
+        }
+        for (Map.Entry<LocalDate, SortedSet<String>> entry : dates.entrySet()) {
+            Set<String> inTable = table.getOrDefault(entry.getKey(), new TreeSet<>());
+            for (String caregiver : entry.getValue()) {
+                if (!inTable.contains(caregiver)) {
+                    dates.computeIfPresent(entry.getKey(), (d, caregivers) -> without(caregivers, caregiver));
+                    stale++;
+                }
+            }
+        }
+        reconciliations.increment();
+        return new Reconciliation(rows, missing, stale);
+    }
+
+    public Stats getStats() {
+        int slots = 0;
+        for (SortedSet<String> caregivers : dates.values()) {
+            slots += caregivers.size();
+        }
+        return new Stats(dates.size(), slots, lookups.sum(), added.sum(), removed.sum(), reconciliations.sum());
+    }
+
+    public static class Reconciliation {
+        private final int rows;
+        private final int missing;
+        private final int stale;
+
+        private Reconciliation(int rows, int missing, int stale) {
+            this.rows = rows;
+            this.missing = missing;
+            this.stale = stale;
+        }
+
+        public int getRows() {
+            return rows;
+        }
+
+        // in the table but not in the index
+        public int getMissing() {
+            return missing;
+        }
+
+        // in the index but no longer in the table
+        public int getStale() {
+            return stale;
+        }
+
+        public boolean isConsistent() {
+            return missing == 0 && stale == 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Reconciliation{" +
+                    "rows=" + rows +
+                    ", missing=" + missing +
+                    ", stale=" + stale +
+                    '}';
+        }
+    }
+
+    public static class Stats {
+        private final int dates;
+        private final int slots;
+        private final long lookups;
+        private final long added;
+        private final long removed;
+        private final long reconciliations;
+
+        private Stats(int dates, int slots, long lookups, long added, long removed, long reconciliations) {
+            this.dates = dates;
+            this.slots = slots;
+            this.lookups = lookups;
+            this.added = added;
+            this.removed = removed;
+            this.reconciliations = reconciliations;
+        }
+
+        public int getDates() {
+            return dates;
+        }
+
+        public int getSlots() {
+            return slots;
+        }
+
+        public long getLookups() {
+            return lookups;
+        }
+
+        public long getAdded() {
+            return added;
+        }
+
+        public long getRemoved() {
+            return removed;
+        }
+
+        public long getReconciliations() {
+            return reconciliations;
+        }
+
+        @Override
+        public String toString() {
+            return "Availability{" +
+                    "dates=" + dates +
+                    ", slots=" + slots +
+                    ", lookups=" + lookups +
+                    ", added=" + added +
+                    ", removed=" + removed +
+                    ", reconciliations=" + reconciliations +
+                    '}';
+        }
+    }
+}
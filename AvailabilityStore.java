@@ -0,0 +1,25 @@
+package scheduler.store;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+// Availabilities: the dates on which each caregiver has a free slot.
+public interface AvailabilityStore {
+
+    // fails (SQLIntegrityConstraintViolationException) if the slot is already there
+    void add(LocalDate date, String caregiverUsername) throws SQLException;
+
+    // all or nothing: fails without adding any if one of the slots is already there
+    void addAll(String caregiverUsername, List<LocalDate> dates) throws SQLException;
+
+    // false if the slot was not there (e.g. claimed concurrently)
+    boolean remove(LocalDate date, String caregiverUsername) throws SQLException;
+
+    // the caregiver's dates from..to, inclusive
+    Set<LocalDate> dates(String caregiverUsername, LocalDate from, LocalDate to) throws SQLException;
+
+    void forEach(BiConsumer<LocalDate, String> action) throws SQLException;
+}
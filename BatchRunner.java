@@ -0,0 +1,304 @@
+package scheduler;
+
+import scheduler.db.ConnectionManager;
+import scheduler.service.AccountService;
+import scheduler.service.AvailabilityIndex;
+import scheduler.service.InventoryService;
+import scheduler.service.UsernameFilter;
+import scheduler.store.AccountStore;
+import scheduler.store.AvailabilityStore;
+import scheduler.store.Credentials;
+import scheduler.store.Storage;
+import scheduler.util.PasswordHasher;
+import scheduler.util.Util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Runs a whole script of console commands (one per line, '#' starts a comment line).
+// Runs of consecutive create_patient, create_caregiver and upload_availability <date> commands
+// are written with one batch insert each (see AccountStore.insertAll and AvailabilityStore.addAll), runs of add_doses are folded into one inventory
+// update per vaccine; everything else goes through Scheduler.execute. All output goes through one buffered writer.
+public class BatchRunner {
+    private final Session session;
+
+    public BatchRunner(Session session) {
+        this.session = session;
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.out.println("Usage: Scheduler --batch <file>");
+            return;
+        }
+        PrintWriter out = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16));
+        Session session = new Session(out, true);
+        try {
+            new BatchRunner(session).run(Paths.get(args[0]));
+        } catch (IOException e) {
+            out.println("Failed to read batch file " + args[0] + ": " + e.getMessage());
+        } finally {
+            out.flush();
+            InventoryService.getInstance().shutdown();
+            ConnectionManager.shutdown();
+        }
+    }
+
+    public void run(Path script) throws IOException {
+        // parse the whole script up front, with the same tokenizer as Scheduler.execute
+        List<String> lines = new ArrayList<>();
+        List<String[]> commands = new ArrayList<>();
+        Arguments args = new Arguments();
+        for (String line : Files.readAllLines(script, StandardCharsets.UTF_8)) {
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            lines.add(line);
+            // a line with too many tokens is left to Scheduler.execute to reject
+            commands.add(args.parse(line) ? args.toArray() : new String[]{""});
+        }
+
+        long start = System.nanoTime();
+        long failuresBefore = session.getFailures();
+        int executed = 0;
+        int i = 0;
+        while (i < commands.size()) {
+            String operation = commands.get(i)[0];
+            int end = i + 1;
+            if (isBatchable(commands.get(i))) {
+                while (end < commands.size() && isBatchable(commands.get(end))
+                        && commands.get(end)[0].equals(operation)) {
+                    end++;
+                }
+            }
+            List<String[]> group = commands.subList(i, end);
+            executed += group.size();
+            if (group.size() == 1 || !isBatchable(group.get(0))) {
+                if (!Scheduler.execute(session, lines.get(i))) {
+                    break;
+                }
+            } else if (operation.equals("create_patient")) {
+                createAccounts(group, AccountService.Role.PATIENT);
+            } else if (operation.equals("create_caregiver")) {
+                createAccounts(group, AccountService.Role.CAREGIVER);
+            } else if (operation.equals("upload_availability")) {
+                uploadAvailabilities(group);
+            } else {
+                addDoses(group);
+            }
+            i = end;
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        session.out().println(String.format("Batch finished: %d commands in %.3f s (%.1f commands/s), %d errors",
+                executed, seconds, seconds > 0 ? executed / seconds : 0.0, session.getFailures() - failuresBefore));
+    }
+
+    private static boolean isBatchable(String[] tokens) {
+        switch (tokens[0]) {
+            case "create_patient":
+            case "create_caregiver":
+                return true;
+            case "upload_availability":
+                // only the single-date form
+                return tokens.length == 2;
+            case "add_doses":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void createAccounts(List<String[]> group, AccountService.Role role) {
+        String[] results = new String[group.size()];
+        List<Integer> pending = new ArrayList<>();
+        List<String> usernames = new ArrayList<>();
+        List<Credentials> credentials = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        PasswordHasher hasher = PasswordHasher.getInstance();
+        UsernameFilter filter = UsernameFilter.getInstance();
+        AccountStore accounts = Storage.getInstance().accounts();
+
+        try {
+            // usernames the filter cannot rule out are checked with one query for the whole run
+            List<Integer> candidates = new ArrayList<>();
+            List<String> maybeTaken = new ArrayList<>();
+            for (int i = 0; i < group.size(); i++) {
+                String[] tokens = group.get(i);
+                if (tokens.length != 3) {
+                    continue;
+                }
+                if (!seen.add(tokens[1])) {
+                    results[i] = "Username taken, try again!";
+                    continue;
+                }
+                candidates.add(i);
+                if (filter.mightExist(role, tokens[1])) {
+                    maybeTaken.add(tokens[1]);
+                }
+            }
+            Set<String> taken = accounts.existing(role, maybeTaken);
+            for (String username : maybeTaken) {
+                if (!taken.contains(username)) {
+                    filter.recordFalsePositive(role);
+                }
+            }
+            for (int i : candidates) {
+                String[] tokens = group.get(i);
+                if (taken.contains(tokens[1])) {
+                    results[i] = "Username taken, try again!";
+                    continue;
+                }
+                byte[] salt = Util.generateSalt();
+                credentials.add(new Credentials(salt, hasher.hash(tokens[2], salt), hasher.getAlgorithm(),
+                        hasher.getIterations()));
+                usernames.add(tokens[1]);
+                pending.add(i);
+            }
+
+            boolean[] inserted = accounts.insertAll(role, usernames, credentials);
+            for (int k = 0; k < pending.size(); k++) {
+                if (inserted[k]) {
+                    filter.add(role, usernames.get(k));
+                    results[pending.get(k)] = "Created user " + usernames.get(k);
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+
+        for (String result : results) {
+            if (result != null && result.startsWith("Created user ")) {
+                session.out().println(result);
+            } else {
+                session.fail(result == null ? "Failed to create user." : result);
+            }
+        }
+    }
+
+    private void uploadAvailabilities(List<String[]> group) {
+        if (session.getCurrentCaregiver() == null) {
+            for (int i = 0; i < group.size(); i++) {
+                session.fail("Please login as a caregiver first!");
+            }
+            return;
+        }
+        String username = session.getCurrentCaregiver().getUsername();
+        String[] results = new String[group.size()];
+        List<Integer> pending = new ArrayList<>();
+        List<Date> dates = new ArrayList<>();
+        Arguments token = new Arguments();
+        for (int i = 0; i < group.size(); i++) {
+            // read the way the registry reads a date argument
+            if (token.parse(group.get(i)[1]) && token.parseDate(0)) {
+                dates.add(Date.valueOf(token.getDate(0)));
+                pending.add(i);
+            } else {
+                results[i] = "Please enter a valid date!";
+            }
+        }
+
+        AvailabilityStore availabilities = Storage.getInstance().availabilities();
+        List<LocalDate> days = new ArrayList<>(dates.size());
+        for (Date date : dates) {
+            days.add(date.toLocalDate());
+        }
+        try {
+            availabilities.addAll(username, days);
+            AvailabilityIndex.getInstance().addAll(username, days);
+            for (int index : pending) {
+                results[index] = "Availability uploaded!";
+            }
+        } catch (SQLException e) {
+            // find out which dates failed by adding them one at a time
+            for (int k = 0; k < pending.size(); k++) {
+                try {
+                    availabilities.add(days.get(k), username);
+                    AvailabilityIndex.getInstance().add(days.get(k), username);
+                    results[pending.get(k)] = "Availability uploaded!";
+                } catch (SQLException rowError) {
+                    // reported as a failure below
+                }
+            }
+        }
+
+        for (String result : results) {
+            if ("Availability uploaded!".equals(result)) {
+                session.out().println(result);
+            } else {
+                session.fail(result == null ? "Error occurred when uploading availability" : result);
+            }
+        }
+    }
+
+    private void addDoses(List<String[]> group) {
+        if (session.getCurrentCaregiver() == null) {
+            for (int i = 0; i < group.size(); i++) {
+                session.fail("Please login as a caregiver first!");
+            }
+            return;
+        }
+        boolean[] valid = new boolean[group.size()];
+        boolean[] negative = new boolean[group.size()];
+        // total doses to add per vaccine, in order of first appearance
+        Map<String, Integer> totals = new LinkedHashMap<>();
+        for (int i = 0; i < group.size(); i++) {
+            String[] tokens = group.get(i);
+            if (tokens.length != 3) {
+                continue;
+            }
+            try {
+                int doses = Integer.parseInt(tokens[2]);
+                // 0 only creates the vaccine, as in the console
+                if (doses >= 0) {
+                    totals.merge(tokens[1], doses, Integer::sum);
+                    valid[i] = true;
+                } else {
+                    negative[i] = true;
+                }
+            } catch (NumberFormatException e) {
+                // invalid, reported below
+            }
+        }
+
+        // folded per vaccine, so the run costs one inventory update per vaccine
+        boolean saved = false;
+        try {
+            for (Map.Entry<String, Integer> entry : totals.entrySet()) {
+                InventoryService.getInstance().addOrCreate(entry.getKey(), entry.getValue());
+            }
+            saved = true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+
+        for (int i = 0; i < group.size(); i++) {
+            if (negative[i]) {
+                session.fail("The number of doses cannot be negative. Usage: "
+                        + Scheduler.commands().find("add_doses").getUsage());
+            } else if (!valid[i]) {
+                session.fail("Please try again!");
+            } else if (saved) {
+                session.out().println("Doses updated!");
+            } else {
+                session.fail("Error occurred when adding doses");
+            }
+        }
+    }
+}
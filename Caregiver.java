@@ -1,26 +1,49 @@
 package scheduler.model;
 
-import scheduler.db.ConnectionManager;
+import scheduler.service.AccountService;
+import scheduler.service.AvailabilityIndex;
+import scheduler.service.CredentialCache;
+import scheduler.service.UsernameFilter;
+import scheduler.store.AccountStore;
+import scheduler.store.AvailabilityStore;
+import scheduler.store.Credentials;
+import scheduler.store.Storage;
+import scheduler.util.PasswordHasher;
 import scheduler.util.Util;
 
-import java.sql.*;
-import java.util.Arrays;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 public class Caregiver {
+    // upper bound on the number of days a single range upload may span
+    private static final int MAX_RANGE_DAYS = 1000;
+
     private final String username;
     private final byte[] salt;
     private final byte[] hash;
+    private final PasswordHasher.Algorithm hashAlgorithm;
+    private final int iterations;
 
     private Caregiver(CaregiverBuilder builder) {
         this.username = builder.username;
         this.salt = builder.salt;
         this.hash = builder.hash;
+        this.hashAlgorithm = builder.hashAlgorithm;
+        this.iterations = builder.iterations;
     }
 
     private Caregiver(CaregiverGetter getter) {
         this.username = getter.username;
         this.salt = getter.salt;
         this.hash = getter.hash;
+        this.hashAlgorithm = getter.hashAlgorithm;
+        this.iterations = getter.iterations;
     }
 
     // Getters
@@ -36,50 +59,80 @@ public class Caregiver {
         return hash;
     }
 
-    public void saveToDB() throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
+    public PasswordHasher.Algorithm getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
 
-        String addCaregiver = "INSERT INTO Caregivers VALUES (? , ?, ?)";
+    public void saveToDB() throws SQLException {
         try {
-            PreparedStatement statement = con.prepareStatement(addCaregiver);
-            statement.setString(1, this.username);
-            statement.setBytes(2, this.salt);
-            statement.setBytes(3, this.hash);
-            statement.executeUpdate();
+            Storage.getInstance().accounts().insert(AccountService.Role.CAREGIVER, this.username,
+                    new Credentials(this.salt, this.hash, this.hashAlgorithm, this.iterations));
+            UsernameFilter.getInstance().add(AccountService.Role.CAREGIVER, this.username);
+            CredentialCache.getInstance().invalidate(AccountService.Role.CAREGIVER, this.username);
         } catch (SQLException e) {
             throw new SQLException();
-        } finally {
-            cm.closeConnection();
         }
     }
 
     public void uploadAvailability(Date d) throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String addAvailability = "INSERT INTO Availabilities VALUES (? , ?)";
         try {
-            PreparedStatement statement = con.prepareStatement(addAvailability);
-            statement.setDate(1, d);
-            statement.setString(2, this.username);
-            statement.executeUpdate();
+            Storage.getInstance().availabilities().add(d.toLocalDate(), this.username);
+            AvailabilityIndex.getInstance().add(d.toLocalDate(), this.username);
         } catch (SQLException e) {
             throw new SQLException();
-        } finally {
-            cm.closeConnection();
         }
     }
 
+    // Uploads every date from..to (inclusive) that falls on one of the given weekdays, skipping
+    // dates the caregiver is already available on; the dates are added all or nothing.
+    // Returns the number of dates added.
+    public int uploadAvailability(Date from, Date to, Set<DayOfWeek> days) throws SQLException {
+        LocalDate first = from.toLocalDate();
+        LocalDate last = to.toLocalDate();
+        if (first.isAfter(last)) {
+            throw new IllegalArgumentException("Start date is after end date!");
+        }
+        if (ChronoUnit.DAYS.between(first, last) >= MAX_RANGE_DAYS) {
+            throw new IllegalArgumentException("Please upload at most " + MAX_RANGE_DAYS + " days at a time!");
+        }
+
+        AvailabilityStore availabilities = Storage.getInstance().availabilities();
+        Set<LocalDate> existing = availabilities.dates(this.username, first, last);
+        List<LocalDate> added = new ArrayList<>();
+        for (LocalDate d = first; !d.isAfter(last); d = d.plusDays(1)) {
+            if (days.contains(d.getDayOfWeek()) && !existing.contains(d)) {
+                added.add(d);
+            }
+        }
+        availabilities.addAll(this.username, added);
+        AvailabilityIndex.getInstance().addAll(this.username, added);
+        return added.size();
+    }
+
     public static class CaregiverBuilder {
         private final String username;
         private final byte[] salt;
         private final byte[] hash;
+        private final PasswordHasher.Algorithm hashAlgorithm;
+        private final int iterations;
 
+        // for a hash computed with the hasher's current parameters (Util.generateHash)
         public CaregiverBuilder(String username, byte[] salt, byte[] hash) {
+            this(username, salt, hash, PasswordHasher.getInstance().getAlgorithm(),
+                    PasswordHasher.getInstance().getIterations());
+        }
+
+        public CaregiverBuilder(String username, byte[] salt, byte[] hash, PasswordHasher.Algorithm hashAlgorithm,
+                         int iterations) {
             this.username = username;
             this.salt = salt;
             this.hash = hash;
+            this.hashAlgorithm = hashAlgorithm;
+            this.iterations = iterations;
         }
 
         public Caregiver build() {
@@ -92,6 +145,8 @@ public class Caregiver {
         private final String password;
         private byte[] salt;
         private byte[] hash;
+        private PasswordHasher.Algorithm hashAlgorithm;
+        private int iterations;
 
         public CaregiverGetter(String username, String password) {
             this.username = username;
@@ -99,34 +154,40 @@ public class Caregiver {
         }
 
         public Caregiver get() throws SQLException {
-            ConnectionManager cm = new ConnectionManager();
-            Connection con = cm.createConnection();
-
-            String getCaregiver = "SELECT Salt, Hash FROM Caregivers WHERE Username = ?";
+            // a login verified recently with the same password needs neither the query nor the KDF
+            Caregiver cached = CredentialCache.getInstance().lookup(AccountService.Role.CAREGIVER, username, password, Caregiver.class);
+            if (cached != null) {
+                return cached;
+            }
             try {
-                PreparedStatement statement = con.prepareStatement(getCaregiver);
-                statement.setString(1, this.username);
-                ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    byte[] salt = resultSet.getBytes("Salt");
-                    // we need to call Util.trim() to get rid of the paddings,
-                    // try to remove the use of Util.trim() and you'll see :)
-                    byte[] hash = Util.trim(resultSet.getBytes("Hash"));
-                    // check if the password matches
-                    byte[] calculatedHash = Util.generateHash(password, salt);
-                    if (!Arrays.equals(hash, calculatedHash)) {
-                        return null;
-                    } else {
-                        this.salt = salt;
-                        this.hash = hash;
-                        return new Caregiver(this);
-                    }
+                AccountStore accounts = Storage.getInstance().accounts();
+                Credentials stored = accounts.find(AccountService.Role.CAREGIVER, this.username);
+                if (stored == null) {
+                    return null;
+                }
+                this.salt = stored.getSalt();
+                this.hash = stored.getHash();
+                this.hashAlgorithm = stored.getAlgorithm();
+                this.iterations = stored.getIterations();
+                // check if the password matches, with the parameters the hash was stored with
+                PasswordHasher hasher = PasswordHasher.getInstance();
+                if (!hasher.verify(password, salt, hash, hashAlgorithm, iterations)) {
+                    return null;
+                }
+                // the password is known right now, so an outdated hash is replaced transparently
+                if (hasher.needsRehash(hashAlgorithm, iterations)) {
+                    this.salt = Util.generateSalt();
+                    this.hash = hasher.hash(password, salt);
+                    this.hashAlgorithm = hasher.getAlgorithm();
+                    this.iterations = hasher.getIterations();
+                    accounts.updateCredentials(AccountService.Role.CAREGIVER, username,
+                            new Credentials(salt, hash, hashAlgorithm, iterations));
                 }
-                return null;
+                Caregiver account = new Caregiver(this);
+                CredentialCache.getInstance().put(AccountService.Role.CAREGIVER, username, password, account);
+                return account;
             } catch (SQLException e) {
                 throw new SQLException();
-            } finally {
-                cm.closeConnection();
             }
         }
     }
@@ -0,0 +1,64 @@
+package scheduler.service;
+
+import scheduler.store.Storage;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// The number of appointments of every caregiver, in memory, for the assignment strategies that
+// spread load. Read from Appointments on first use, then kept up to date by the reservation
+// engine and by cancel. Like the availability index, it assumes this process is the only one
+// writing Appointments; bookings that commit while the table is being read may be missed, which
+// only makes a caregiver look a little less busy than they are.
+public class CaregiverLoad {
+    private static final CaregiverLoad INSTANCE = new CaregiverLoad();
+
+    private final ConcurrentHashMap<String, AtomicInteger> counts = new ConcurrentHashMap<>();
+    private volatile boolean loaded = false;
+
+    public CaregiverLoad() {
+    }
+
+    public static CaregiverLoad getInstance() {
+        return INSTANCE;
+    }
+
+    public int get(String caregiverUsername) throws SQLException {
+        ensureLoaded();
+        AtomicInteger count = counts.get(caregiverUsername);
+        return count == null ? 0 : count.get();
+    }
+
+    public void booked(String caregiverUsername) {
+        // until the table has been read, the table already has it
+        if (loaded) {
+            counts.computeIfAbsent(caregiverUsername, k -> new AtomicInteger()).incrementAndGet();
+        }
+    }
+
+    public void canceled(String caregiverUsername) {
+        if (loaded) {
+            AtomicInteger count = counts.get(caregiverUsername);
+            if (count != null) {
+                count.updateAndGet(n -> Math.max(0, n - 1));
+            }
+        }
+    }
+
+    private void ensureLoaded() throws SQLException {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            for (Map.Entry<String, Integer> entry : Storage.getInstance().appointments().countByCaregiver().entrySet()) {
+                counts.put(entry.getKey(), new AtomicInteger(entry.getValue()));
+            }
+            loaded = true;
+        }
+    }
+}
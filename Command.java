@@ -0,0 +1,185 @@
+package scheduler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// A console command: its name, the arguments it takes and who may run it. The registry checks all
+// of that before the handler runs, in this order: who is logged in, the number of arguments, then
+// the integer and date arguments, so a handler only sees arguments it can use as they are.
+public class Command {
+    public interface Handler {
+        void run(Session session, Arguments args);
+    }
+
+    public enum Type {
+        WORD, INT, DATE
+    }
+
+    public enum Requirement {
+        NONE,
+        LOGGED_OUT,
+        LOGGED_IN,
+        PATIENT,
+        CAREGIVER,
+        LOCAL;
+
+        // the message to fail with, or null if the session may run the command
+        String check(Session session) {
+            switch (this) {
+                case LOGGED_OUT:
+                    return session.isLoggedIn() ? "User already logged in." : null;
+                case LOGGED_IN:
+                    return session.isLoggedIn() ? null : "Please login first.";
+                case PATIENT:
+                    if (session.getCurrentPatient() != null) {
+                        return null;
+                    }
+                    return session.isLoggedIn() ? "Please login as a patient!" : "Please login first.";
+                case CAREGIVER:
+                    return session.getCurrentCaregiver() != null ? null : "Please login as a caregiver first!";
+                case LOCAL:
+                    return session.isLocal() ? null : "This command is only available from the console.";
+                default:
+                    return null;
+            }
+        }
+    }
+
+    private final String name;
+    private final String usage;
+    private final Handler handler;
+    private final Requirement requirement;
+    private final Type[] required;
+    private final Type[] optional;
+    private final boolean rest;
+    private final String arityMessage;
+    private final String invalidMessage;
+    private final boolean quits;
+
+    private Command(Builder builder) {
+        this.name = builder.name;
+        this.usage = builder.usage;
+        this.handler = builder.handler;
+        this.requirement = builder.requirement;
+        this.required = builder.required.toArray(new Type[0]);
+        this.optional = builder.optional.toArray(new Type[0]);
+        this.rest = builder.rest;
+        this.arityMessage = builder.arityMessage;
+        this.invalidMessage = builder.invalidMessage;
+        this.quits = builder.quits;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUsage() {
+        return usage.isEmpty() ? name : name + " " + usage;
+    }
+
+    public Requirement getRequirement() {
+        return requirement;
+    }
+
+    // true for the command that ends the session
+    public boolean quits() {
+        return quits;
+    }
+
+    // the message to fail with, or null if the handler can run
+    String check(Session session, Arguments args) {
+        String denied = requirement.check(session);
+        if (denied != null) {
+            return denied;
+        }
+        int count = args.length() - 1;
+        if (count < required.length || (!rest && count > required.length + optional.length)) {
+            return arityMessage;
+        }
+        for (int i = 1; i <= count && i <= required.length + optional.length; i++) {
+            Type type = i <= required.length ? required[i - 1] : optional[i - 1 - required.length];
+            if ((type == Type.INT && !args.parseInt(i)) || (type == Type.DATE && !args.parseDate(i))) {
+                return invalidMessage;
+            }
+        }
+        return null;
+    }
+
+    void run(Session session, Arguments args) {
+        handler.run(session, args);
+    }
+
+    @Override
+    public String toString() {
+        return getUsage();
+    }
+
+    public static class Builder {
+        private final String name;
+        private final Handler handler;
+        private String usage = "";
+        private Requirement requirement = Requirement.NONE;
+        private final List<Type> required = new ArrayList<>();
+        private final List<Type> optional = new ArrayList<>();
+        private boolean rest = false;
+        private String arityMessage = "Please try again!";
+        private String invalidMessage = "Please try again!";
+        private boolean quits = false;
+
+        public Builder(String name, Handler handler) {
+            this.name = name;
+            this.handler = handler;
+        }
+
+        // the arguments as shown in the menu
+        public Builder usage(String usage) {
+            this.usage = usage;
+            return this;
+        }
+
+        public Builder requires(Requirement requirement) {
+            this.requirement = requirement;
+            return this;
+        }
+
+        public Builder arguments(Type... types) {
+            required.addAll(List.of(types));
+            return this;
+        }
+
+        public Builder optional(Type... types) {
+            optional.addAll(List.of(types));
+            return this;
+        }
+
+        // any number of further words, which the handler reads itself
+        public Builder rest() {
+            this.rest = true;
+            return this;
+        }
+
+        // failure message for too few or too many arguments
+        public Builder arityMessage(String arityMessage) {
+            this.arityMessage = arityMessage;
+            return this;
+        }
+
+        // failure message for an integer or date argument that does not parse
+        public Builder invalidMessage(String invalidMessage) {
+            this.invalidMessage = invalidMessage;
+            return this;
+        }
+
+        public Builder quits() {
+            this.quits = true;
+            return this;
+        }
+
+        public Command build() {
+            if (required.size() + optional.size() >= Arguments.MAX_TOKENS) {
+                throw new IllegalArgumentException("Too many arguments for " + name);
+            }
+            return new Command(this);
+        }
+    }
+}
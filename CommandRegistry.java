@@ -0,0 +1,100 @@
+package scheduler;
+
+import scheduler.util.Metrics;
+
+import java.util.List;
+
+// Maps command names to commands, and runs command lines for every front end: the console, the
+// socket server and the batch runner all go through dispatch(). Names are looked up in an
+// open-addressed table by the hash of the name token, compared in place, so a lookup does not
+// allocate. Every dispatch is timed in Metrics under the command's name; the part spent before
+// the handler (tokenizing, lookup and checks) is recorded separately as the dispatch overhead.
+public class CommandRegistry {
+    private static final ThreadLocal<Arguments> ARGUMENTS = ThreadLocal.withInitial(Arguments::new);
+
+    private final List<Command> commands;
+    private final Command[] table;
+    private final int mask;
+
+    public CommandRegistry(List<Command> commands) {
+        this.commands = List.copyOf(commands);
+        // at most half full, so probes stay short
+        int size = Integer.highestOneBit(Math.max(1, commands.size()) * 2) * 2;
+        this.table = new Command[size];
+        this.mask = size - 1;
+        for (Command command : commands) {
+            int slot = command.getName().hashCode() & mask;
+            while (table[slot] != null) {
+                if (table[slot].getName().equals(command.getName())) {
+                    throw new IllegalArgumentException("Command " + command.getName() + " is registered twice");
+                }
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = command;
+        }
+    }
+
+    // in registration order, for the menu
+    public List<Command> getCommands() {
+        return commands;
+    }
+
+    public Command find(String name) {
+        for (int slot = name.hashCode() & mask; table[slot] != null; slot = (slot + 1) & mask) {
+            if (table[slot].getName().equals(name)) {
+                return table[slot];
+            }
+        }
+        return null;
+    }
+
+    // the command named by token 0
+    private Command find(Arguments args) {
+        for (int slot = args.hash(0) & mask; table[slot] != null; slot = (slot + 1) & mask) {
+            if (args.is(0, table[slot].getName())) {
+                return table[slot];
+            }
+        }
+        return null;
+    }
+
+    // runs a single command line on behalf of the session; returns false once the session asked to quit
+    public boolean dispatch(Session session, String line) {
+        Metrics metrics = Metrics.getInstance();
+        long failures = session.getFailures();
+        long start = metrics.begin();
+        String name = Metrics.INVALID_COMMAND;
+        try {
+            Arguments args = ARGUMENTS.get();
+            if (!args.parse(line)) {
+                session.fail("Too many arguments: at most " + (Arguments.MAX_TOKENS - 1) + " per command.");
+                return true;
+            }
+            if (args.length() == 0) {
+                session.fail("Please try again!");
+                return true;
+            }
+            Command command = find(args);
+            if (command == null) {
+                session.fail("Invalid operation name!");
+                return true;
+            }
+            name = command.getName();
+            String failure = command.check(session, args);
+            metrics.recordDispatch(System.nanoTime() - start);
+            if (failure != null) {
+                session.fail(failure);
+                return true;
+            }
+            command.run(session, args);
+            return !command.quits();
+        } catch (IllegalArgumentException e) {
+            // a bad argument a handler did not check must not end the session
+            session.fail("Please try again!");
+            e.printStackTrace();
+            return true;
+        } finally {
+            metrics.end(name, start, session.getFailures() != failures);
+        }
+    }
+}
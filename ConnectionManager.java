@@ -0,0 +1,95 @@
+package scheduler.db;
+
+import scheduler.util.Config;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+public class ConnectionManager {
+
+    private static final String driverName = "com.microsoft.sqlserver.jdbc.SQLServerDriver";
+    // scheduler.db.url can point the application at any other JDBC database (e.g. an embedded one)
+    private static final String connectionUrl = Config.get("scheduler.db.url",
+            "jdbc:sqlserver://" + System.getenv("Server") + ".database.windows.net:1433;database="
+                    + System.getenv("DBName"));
+    private static final String userName = Config.get("scheduler.db.user", System.getenv("UserID"));
+    private static final String userPass = Config.get("scheduler.db.password", System.getenv("Password"));
+
+    private static volatile ConnectionPool pool = null;
+
+    // the connection borrowed by this manager, returned to the pool by closeConnection()
+    private PooledConnection pooled = null;
+    private ConnectionPool owner = null;
+
+    public ConnectionManager() {
+    }
+
+    public static ConnectionPool getPool() {
+        ConnectionPool p = pool;
+        if (p == null) {
+            synchronized (ConnectionManager.class) {
+                p = pool;
+                if (p == null) {
+                    if (connectionUrl.startsWith("jdbc:sqlserver:")) {
+                        try {
+                            Class.forName(driverName);
+                        } catch (ClassNotFoundException e) {
+                            System.out.println(e.toString());
+                        }
+                    }
+                    p = new ConnectionPool.Builder(connectionUrl, userName, userPass)
+                            .maxSize(Config.getInt("scheduler.pool.maxSize", 10))
+                            .maxWaitMillis(Config.getLong("scheduler.pool.maxWaitMillis", 5_000))
+                            .idleTimeoutMillis(Config.getLong("scheduler.pool.idleTimeoutMillis", 300_000))
+                            .validationIntervalMillis(Config.getLong("scheduler.pool.validationIntervalMillis", 30_000))
+                            .statementCacheSize(Config.getInt("scheduler.pool.statementCacheSize",
+                                    SqlStatement.values().length))
+                            .countRoundTrips(Config.getBoolean("scheduler.metrics.jdbc", true))
+                            .build();
+                    pool = p;
+                }
+            }
+        }
+        return p;
+    }
+
+    public static void shutdown() {
+        synchronized (ConnectionManager.class) {
+            if (pool != null) {
+                pool.close();
+                pool = null;
+            }
+        }
+    }
+
+    public Connection createConnection() throws SQLException {
+        if (pooled == null) {
+            owner = getPool();
+            pooled = owner.borrow();
+        }
+        return pooled.getConnection();
+    }
+
+    // borrows a connection if this manager does not hold one yet and returns its cached statement for sql;
+    // the statement stays owned by the pooled connection, so callers close only the result sets they open
+    public PreparedStatement prepare(SqlStatement sql) throws SQLException {
+        createConnection();
+        return pooled.prepare(sql);
+    }
+
+    public void closeConnection() {
+        if (pooled != null) {
+            owner.release(pooled);
+            pooled = null;
+            owner = null;
+        }
+    }
+
+    // discard the borrowed connection instead of reusing it, e.g. after a communication failure
+    public void invalidateConnection() {
+        if (pooled != null) {
+            pooled.markBroken();
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package scheduler.db;
+
+import scheduler.util.Metrics;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ConnectionPool {
+    private final String url;
+    private final String userName;
+    private final String userPass;
+
+    private final int maxSize;
+    private final long maxWaitMillis;
+    private final long idleTimeoutMillis;
+    private final long validationIntervalMillis;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+    // wrap connections so their round trips are counted in Metrics
+    private final boolean countRoundTrips;
+
+    // one permit per connection that may be handed out; bounds the pool size
+    private final Semaphore permits;
+    // most recently returned connection first, so the hot connections get reused
+    // and the ones at the tail are the ones that have been idle the longest
+    private final ConcurrentLinkedDeque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed = false;
+
+    // statistics
+    private final LongAdder created = new LongAdder();
+    private final LongAdder destroyed = new LongAdder();
+    private final LongAdder borrowed = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+    private final LongAdder statementEvictions = new LongAdder();
+
+    private ConnectionPool(Builder builder) {
+        this.url = builder.url;
+        this.userName = builder.userName;
+        this.userPass = builder.userPass;
+        this.maxSize = builder.maxSize;
+        this.maxWaitMillis = builder.maxWaitMillis;
+        this.idleTimeoutMillis = builder.idleTimeoutMillis;
+        this.validationIntervalMillis = builder.validationIntervalMillis;
+        this.validationTimeoutSeconds = builder.validationTimeoutSeconds;
+        this.statementCacheSize = builder.statementCacheSize;
+        this.countRoundTrips = builder.countRoundTrips;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "connection-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public PooledConnection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long start = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.increment();
+                throw new SQLTimeoutException("Timed out after " + maxWaitMillis
+                        + "ms waiting for a database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        } finally {
+            waitNanos.add(System.nanoTime() - start);
+        }
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                idleCount.decrementAndGet();
+                if (needsValidation(pooled) && !pooled.isValid(validationTimeoutSeconds)) {
+                    validationFailures.increment();
+                    destroy(pooled);
+                    continue;
+                }
+                break;
+            }
+            if (pooled == null) {
+                pooled = open();
+            }
+            pooled.touch();
+            activeCount.incrementAndGet();
+            borrowed.increment();
+            return pooled;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public void release(PooledConnection pooled) {
+        if (pooled == null) {
+            return;
+        }
+        activeCount.decrementAndGet();
+        try {
+            if (closed || pooled.isBroken()) {
+                destroy(pooled);
+                return;
+            }
+            try {
+                pooled.reset();
+            } catch (SQLException e) {
+                destroy(pooled);
+                return;
+            }
+            pooled.touch();
+            idle.offerFirst(pooled);
+            idleCount.incrementAndGet();
+        } finally {
+            permits.release();
+        }
+    }
+
+    // closes connections that have been sitting idle for longer than the idle timeout
+    void evictIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext()) {
+            PooledConnection pooled = it.next();
+            if (now - pooled.getLastUsedAt() < idleTimeoutMillis) {
+                // everything in front of this one was used more recently
+                break;
+            }
+            if (idle.removeLastOccurrence(pooled)) {
+                idleCount.decrementAndGet();
+                destroy(pooled);
+            }
+        }
+    }
+
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            idleCount.decrementAndGet();
+            destroy(pooled);
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(maxSize, activeCount.get(), idleCount.get(), created.sum(), destroyed.sum(),
+                borrowed.sum(), timeouts.sum(), validationFailures.sum(),
+                TimeUnit.NANOSECONDS.toMicros(waitNanos.sum()), statementHits.sum(), statementMisses.sum(),
+                statementEvictions.sum());
+    }
+
+    private boolean needsValidation(PooledConnection pooled) {
+        return System.currentTimeMillis() - pooled.getLastUsedAt() >= validationIntervalMillis;
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection con = DriverManager.getConnection(url, userName, userPass);
+        created.increment();
+        Metrics.getInstance().recordConnectionOpened();
+        if (countRoundTrips) {
+            con = CountingConnection.wrap(con);
+        }
+        return new PooledConnection(con, new StatementCache(con, statementCacheSize,
+                statementHits, statementMisses, statementEvictions));
+    }
+
+    private void destroy(PooledConnection pooled) {
+        pooled.closeQuietly();
+        destroyed.increment();
+    }
+
+    public static class Stats {
+        private final int maxSize;
+        private final int active;
+        private final int idle;
+        private final long created;
+        private final long destroyed;
+        private final long borrowed;
+        private final long timeouts;
+        private final long validationFailures;
+        private final long totalWaitMicros;
+        private final long statementHits;
+        private final long statementMisses;
+        private final long statementEvictions;
+
+        private Stats(int maxSize, int active, int idle, long created, long destroyed, long borrowed,
+                      long timeouts, long validationFailures, long totalWaitMicros, long statementHits,
+                      long statementMisses, long statementEvictions) {
+            this.maxSize = maxSize;
+            this.active = active;
+            this.idle = idle;
+            this.created = created;
+            this.destroyed = destroyed;
+            this.borrowed = borrowed;
+            this.timeouts = timeouts;
+            this.validationFailures = validationFailures;
+            this.totalWaitMicros = totalWaitMicros;
+            this.statementHits = statementHits;
+            this.statementMisses = statementMisses;
+            this.statementEvictions = statementEvictions;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public int getActive() {
+            return active;
+        }
+
+        public int getIdle() {
+            return idle;
+        }
+
+        public long getCreated() {
+            return created;
+        }
+
+        public long getDestroyed() {
+            return destroyed;
+        }
+
+        public long getBorrowed() {
+            return borrowed;
+        }
+
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        public long getValidationFailures() {
+            return validationFailures;
+        }
+
+        public long getTotalWaitMicros() {
+            return totalWaitMicros;
+        }
+
+        public long getStatementHits() {
+            return statementHits;
+        }
+
+        public long getStatementMisses() {
+            return statementMisses;
+        }
+
+        public long getStatementEvictions() {
+            return statementEvictions;
+        }
+
+        @Override
+        public String toString() {
+            return "Pool{" +
+                    "max=" + maxSize +
+                    ", active=" + active +
+                    ", idle=" + idle +
+                    ", created=" + created +
+                    ", destroyed=" + destroyed +
+                    ", borrowed=" + borrowed +
+                    ", timeouts=" + timeouts +
+                    ", validationFailures=" + validationFailures +
+                    ", avgWaitMicros=" + (borrowed == 0 ? 0 : totalWaitMicros / borrowed) +
+                    ", statementHits=" + statementHits +
+                    ", statementMisses=" + statementMisses +
+                    ", statementEvictions=" + statementEvictions +
+                    '}';
+        }
+    }
+
+    public static class Builder {
+        private final String url;
+        private final String userName;
+        private final String userPass;
+        private int maxSize = 10;
+        private long maxWaitMillis = 5_000;
+        private long idleTimeoutMillis = 300_000;
+        private long validationIntervalMillis = 30_000;
+        private int validationTimeoutSeconds = 2;
+        // room for every statement, so a connection never evicts one it will prepare again
+        private int statementCacheSize = SqlStatement.values().length;
+        private boolean countRoundTrips = true;
+
+        public Builder(String url, String userName, String userPass) {
+            this.url = url;
+            this.userName = userName;
+            this.userPass = userPass;
+        }
+
+        public Builder maxSize(int maxSize) {
+            if (maxSize <= 0) {
+                throw new IllegalArgumentException("Pool size must be positive!");
+            }
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        public Builder maxWaitMillis(long maxWaitMillis) {
+            this.maxWaitMillis = maxWaitMillis;
+            return this;
+        }
+
+        public Builder idleTimeoutMillis(long idleTimeoutMillis) {
+            this.idleTimeoutMillis = idleTimeoutMillis;
+            return this;
+        }
+
+        public Builder validationIntervalMillis(long validationIntervalMillis) {
+            this.validationIntervalMillis = validationIntervalMillis;
+            return this;
+        }
+
+        public Builder validationTimeoutSeconds(int validationTimeoutSeconds) {
+            this.validationTimeoutSeconds = validationTimeoutSeconds;
+            return this;
+        }
+
+        public Builder statementCacheSize(int statementCacheSize) {
+            if (statementCacheSize <= 0) {
+                throw new IllegalArgumentException("Statement cache size must be positive!");
+            }
+            this.statementCacheSize = statementCacheSize;
+            return this;
+        }
+
+        public Builder countRoundTrips(boolean countRoundTrips) {
+            this.countRoundTrips = countRoundTrips;
+            return this;
+        }
+
+        public ConnectionPool build() {
+            return new ConnectionPool(this);
+        }
+    }
+}
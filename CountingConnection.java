@@ -0,0 +1,66 @@
+package scheduler.db;
+
+import scheduler.util.Metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Set;
+
+// Wraps a connection, and every statement it creates, so that each call that goes to the server
+// counts as a round trip in Metrics: statement executions, commit, rollback, switching autocommit
+// and validation. Further fetches while reading a large result set are not seen.
+class CountingConnection {
+    private static final Set<String> CONNECTION_ROUND_TRIPS = Set.of("commit", "rollback", "setAutoCommit", "isValid");
+    private static final Set<String> STATEMENT_ROUND_TRIPS = Set.of("execute", "executeQuery", "executeUpdate",
+            "executeBatch", "executeLargeUpdate", "executeLargeBatch");
+
+    private CountingConnection() {
+    }
+
+    static Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new Handler(connection, null));
+    }
+
+    private static class Handler implements InvocationHandler {
+        private final Object target;
+        // the wrapped connection, for statements (Statement.getConnection must not leak the raw one)
+        private final Connection owner;
+
+        private Handler(Object target, Connection owner) {
+            this.target = target;
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("equals") && method.getParameterCount() == 1) {
+                return proxy == args[0];
+            } else if (name.equals("hashCode") && method.getParameterCount() == 0) {
+                return System.identityHashCode(proxy);
+            } else if (owner != null && name.equals("getConnection")) {
+                return owner;
+            }
+            if ((owner == null ? CONNECTION_ROUND_TRIPS : STATEMENT_ROUND_TRIPS).contains(name)) {
+                Metrics.getInstance().recordRoundTrip();
+            }
+            Object result;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (owner == null && result instanceof Statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+                // createStatement, prepareStatement and prepareCall: keep the declared type
+                return Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                        new Class<?>[]{method.getReturnType()}, new Handler(result, (Connection) proxy));
+            }
+            return result;
+        }
+    }
+}
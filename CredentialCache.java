@@ -0,0 +1,148 @@
+package scheduler.service;
+
+import scheduler.util.Config;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+// Recently verified logins, so that logging the same account in again skips the credential
+// query and the PBKDF2 work. Passwords are never kept: an entry holds an HMAC of the password
+// under a key that only lives in this process, and a login hits only if its password has the
+// same HMAC. Entries expire after scheduler.auth.cacheTtlMillis, the least recently used ones
+// are dropped beyond scheduler.auth.cacheSize, and invalidate() removes an account right away
+// (and tells the listeners, e.g. the session registry, to drop what they hold for it).
+public class CredentialCache {
+    private static final CredentialCache INSTANCE = new CredentialCache(
+            Config.getInt("scheduler.auth.cacheSize", 1024),
+            Config.getLong("scheduler.auth.cacheTtlMillis", 600_000));
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final SecretKeySpec key;
+    // Mac instances are not thread-safe
+    private final ThreadLocal<Mac> macs;
+
+    // guarded by this
+    private final LinkedHashMap<String, Entry> entries;
+    private final List<BiConsumer<AccountService.Role, String>> listeners = new CopyOnWriteArrayList<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public CredentialCache(int maxSize, long ttlMillis) {
+        if (maxSize < 0 || ttlMillis < 0) {
+            throw new IllegalArgumentException("Cache size and TTL cannot be negative!");
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        this.key = new SecretKeySpec(secret, "HmacSHA256");
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > CredentialCache.this.maxSize;
+            }
+        };
+    }
+
+    public static CredentialCache getInstance() {
+        return INSTANCE;
+    }
+
+    // the account verified earlier with this password, or null
+    public <T> T lookup(AccountService.Role role, String username, String password, Class<T> type) {
+        byte[] mac = mac(role, username, password);
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key(role, username));
+            if (entry != null && System.nanoTime() - entry.verifiedAt > ttlNanos) {
+                entries.remove(key(role, username));
+                entry = null;
+            }
+        }
+        if (entry == null || !MessageDigest.isEqual(entry.mac, mac) || !type.isInstance(entry.account)) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return type.cast(entry.account);
+    }
+
+    public void put(AccountService.Role role, String username, String password, Object account) {
+        if (maxSize == 0) {
+            return;
+        }
+        Entry entry = new Entry(mac(role, username, password), account, System.nanoTime());
+        synchronized (this) {
+            entries.put(key(role, username), entry);
+        }
+    }
+
+    // the account's credentials changed (or it was created): forget what we know about it
+    public void invalidate(AccountService.Role role, String username) {
+        synchronized (this) {
+            entries.remove(key(role, username));
+        }
+        for (BiConsumer<AccountService.Role, String> listener : listeners) {
+            listener.accept(role, username);
+        }
+    }
+
+    public void addInvalidationListener(BiConsumer<AccountService.Role, String> listener) {
+        listeners.add(listener);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private static String key(AccountService.Role role, String username) {
+        return role.name() + ':' + username;
+    }
+
+    // bound to the account, so equal passwords of different accounts have different MACs
+    private byte[] mac(AccountService.Role role, String username, String password) {
+        return macs.get().doFinal((key(role, username) + '\0' + password).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static class Entry {
+        private final byte[] mac;
+        private final Object account;
+        private final long verifiedAt;
+
+        private Entry(byte[] mac, Object account, long verifiedAt) {
+            this.mac = mac;
+            this.account = account;
+            this.verifiedAt = verifiedAt;
+        }
+    }
+}
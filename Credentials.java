@@ -0,0 +1,34 @@
+package scheduler.store;
+
+import scheduler.util.PasswordHasher;
+
+// What an account stores about its password: salt, hash and the parameters the hash was made with.
+public class Credentials {
+    private final byte[] salt;
+    private final byte[] hash;
+    private final PasswordHasher.Algorithm algorithm;
+    private final int iterations;
+
+    public Credentials(byte[] salt, byte[] hash, PasswordHasher.Algorithm algorithm, int iterations) {
+        this.salt = salt;
+        this.hash = hash;
+        this.algorithm = algorithm;
+        this.iterations = iterations;
+    }
+
+    public byte[] getSalt() {
+        return salt;
+    }
+
+    public byte[] getHash() {
+        return hash;
+    }
+
+    public PasswordHasher.Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+}
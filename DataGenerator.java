@@ -0,0 +1,142 @@
+package scheduler.bench;
+
+import scheduler.service.AccountService;
+import scheduler.service.AvailabilityIndex;
+import scheduler.service.InventoryService;
+import scheduler.service.UsernameFilter;
+import scheduler.store.Credentials;
+import scheduler.store.Storage;
+import scheduler.util.Config;
+import scheduler.util.PasswordHasher;
+import scheduler.util.Util;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// Seeds a schema (see create.sql) with a reproducible data set: N patients, M caregivers each
+// available on D consecutive dates, and V vaccines. Usernames are <prefix>_p<i> and <prefix>_c<i>,
+// vaccines <prefix>_v<i>, and every account has the password PASSWORD. All accounts of a role
+// share one salt and hash, so seeding costs inserts rather than hashing. Accounts go in BATCH at a
+// time and availabilities one caregiver at a time, through the configured Storage, and the
+// in-memory availability index and username filters are kept up to date.
+public class DataGenerator {
+    public static final String PASSWORD = "bench-password";
+    private static final int BATCH = 1000;
+
+    private final String prefix;
+    private final int patients;
+    private final int caregivers;
+    private final int dates;
+    private final int vaccines;
+    private final int doses;
+    private final LocalDate firstDate;
+
+    public DataGenerator(String prefix, int patients, int caregivers, int dates, int vaccines, int doses,
+                         LocalDate firstDate) {
+        if (patients <= 0 || caregivers <= 0 || dates <= 0 || vaccines <= 0 || doses <= 0) {
+            throw new IllegalArgumentException("Data set sizes must be positive!");
+        }
+        this.prefix = prefix;
+        this.patients = patients;
+        this.caregivers = caregivers;
+        this.dates = dates;
+        this.vaccines = vaccines;
+        this.doses = doses;
+        this.firstDate = firstDate;
+    }
+
+    public static DataGenerator fromConfig() {
+        return new DataGenerator(
+                Config.get("scheduler.bench.prefix", "bench"),
+                Config.getInt("scheduler.bench.patients", 1000),
+                Config.getInt("scheduler.bench.caregivers", 100),
+                Config.getInt("scheduler.bench.dates", 30),
+                Config.getInt("scheduler.bench.vaccines", 5),
+                Config.getInt("scheduler.bench.doses", 100_000_000),
+                LocalDate.parse(Config.get("scheduler.bench.firstDate", "2030-01-01")));
+    }
+
+    public String getPrefix() {
+        return prefix;
+    }
+
+    public String patient(int i) {
+        return prefix + "_p" + i;
+    }
+
+    public String caregiver(int i) {
+        return prefix + "_c" + i;
+    }
+
+    public String vaccine(int i) {
+        return prefix + "_v" + i;
+    }
+
+    public LocalDate date(int i) {
+        return firstDate.plusDays(i);
+    }
+
+    public int getPatients() {
+        return patients;
+    }
+
+    public int getCaregivers() {
+        return caregivers;
+    }
+
+    public int getDates() {
+        return dates;
+    }
+
+    public int getVaccines() {
+        return vaccines;
+    }
+
+    // inserts the data set unless its first patient already exists; returns whether it did
+    public boolean seed() throws SQLException {
+        if (AccountService.usernameExists(AccountService.Role.PATIENT, patient(0))) {
+            return false;
+        }
+        insertAccounts(AccountService.Role.PATIENT, patients);
+        insertAccounts(AccountService.Role.CAREGIVER, caregivers);
+        insertAvailabilities();
+        for (int i = 0; i < vaccines; i++) {
+            InventoryService.getInstance().addOrCreate(vaccine(i), doses);
+        }
+        return true;
+    }
+
+    private void insertAccounts(AccountService.Role role, int count) throws SQLException {
+        boolean patient = role == AccountService.Role.PATIENT;
+        PasswordHasher hasher = PasswordHasher.getInstance();
+        byte[] salt = Util.generateSalt();
+        Credentials credentials = new Credentials(salt, hasher.hash(PASSWORD, salt), hasher.getAlgorithm(),
+                hasher.getIterations());
+        UsernameFilter filter = UsernameFilter.getInstance();
+        for (int from = 0; from < count; from += BATCH) {
+            List<String> usernames = new ArrayList<>(BATCH);
+            for (int i = from; i < Math.min(count, from + BATCH); i++) {
+                usernames.add(patient ? patient(i) : caregiver(i));
+            }
+            Storage.getInstance().accounts().insertAll(role, usernames,
+                    Collections.nCopies(usernames.size(), credentials));
+            for (String username : usernames) {
+                filter.add(role, username);
+            }
+        }
+    }
+
+    private void insertAvailabilities() throws SQLException {
+        List<LocalDate> days = new ArrayList<>(dates);
+        for (int d = 0; d < dates; d++) {
+            days.add(date(d));
+        }
+        for (int c = 0; c < caregivers; c++) {
+            Storage.getInstance().availabilities().addAll(caregiver(c), days);
+            AvailabilityIndex.getInstance().addAll(caregiver(c), days);
+        }
+    }
+}
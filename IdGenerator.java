@@ -0,0 +1,22 @@
+package scheduler.util;
+
+import java.util.UUID;
+
+// Source of appointment ids. The default is time-ordered (see TimeOrderedIdGenerator);
+// scheduler.id.generator=uuid switches back to random UUIDs.
+public interface IdGenerator {
+
+    String next();
+
+    static IdGenerator fromConfig() {
+        String kind = Config.get("scheduler.id.generator", "time");
+        switch (kind) {
+            case "time":
+                return new TimeOrderedIdGenerator(TimeOrderedIdGenerator.nodeFromConfig());
+            case "uuid":
+                return () -> UUID.randomUUID().toString();
+            default:
+                throw new IllegalArgumentException("Unknown id generator: " + kind);
+        }
+    }
+}
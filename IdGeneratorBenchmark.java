@@ -0,0 +1,62 @@
+package scheduler.bench;
+
+import scheduler.util.IdGenerator;
+import scheduler.util.TimeOrderedIdGenerator;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+// Compares the time-ordered generator with UUID.randomUUID on 1..threads threads.
+// Usage: IdGeneratorBenchmark [threads] [seconds per run]
+public class IdGeneratorBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        IdGenerator timeOrdered = new TimeOrderedIdGenerator(0);
+        IdGenerator uuid = () -> UUID.randomUUID().toString();
+
+        // warm up both before measuring
+        run(timeOrdered, maxThreads, 1);
+        run(uuid, maxThreads, 1);
+
+        System.out.printf("%-8s %16s %16s%n", "threads", "time-ordered/s", "uuid/s");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double t = run(timeOrdered, threads, seconds);
+            double u = run(uuid, threads, seconds);
+            System.out.printf("%-8d %16.0f %16.0f%n", threads, t, u);
+        }
+    }
+
+    private static double run(IdGenerator generator, int threads, int seconds) throws InterruptedException {
+        LongAdder count = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long n = 0;
+                int sink = 0;
+                while (System.nanoTime() < deadline) {
+                    for (int j = 0; j < 1000; j++) {
+                        sink += generator.next().length();
+                    }
+                    n += 1000;
+                }
+                count.add(n + (sink == 0 ? 1 : 0));
+            });
+            workers[i].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return count.sum() / (double) seconds;
+    }
+}
@@ -0,0 +1,178 @@
+package scheduler.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Append-only log of dose changes ("<seq>\t<vaccine>\t<delta>" per line). A change is appended
+// (and forced to disk when sync is on) before it is acknowledged, and every record carries a
+// sequence number so recovery can skip what the last checkpoint already wrote to the database.
+class InventoryJournal {
+    private final Path path;
+    private final boolean sync;
+    private FileChannel channel;
+    private long lastSeq;
+    private long records = 0;
+    // deltas appended since the last drain, i.e. not yet handed to a flush
+    private Map<String, Long> pending = new HashMap<>();
+    // segments of failed flushes, deleted with the next successful one
+    private final List<Path> retained = new ArrayList<>();
+
+    InventoryJournal(Path path, boolean sync, long lastSeq) throws IOException {
+        this.path = path;
+        this.sync = sync;
+        this.lastSeq = lastSeq;
+        this.channel = open(path);
+    }
+
+    synchronized long append(String vaccineName, long delta) throws IOException {
+        long seq = lastSeq + 1;
+        byte[] line = (seq + "\t" + vaccineName + "\t" + delta + "\n").getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.wrap(line);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        if (sync) {
+            channel.force(false);
+        }
+        lastSeq = seq;
+        records++;
+        pending.merge(vaccineName, delta, Long::sum);
+        return seq;
+    }
+
+    // Hands the pending deltas to a flush and starts a new segment; the old segments are kept
+    // until the flush is checkpointed (see discard). Returns null when nothing was appended.
+    synchronized Drain drain() throws IOException {
+        if (pending.isEmpty() && retained.isEmpty()) {
+            return null;
+        }
+        Map<String, Long> deltas = pending;
+        pending = new HashMap<>();
+        List<Path> segments = new ArrayList<>(retained);
+        retained.clear();
+        if (!deltas.isEmpty()) {
+            channel.close();
+            Path segment = path.resolveSibling(path.getFileName() + "." + lastSeq);
+            Files.move(path, segment);
+            channel = open(path);
+            segments.add(segment);
+        }
+        return new Drain(lastSeq, deltas, segments);
+    }
+
+    // a flush failed: its deltas are pending again and its segments stay for recovery
+    synchronized void restore(Drain drain) {
+        for (Map.Entry<String, Long> entry : drain.deltas.entrySet()) {
+            pending.merge(entry.getKey(), entry.getValue(), Long::sum);
+        }
+        retained.addAll(drain.segments);
+    }
+
+    // the drain is checkpointed, so nothing in its segments is needed for recovery any more
+    void discard(Drain drain) throws IOException {
+        for (Path segment : drain.segments) {
+            Files.deleteIfExists(segment);
+        }
+    }
+
+    synchronized long getLastSeq() {
+        return lastSeq;
+    }
+
+    synchronized long getRecords() {
+        return records;
+    }
+
+    synchronized int getPendingVaccines() {
+        return pending.size();
+    }
+
+    synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    // Everything journaled after the checkpoint, summed per vaccine, from the live journal
+    // and any segments left behind by flushes that never completed.
+    static Recovery recover(Path path, long checkpoint) throws IOException {
+        Map<String, Long> deltas = new HashMap<>();
+        long maxSeq = checkpoint;
+        List<Path> files = new ArrayList<>();
+        Path dir = path.toAbsolutePath().getParent();
+        String name = path.getFileName().toString();
+        if (Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, name + "*")) {
+                for (Path file : stream) {
+                    String fileName = file.getFileName().toString();
+                    if (fileName.equals(name) || fileName.substring(name.length()).matches("\\.\\d+")) {
+                        files.add(file);
+                    }
+                }
+            }
+        }
+        for (Path file : files) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t");
+                    if (fields.length != 3) {
+                        // torn write at the end of the file: never acknowledged
+                        continue;
+                    }
+                    long seq;
+                    long delta;
+                    try {
+                        seq = Long.parseLong(fields[0]);
+                        delta = Long.parseLong(fields[2]);
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                    maxSeq = Math.max(maxSeq, seq);
+                    if (seq > checkpoint) {
+                        deltas.merge(fields[1], delta, Long::sum);
+                    }
+                }
+            }
+        }
+        return new Recovery(deltas, maxSeq, files);
+    }
+
+    static class Drain {
+        final long seq;
+        final Map<String, Long> deltas;
+        final List<Path> segments;
+
+        Drain(long seq, Map<String, Long> deltas, List<Path> segments) {
+            this.seq = seq;
+            this.deltas = deltas;
+            this.segments = segments;
+        }
+    }
+
+    static class Recovery {
+        final Map<String, Long> deltas;
+        final long maxSeq;
+        final List<Path> files;
+
+        Recovery(Map<String, Long> deltas, long maxSeq, List<Path> files) {
+            this.deltas = deltas;
+            this.maxSeq = maxSeq;
+            this.files = files;
+        }
+    }
+}
@@ -0,0 +1,394 @@
+package scheduler.service;
+
+import scheduler.store.Storage;
+import scheduler.store.VaccineStore;
+import scheduler.util.Config;
+import scheduler.util.StripedCounter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Keeps the dose count of every vaccine in memory in a StripedCounter, so reserving and canceling
+// never touch the Vaccines row. Every change is appended to a journal before it is acknowledged;
+// a background task periodically adds the accumulated deltas to the Vaccines table and records
+// the last journal sequence number it covered in InventoryCheckpoints, in one transaction. On
+// startup anything journaled after the checkpoint is replayed into the table first.
+// The write-behind assumes this process is the only one changing the Vaccines table.
+// Vaccine names compare without regard to case, as they do in the table, so every vaccine has
+// one counter whatever case it is asked for in; journal entries carry the name the counter was
+// loaded under.
+public class InventoryService {
+    private static final InventoryService INSTANCE = fromConfig();
+
+    private final Path journalPath;
+    private final boolean journalSync;
+    private final long flushMillis;
+    private final String nodeId;
+
+    // lower-cased vaccine name -> stock
+    private final ConcurrentHashMap<String, Stock> stocks = new ConcurrentHashMap<>();
+    private final Object createLock = new Object();
+    private final Object flushLock = new Object();
+    private volatile InventoryJournal journal = null;
+    private ScheduledExecutorService flusher = null;
+
+    private final LongAdder taken = new LongAdder();
+    private final LongAdder refused = new LongAdder();
+    private final LongAdder added = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder flushFailures = new LongAdder();
+
+    public InventoryService(Path journalPath, boolean journalSync, long flushMillis, String nodeId) {
+        if (flushMillis <= 0) {
+            throw new IllegalArgumentException("Flush interval must be positive!");
+        }
+        this.journalPath = journalPath;
+        this.journalSync = journalSync;
+        this.flushMillis = flushMillis;
+        this.nodeId = nodeId;
+    }
+
+    public static InventoryService getInstance() {
+        return INSTANCE;
+    }
+
+    private static InventoryService fromConfig() {
+        Path journalPath = Paths.get(Config.get("scheduler.inventory.journal", "inventory.journal"));
+        boolean journalSync = Config.getBoolean("scheduler.inventory.journalSync", true);
+        if (!Storage.getInstance().isDurable()) {
+            // nothing outlives the process, so the journal must not be replayed into a real
+            // database later: keep it in a directory of its own and skip the fsync
+            try {
+                journalPath = Files.createTempDirectory("scheduler-inventory").resolve("inventory.journal");
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to create inventory journal directory", e);
+            }
+            journalSync = false;
+        }
+        return new InventoryService(journalPath, journalSync, Config.getLong("scheduler.inventory.flushMillis", 1_000),
+                Config.get("scheduler.node.id", "default"));
+    }
+
+    public boolean exists(String vaccineName) throws SQLException {
+        return stock(vaccineName) != null;
+    }
+
+    // available doses, or null if there is no such vaccine
+    public Integer getAvailable(String vaccineName) throws SQLException {
+        Stock stock = stock(vaccineName);
+        return stock == null ? null : (int) stock.counter.sum();
+    }
+
+    // takes n doses if that many are available; false if not (or if there is no such vaccine)
+    public boolean tryTake(String vaccineName, int n) throws SQLException {
+        Stock stock = stock(vaccineName);
+        if (stock == null || !stock.counter.tryDecrement(n)) {
+            refused.increment();
+            return false;
+        }
+        try {
+            journal.append(stock.name, -n);
+        } catch (IOException e) {
+            stock.counter.add(n);
+            throw new SQLException("Failed to journal dose change for " + vaccineName, e);
+        }
+        taken.add(n);
+        return true;
+    }
+
+    public boolean tryTake(String vaccineName) throws SQLException {
+        return tryTake(vaccineName, 1);
+    }
+
+    // returns n doses to an existing vaccine; false if there is no such vaccine
+    public boolean add(String vaccineName, int n) throws SQLException {
+        if (n <= 0) {
+            throw new IllegalArgumentException("Argument cannot be negative!");
+        }
+        Stock stock = stock(vaccineName);
+        if (stock == null) {
+            return false;
+        }
+        try {
+            journal.append(stock.name, n);
+        } catch (IOException e) {
+            throw new SQLException("Failed to journal dose change for " + vaccineName, e);
+        }
+        stock.counter.add(n);
+        added.add(n);
+        return true;
+    }
+
+    // Adds n doses, creating the vaccine if it does not exist yet; n may be 0 to only create it.
+    // Returns the doses available afterwards.
+    public int addOrCreate(String vaccineName, int n) throws SQLException {
+        if (n < 0) {
+            throw new IllegalArgumentException("Argument cannot be negative!");
+        }
+        if (!addIfExists(vaccineName, n)) {
+            synchronized (createLock) {
+                if (!addIfExists(vaccineName, n)) {
+                    create(vaccineName, n);
+                }
+            }
+        }
+        return getAvailable(vaccineName);
+    }
+
+    private boolean addIfExists(String vaccineName, int n) throws SQLException {
+        return n == 0 ? exists(vaccineName) : add(vaccineName, n);
+    }
+
+    // inserts a new vaccine row right away; fails like the insert if the vaccine already exists
+    public void create(String vaccineName, int doses) throws SQLException {
+        if (doses < 0) {
+            throw new IllegalArgumentException("Argument cannot be negative!");
+        }
+        ensureLoaded();
+        synchronized (createLock) {
+            Storage.getInstance().vaccines().insert(vaccineName, doses);
+            stocks.computeIfAbsent(key(vaccineName), k -> new Stock(vaccineName, doses));
+            added.add(doses);
+        }
+    }
+
+    // vaccine name -> available doses, in name order
+    public Map<String, Integer> snapshot() throws SQLException {
+        ensureLoaded();
+        Map<String, Integer> vaccines = new TreeMap<>();
+        for (Stock stock : stocks.values()) {
+            vaccines.put(stock.name, (int) stock.counter.sum());
+        }
+        return vaccines;
+    }
+
+    // the stock of a vaccine; one created behind our back is picked up from the database
+    private Stock stock(String vaccineName) throws SQLException {
+        ensureLoaded();
+        String key = key(vaccineName);
+        Stock stock = stocks.get(key);
+        if (stock != null) {
+            return stock;
+        }
+        Integer doses = Storage.getInstance().vaccines().find(vaccineName);
+        if (doses == null) {
+            return null;
+        }
+        return stocks.computeIfAbsent(key, k -> new Stock(vaccineName, Math.max(0, doses)));
+    }
+
+    private static String key(String vaccineName) {
+        return vaccineName.toLowerCase(Locale.ROOT);
+    }
+
+    private void ensureLoaded() throws SQLException {
+        if (journal != null) {
+            return;
+        }
+        synchronized (this) {
+            if (journal != null) {
+                return;
+            }
+            long checkpoint = recover();
+            try {
+                journal = new InventoryJournal(journalPath, journalSync, checkpoint);
+            } catch (IOException e) {
+                throw new SQLException("Failed to open inventory journal " + journalPath, e);
+            }
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "inventory-flusher");
+                t.setDaemon(true);
+                return t;
+            });
+            flusher.scheduleWithFixedDelay(() -> {
+                try {
+                    flush();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+            Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "inventory-shutdown"));
+        }
+    }
+
+    // Replays what the journal holds beyond the checkpoint, then loads every counter.
+    // Returns the sequence number the new journal continues from.
+    private long recover() throws SQLException {
+        VaccineStore vaccines = Storage.getInstance().vaccines();
+        long checkpoint = vaccines.checkpoint(nodeId);
+        InventoryJournal.Recovery recovery;
+        try {
+            recovery = InventoryJournal.recover(journalPath, checkpoint);
+        } catch (IOException e) {
+            throw new SQLException("Failed to read inventory journal " + journalPath, e);
+        }
+        if (recovery.maxSeq > checkpoint) {
+            vaccines.applyDeltas(recovery.deltas, nodeId, recovery.maxSeq);
+            checkpoint = recovery.maxSeq;
+        }
+        for (Path file : recovery.files) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                // everything in it is checkpointed, so recovery will skip it next time
+                e.printStackTrace();
+            }
+        }
+
+        for (Map.Entry<String, Integer> vaccine : vaccines.findAll().entrySet()) {
+            stocks.put(key(vaccine.getKey()), new Stock(vaccine.getKey(), Math.max(0, vaccine.getValue())));
+        }
+        return checkpoint;
+    }
+
+    // writes everything journaled so far to the Vaccines table
+    public void flush() throws SQLException {
+        InventoryJournal j = journal;
+        if (j == null) {
+            return;
+        }
+        synchronized (flushLock) {
+            InventoryJournal.Drain drain;
+            try {
+                drain = j.drain();
+            } catch (IOException e) {
+                throw new SQLException("Failed to rotate inventory journal " + journalPath, e);
+            }
+            if (drain == null) {
+                return;
+            }
+            try {
+                Storage.getInstance().vaccines().applyDeltas(drain.deltas, nodeId, drain.seq);
+            } catch (SQLException | RuntimeException e) {
+                j.restore(drain);
+                flushFailures.increment();
+                throw e;
+            }
+            flushes.increment();
+            try {
+                j.discard(drain);
+            } catch (IOException e) {
+                // already checkpointed: recovery skips these records
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // flushes what is left and stops the background task; safe to call more than once, and a
+    // second caller waits for the first to finish
+    public synchronized void shutdown() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(flushMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flusher = null;
+        try {
+            flush();
+        } catch (SQLException e) {
+            // the journal still has it and the next startup replays it
+            e.printStackTrace();
+        }
+    }
+
+    public Stats getStats() {
+        InventoryJournal j = journal;
+        return new Stats(stocks.size(), taken.sum(), refused.sum(), added.sum(), flushes.sum(),
+                flushFailures.sum(), j == null ? 0 : j.getRecords(), j == null ? 0 : j.getLastSeq());
+    }
+
+    private static class Stock {
+        private final String name;
+        private final StripedCounter counter;
+
+        private Stock(String name, long doses) {
+            this.name = name;
+            this.counter = new StripedCounter(doses);
+        }
+    }
+
+    public static class Stats {
+        private final int vaccines;
+        private final long taken;
+        private final long refused;
+        private final long added;
+        private final long flushes;
+        private final long flushFailures;
+        private final long journalRecords;
+        private final long journalSeq;
+
+        private Stats(int vaccines, long taken, long refused, long added, long flushes, long flushFailures,
+                      long journalRecords, long journalSeq) {
+            this.vaccines = vaccines;
+            this.taken = taken;
+            this.refused = refused;
+            this.added = added;
+            this.flushes = flushes;
+            this.flushFailures = flushFailures;
+            this.journalRecords = journalRecords;
+            this.journalSeq = journalSeq;
+        }
+
+        public int getVaccines() {
+            return vaccines;
+        }
+
+        public long getTaken() {
+            return taken;
+        }
+
+        // takes refused because the vaccine was unknown or out of doses
+        public long getRefused() {
+            return refused;
+        }
+
+        public long getAdded() {
+            return added;
+        }
+
+        public long getFlushes() {
+            return flushes;
+        }
+
+        public long getFlushFailures() {
+            return flushFailures;
+        }
+
+        public long getJournalRecords() {
+            return journalRecords;
+        }
+
+        public long getJournalSeq() {
+            return journalSeq;
+        }
+
+        @Override
+        public String toString() {
+            return "Inventory{" +
+                    "vaccines=" + vaccines +
+                    ", taken=" + taken +
+                    ", refused=" + refused +
+                    ", added=" + added +
+                    ", flushes=" + flushes +
+                    ", flushFailures=" + flushFailures +
+                    ", journalRecords=" + journalRecords +
+                    ", journalSeq=" + journalSeq +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package scheduler.db;
+
+import scheduler.service.AccountService;
+import scheduler.store.AccountStore;
+import scheduler.store.Credentials;
+import scheduler.util.Config;
+import scheduler.util.PasswordHasher;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.function.Consumer;
+
+public class JdbcAccountStore implements AccountStore {
+    // SQL Server accepts at most 2100 parameters per statement
+    private static final int MAX_IN_LIST = 2000;
+    // IN lists are padded with NULLs to a multiple of this, so only a few distinct statements are ever planned
+    private static final int IN_LIST_STEP = 100;
+    // rows fetched per round trip while streaming usernames
+    private static final int FETCH_SIZE = Config.getInt("scheduler.usernames.fetchSize", 1000);
+
+    public JdbcAccountStore() {
+    }
+
+    @Override
+    public Credentials find(AccountService.Role role, String username) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            PreparedStatement statement = cm.prepare(isPatient(role)
+                    ? SqlStatement.SELECT_PATIENT_CREDENTIALS : SqlStatement.SELECT_CAREGIVER_CREDENTIALS);
+            statement.setString(1, username);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return null;
+                }
+                byte[] salt = resultSet.getBytes("Salt");
+                byte[] hash = resultSet.getBytes("Hash");
+                PasswordHasher.Algorithm algorithm = PasswordHasher.Algorithm.fromStored(resultSet.getString("HashAlgo"));
+                int iterations = resultSet.getInt("Iterations");
+                if (resultSet.wasNull()) {
+                    iterations = PasswordHasher.LEGACY_ITERATIONS;
+                }
+                return new Credentials(salt, hash, algorithm, iterations);
+            }
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public boolean exists(AccountService.Role role, String username) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            PreparedStatement statement = cm.prepare(isPatient(role)
+                    ? SqlStatement.PATIENT_EXISTS : SqlStatement.CAREGIVER_EXISTS);
+            statement.setString(1, username);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public Set<String> existing(AccountService.Role role, Collection<String> usernames) throws SQLException {
+        Set<String> taken = new HashSet<>();
+        if (usernames.isEmpty()) {
+            return taken;
+        }
+        List<String> names = new ArrayList<>(usernames);
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            Connection con = cm.createConnection();
+            for (int from = 0; from < names.size(); from += MAX_IN_LIST) {
+                List<String> part = names.subList(from, Math.min(names.size(), from + MAX_IN_LIST));
+                int size = Math.min(MAX_IN_LIST, (part.size() + IN_LIST_STEP - 1) / IN_LIST_STEP * IN_LIST_STEP);
+                // unused IN slots are bound to NULL, which matches nothing
+                try (PreparedStatement statement = con.prepareStatement(existingSql(role, size))) {
+                    for (int i = 0; i < size; i++) {
+                        if (i < part.size()) {
+                            statement.setString(i + 1, part.get(i));
+                        } else {
+                            statement.setNull(i + 1, Types.VARCHAR);
+                        }
+                    }
+                    Set<String> found = new HashSet<>();
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            found.add(resultSet.getString(1).toLowerCase(Locale.ROOT));
+                        }
+                    }
+                    for (String name : part) {
+                        if (found.contains(name.toLowerCase(Locale.ROOT))) {
+                            taken.add(name);
+                        }
+                    }
+                }
+            }
+        } finally {
+            cm.closeConnection();
+        }
+        return taken;
+    }
+
+    private static String existingSql(AccountService.Role role, int size) {
+        StringBuilder sql = new StringBuilder("SELECT Username FROM ")
+                .append(isPatient(role) ? "Patients" : "Caregivers").append(" WHERE Username IN (");
+        for (int i = 0; i < size; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        return sql.append(')').toString();
+    }
+
+    @Override
+    public void insert(AccountService.Role role, String username, Credentials credentials) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            PreparedStatement statement = cm.prepare(isPatient(role)
+                    ? SqlStatement.INSERT_PATIENT : SqlStatement.INSERT_CAREGIVER);
+            bind(statement, username, credentials);
+            statement.executeUpdate();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // one batch in one transaction; if the batch fails, the rows are retried one at a time to
+    // find out which ones went in
+    @Override
+    public boolean[] insertAll(AccountService.Role role, List<String> usernames, List<Credentials> credentials)
+            throws SQLException {
+        boolean[] inserted = new boolean[usernames.size()];
+        if (usernames.isEmpty()) {
+            return inserted;
+        }
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            Connection con = cm.createConnection();
+            PreparedStatement insert = cm.prepare(isPatient(role)
+                    ? SqlStatement.INSERT_PATIENT : SqlStatement.INSERT_CAREGIVER);
+            con.setAutoCommit(false);
+            try {
+                for (int i = 0; i < usernames.size(); i++) {
+                    bind(insert, usernames.get(i), credentials.get(i));
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                con.commit();
+                Arrays.fill(inserted, true);
+            } catch (BatchUpdateException e) {
+                insert.clearBatch();
+                con.rollback();
+                con.setAutoCommit(true);
+                for (int i = 0; i < usernames.size(); i++) {
+                    try {
+                        bind(insert, usernames.get(i), credentials.get(i));
+                        insert.executeUpdate();
+                        inserted[i] = true;
+                    } catch (SQLException rowError) {
+                        // left false
+                    }
+                }
+            } catch (SQLException e) {
+                insert.clearBatch();
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } finally {
+            cm.closeConnection();
+        }
+        return inserted;
+    }
+
+    private static void bind(PreparedStatement insert, String username, Credentials credentials) throws SQLException {
+        insert.setString(1, username);
+        insert.setBytes(2, credentials.getSalt());
+        insert.setBytes(3, credentials.getHash());
+        insert.setString(4, credentials.getAlgorithm().name());
+        insert.setInt(5, credentials.getIterations());
+    }
+
+    @Override
+    public void updateCredentials(AccountService.Role role, String username, Credentials credentials)
+            throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            PreparedStatement update = cm.prepare(isPatient(role)
+                    ? SqlStatement.UPDATE_PATIENT_CREDENTIALS : SqlStatement.UPDATE_CAREGIVER_CREDENTIALS);
+            update.setBytes(1, credentials.getSalt());
+            update.setBytes(2, credentials.getHash());
+            update.setString(3, credentials.getAlgorithm().name());
+            update.setInt(4, credentials.getIterations());
+            update.setString(5, username);
+            update.executeUpdate();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public long count(AccountService.Role role) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            PreparedStatement count = cm.prepare(isPatient(role) ? SqlStatement.COUNT_PATIENTS : SqlStatement.COUNT_CAREGIVERS);
+            try (ResultSet resultSet = count.executeQuery()) {
+                resultSet.next();
+                return resultSet.getLong(1);
+            }
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public void forEachUsername(AccountService.Role role, Consumer<String> action) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            PreparedStatement scan = cm.prepare(isPatient(role)
+                    ? SqlStatement.SELECT_PATIENT_USERNAMES : SqlStatement.SELECT_CAREGIVER_USERNAMES);
+            scan.setFetchSize(FETCH_SIZE);
+            try (ResultSet resultSet = scan.executeQuery()) {
+                while (resultSet.next()) {
+                    action.accept(resultSet.getString(1));
+                }
+            }
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    private static boolean isPatient(AccountService.Role role) {
+        return role == AccountService.Role.PATIENT;
+    }
+}
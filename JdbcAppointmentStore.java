@@ -0,0 +1,343 @@
+package scheduler.db;
+
+import scheduler.service.AccountService;
+import scheduler.store.Appointment;
+import scheduler.store.AppointmentStore;
+import scheduler.util.Config;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class JdbcAppointmentStore implements AppointmentStore {
+    private static final int FETCH_SIZE = Config.getInt("scheduler.appointments.fetchSize", 500);
+    // the lower bound of the date filter when there is none (the smallest SQL Server date)
+    private static final LocalDate ANY_DATE = LocalDate.of(1, 1, 1);
+
+    public JdbcAppointmentStore() {
+    }
+
+    // One transaction on one connection: a slot taken by a concurrent transaction makes its
+    // delete affect zero rows (or gets this transaction picked as a deadlock victim, which the
+    // caller may retry), so a slot is never booked twice.
+    @Override
+    public int book(Appointment appointment, List<String> candidates) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            Connection con = cm.createConnection();
+            con.setAutoCommit(false);
+            try {
+                for (int i = 0; i < candidates.size(); i++) {
+                    if (JdbcAvailabilityStore.delete(cm, appointment.getDate(), candidates.get(i))) {
+                        PreparedStatement insert = cm.prepare(SqlStatement.INSERT_APPOINTMENT);
+                        insert.setString(1, appointment.getAppointmentId());
+                        insert.setDate(2, Date.valueOf(appointment.getDate()));
+                        insert.setString(3, appointment.getPatientUsername());
+                        insert.setString(4, candidates.get(i));
+                        insert.setString(5, appointment.getVaccineName());
+                        insert.executeUpdate();
+                        con.commit();
+                        return i;
+                    }
+                }
+                con.rollback();
+                return -1;
+            } catch (SQLException | RuntimeException e) {
+                rollbackQuietly(con);
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // One transaction: the slot deletes go out as one batch per round, as many as there are
+    // appointments still without a caregiver, and the inserts as one batch at the end. A delete
+    // that affected no row is a slot some other transaction took; its appointment waits for the
+    // next round.
+    @Override
+    public int[] bookAll(List<Appointment> appointments, List<String> candidates) throws SQLException {
+        int[] assigned = new int[appointments.size()];
+        Arrays.fill(assigned, -1);
+        if (appointments.isEmpty()) {
+            return assigned;
+        }
+        Date date = Date.valueOf(appointments.get(0).getDate());
+        ConnectionManager cm = new ConnectionManager();
+        PreparedStatement delete = null;
+        PreparedStatement insert = null;
+        try {
+            Connection con = cm.createConnection();
+            con.setAutoCommit(false);
+            try {
+                delete = cm.prepare(SqlStatement.DELETE_AVAILABILITY);
+                int next = 0;
+                int tried = 0;
+                while (next < assigned.length && tried < candidates.size()) {
+                    int from = tried;
+                    tried = Math.min(candidates.size(), tried + assigned.length - next);
+                    for (int i = from; i < tried; i++) {
+                        delete.setString(1, candidates.get(i));
+                        delete.setDate(2, date);
+                        delete.addBatch();
+                    }
+                    int[] counts = delete.executeBatch();
+                    for (int i = from; i < tried; i++) {
+                        if (counts[i - from] == 1) {
+                            assigned[next++] = i;
+                        }
+                    }
+                }
+                if (next == 0) {
+                    con.rollback();
+                    return assigned;
+                }
+                insert = cm.prepare(SqlStatement.INSERT_APPOINTMENT);
+                for (int k = 0; k < next; k++) {
+                    Appointment appointment = appointments.get(k);
+                    insert.setString(1, appointment.getAppointmentId());
+                    insert.setDate(2, date);
+                    insert.setString(3, appointment.getPatientUsername());
+                    insert.setString(4, candidates.get(assigned[k]));
+                    insert.setString(5, appointment.getVaccineName());
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                con.commit();
+                return assigned;
+            } catch (SQLException | RuntimeException e) {
+                clearBatchQuietly(delete);
+                clearBatchQuietly(insert);
+                rollbackQuietly(con);
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // statements are cached per connection, so a failed batch must not be left for the next user
+    private static void clearBatchQuietly(PreparedStatement statement) {
+        if (statement == null) {
+            return;
+        }
+        try {
+            statement.clearBatch();
+        } catch (SQLException e) {
+            // the pool resets or discards the connection when it is returned
+        }
+    }
+
+    private static void rollbackQuietly(Connection con) {
+        try {
+            con.rollback();
+        } catch (SQLException e) {
+            // the pool resets or discards the connection when it is returned
+        }
+    }
+
+    @Override
+    public Map<String, Integer> countByCaregiver() throws SQLException {
+        Map<String, Integer> counts = new HashMap<>();
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            try (ResultSet resultSet = cm.prepare(SqlStatement.COUNT_APPOINTMENTS_BY_CAREGIVER).executeQuery()) {
+                while (resultSet.next()) {
+                    counts.put(resultSet.getString("cid"), resultSet.getInt("Appointments"));
+                }
+            }
+        } finally {
+            cm.closeConnection();
+        }
+        return counts;
+    }
+
+    @Override
+    public Appointment find(String appointmentId) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            PreparedStatement statement = cm.prepare(SqlStatement.SELECT_APPOINTMENT);
+            statement.setString(1, appointmentId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return null;
+                }
+                return new Appointment(resultSet.getString("aid"), resultSet.getDate("Time").toLocalDate(),
+                        resultSet.getString("pid"), resultSet.getString("cid"), resultSet.getString("vid"));
+            }
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // one transaction: the slot is never given back without the appointment going, or the other way round
+    @Override
+    public boolean cancel(Appointment appointment) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            Connection con = cm.createConnection();
+            con.setAutoCommit(false);
+            try {
+                PreparedStatement delete = cm.prepare(SqlStatement.DELETE_APPOINTMENT);
+                delete.setString(1, appointment.getAppointmentId());
+                if (delete.executeUpdate() == 0) {
+                    con.rollback();
+                    return false;
+                }
+                JdbcAvailabilityStore.insert(cm, appointment.getDate(), appointment.getCaregiverUsername());
+                con.commit();
+                return true;
+            } catch (SQLException | RuntimeException e) {
+                rollbackQuietly(con);
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public List<Appointment> cancelAll(String caregiverUsername, LocalDate from, LocalDate to) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            Connection con = cm.createConnection();
+            con.setAutoCommit(false);
+            try {
+                // the slots first: a reservation that claimed one before us is then committed, and
+                // its appointment is canceled below
+                PreparedStatement slots = cm.prepare(SqlStatement.DELETE_CAREGIVER_AVAILABILITIES);
+                slots.setString(1, caregiverUsername);
+                slots.setDate(2, Date.valueOf(from));
+                slots.setDate(3, Date.valueOf(to));
+                slots.executeUpdate();
+                PreparedStatement delete = cm.prepare(SqlStatement.CANCEL_CAREGIVER_APPOINTMENTS);
+                delete.setString(1, caregiverUsername);
+                delete.setDate(2, Date.valueOf(from));
+                delete.setDate(3, Date.valueOf(to));
+                List<Appointment> canceled = new ArrayList<>();
+                readDeleted(delete, canceled);
+                con.commit();
+                return canceled;
+            } catch (SQLException | RuntimeException e) {
+                rollbackQuietly(con);
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // the ids go ID_LIST_SIZE per statement, all in the one transaction
+    @Override
+    public List<Appointment> cancelAll(AccountService.Role role, String username, List<String> appointmentIds)
+            throws SQLException {
+        List<Appointment> canceled = new ArrayList<>();
+        if (appointmentIds.isEmpty()) {
+            return canceled;
+        }
+        ConnectionManager cm = new ConnectionManager();
+        PreparedStatement insert = null;
+        try {
+            Connection con = cm.createConnection();
+            con.setAutoCommit(false);
+            try {
+                PreparedStatement delete = cm.prepare(role == AccountService.Role.PATIENT
+                        ? SqlStatement.CANCEL_PATIENT_APPOINTMENTS_BY_ID
+                        : SqlStatement.CANCEL_CAREGIVER_APPOINTMENTS_BY_ID);
+                delete.setString(1, username);
+                for (int start = 0; start < appointmentIds.size(); start += SqlStatement.ID_LIST_SIZE) {
+                    int end = Math.min(appointmentIds.size(), start + SqlStatement.ID_LIST_SIZE);
+                    for (int k = 0; k < SqlStatement.ID_LIST_SIZE; k++) {
+                        delete.setString(k + 2, appointmentIds.get(Math.min(start + k, end - 1)));
+                    }
+                    readDeleted(delete, canceled);
+                }
+                insert = giveBack(cm, canceled);
+                con.commit();
+                return canceled;
+            } catch (SQLException | RuntimeException e) {
+                clearBatchQuietly(insert);
+                rollbackQuietly(con);
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    private static void readDeleted(PreparedStatement delete, List<Appointment> canceled) throws SQLException {
+        try (ResultSet resultSet = delete.executeQuery()) {
+            while (resultSet.next()) {
+                canceled.add(new Appointment(resultSet.getString("aid"), resultSet.getDate("Time").toLocalDate(),
+                        resultSet.getString("pid"), resultSet.getString("cid"), resultSet.getString("vid")));
+            }
+        }
+    }
+
+    // the slots of the canceled appointments, as one batch; null if there are none
+    private static PreparedStatement giveBack(ConnectionManager cm, List<Appointment> canceled) throws SQLException {
+        if (canceled.isEmpty()) {
+            return null;
+        }
+        PreparedStatement insert = cm.prepare(SqlStatement.INSERT_AVAILABILITY);
+        for (Appointment appointment : canceled) {
+            insert.setDate(1, Date.valueOf(appointment.getDate()));
+            insert.setString(2, appointment.getCaregiverUsername());
+            insert.addBatch();
+        }
+        insert.executeBatch();
+        return insert;
+    }
+
+    // keyset pagination: the next page starts after the last aid of this one, so every page is one
+    // seek into IX_Appointments_pid / IX_Appointments_cid however deep it is
+    @Override
+    public int forEach(AccountService.Role role, String username, LocalDate from, String afterId, int limit,
+                       Visitor visitor) throws SQLException, IOException {
+        boolean patient = role == AccountService.Role.PATIENT;
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            PreparedStatement statement = cm.prepare(patient
+                    ? SqlStatement.SELECT_PATIENT_APPOINTMENTS : SqlStatement.SELECT_CAREGIVER_APPOINTMENTS);
+            statement.setInt(1, limit);
+            statement.setString(2, username);
+            statement.setString(3, afterId == null ? "" : afterId);
+            statement.setDate(4, Date.valueOf(from == null ? ANY_DATE : from));
+            statement.setFetchSize(Math.min(limit, FETCH_SIZE));
+            int count = 0;
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    String aid = resultSet.getString("aid");
+                    String vid = resultSet.getString("vid");
+                    Date time = resultSet.getDate("Time");
+                    String counterpart = resultSet.getString(patient ? "cid" : "pid");
+                    visitor.visit(new Appointment(aid, time.toLocalDate(), patient ? username : counterpart,
+                            patient ? counterpart : username, vid));
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+}
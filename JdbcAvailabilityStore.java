@@ -0,0 +1,131 @@
+package scheduler.db;
+
+import scheduler.store.AvailabilityStore;
+import scheduler.util.Config;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+public class JdbcAvailabilityStore implements AvailabilityStore {
+    // rows fetched per round trip while streaming the table
+    private static final int FETCH_SIZE = Config.getInt("scheduler.availability.fetchSize", 1000);
+
+    public JdbcAvailabilityStore() {
+    }
+
+    @Override
+    public void add(LocalDate date, String caregiverUsername) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            PreparedStatement statement = cm.prepare(SqlStatement.INSERT_AVAILABILITY);
+            statement.setDate(1, Date.valueOf(date));
+            statement.setString(2, caregiverUsername);
+            statement.executeUpdate();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // one batch in one transaction
+    @Override
+    public void addAll(String caregiverUsername, List<LocalDate> dates) throws SQLException {
+        if (dates.isEmpty()) {
+            return;
+        }
+        ConnectionManager cm = new ConnectionManager();
+        PreparedStatement insert = null;
+        try {
+            Connection con = cm.createConnection();
+            con.setAutoCommit(false);
+            try {
+                insert = cm.prepare(SqlStatement.INSERT_AVAILABILITY);
+                for (LocalDate date : dates) {
+                    insert.setDate(1, Date.valueOf(date));
+                    insert.setString(2, caregiverUsername);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                con.commit();
+            } catch (SQLException e) {
+                if (insert != null) {
+                    insert.clearBatch();
+                }
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public boolean remove(LocalDate date, String caregiverUsername) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            return delete(cm, date, caregiverUsername);
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // on the manager's connection, so it can be part of the caller's transaction
+    static boolean delete(ConnectionManager cm, LocalDate date, String caregiverUsername) throws SQLException {
+        PreparedStatement delete = cm.prepare(SqlStatement.DELETE_AVAILABILITY);
+        delete.setString(1, caregiverUsername);
+        delete.setDate(2, Date.valueOf(date));
+        return delete.executeUpdate() == 1;
+    }
+
+    static void insert(ConnectionManager cm, LocalDate date, String caregiverUsername) throws SQLException {
+        PreparedStatement insert = cm.prepare(SqlStatement.INSERT_AVAILABILITY);
+        insert.setDate(1, Date.valueOf(date));
+        insert.setString(2, caregiverUsername);
+        insert.executeUpdate();
+    }
+
+    @Override
+    public Set<LocalDate> dates(String caregiverUsername, LocalDate from, LocalDate to) throws SQLException {
+        Set<LocalDate> dates = new HashSet<>();
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            PreparedStatement select = cm.prepare(SqlStatement.SELECT_CAREGIVER_DATES);
+            select.setString(1, caregiverUsername);
+            select.setDate(2, Date.valueOf(from));
+            select.setDate(3, Date.valueOf(to));
+            try (ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    dates.add(resultSet.getDate("Time").toLocalDate());
+                }
+            }
+        } finally {
+            cm.closeConnection();
+        }
+        return dates;
+    }
+
+    @Override
+    public void forEach(BiConsumer<LocalDate, String> action) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            PreparedStatement statement = cm.prepare(SqlStatement.SELECT_ALL_AVAILABILITIES);
+            statement.setFetchSize(FETCH_SIZE);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    action.accept(resultSet.getDate("Time").toLocalDate(), resultSet.getString("Username"));
+                }
+            }
+        } finally {
+            cm.closeConnection();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package scheduler.db;
+
+import scheduler.store.VaccineStore;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+public class JdbcVaccineStore implements VaccineStore {
+
+    public JdbcVaccineStore() {
+    }
+
+    @Override
+    public Integer find(String vaccineName) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            PreparedStatement statement = cm.prepare(SqlStatement.SELECT_VACCINE);
+            statement.setString(1, vaccineName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getInt("Doses") : null;
+            }
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public Map<String, Integer> findAll() throws SQLException {
+        Map<String, Integer> vaccines = new HashMap<>();
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            PreparedStatement statement = cm.prepare(SqlStatement.SELECT_ALL_VACCINES);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    vaccines.put(resultSet.getString("Name"), resultSet.getInt("Doses"));
+                }
+            }
+        } finally {
+            cm.closeConnection();
+        }
+        return vaccines;
+    }
+
+    @Override
+    public void insert(String vaccineName, int doses) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            PreparedStatement statement = cm.prepare(SqlStatement.INSERT_VACCINE);
+            statement.setString(1, vaccineName);
+            statement.setInt(2, doses);
+            statement.executeUpdate();
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    @Override
+    public long checkpoint(String nodeId) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            PreparedStatement select = cm.prepare(SqlStatement.SELECT_INVENTORY_CHECKPOINT);
+            select.setString(1, nodeId);
+            try (ResultSet resultSet = select.executeQuery()) {
+                if (resultSet.next()) {
+                    return resultSet.getLong("Seq");
+                }
+            }
+            PreparedStatement insert = cm.prepare(SqlStatement.INSERT_INVENTORY_CHECKPOINT);
+            insert.setString(1, nodeId);
+            insert.setLong(2, 0);
+            insert.executeUpdate();
+            return 0;
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // the increments go in one batch, in the same transaction as the checkpoint
+    @Override
+    public void applyDeltas(Map<String, Long> deltas, String nodeId, long seq) throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            Connection con = cm.createConnection();
+            con.setAutoCommit(false);
+            try {
+                PreparedStatement increment = cm.prepare(SqlStatement.INCREMENT_VACCINE_DOSES);
+                boolean any = false;
+                try {
+                    for (Map.Entry<String, Long> entry : deltas.entrySet()) {
+                        if (entry.getValue() != 0) {
+                            increment.setLong(1, entry.getValue());
+                            increment.setString(2, entry.getKey());
+                            increment.addBatch();
+                            any = true;
+                        }
+                    }
+                    if (any) {
+                        increment.executeBatch();
+                    }
+                } finally {
+                    increment.clearBatch();
+                }
+                PreparedStatement checkpoint = cm.prepare(SqlStatement.UPDATE_INVENTORY_CHECKPOINT);
+                checkpoint.setLong(1, seq);
+                checkpoint.setString(2, nodeId);
+                checkpoint.executeUpdate();
+                con.commit();
+            } catch (SQLException | RuntimeException e) {
+                con.rollback();
+                throw e;
+            } finally {
+                con.setAutoCommit(true);
+            }
+        } finally {
+            cm.closeConnection();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package scheduler.store;
+
+import scheduler.service.AccountService;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+// Accounts in one ConcurrentHashMap per role, keyed by the lower-cased username.
+public class MemoryAccountStore implements AccountStore {
+    private final Map<AccountService.Role, ConcurrentHashMap<String, Account>> accounts =
+            new EnumMap<>(AccountService.Role.class);
+
+    public MemoryAccountStore() {
+        for (AccountService.Role role : AccountService.Role.values()) {
+            accounts.put(role, new ConcurrentHashMap<>());
+        }
+    }
+
+    @Override
+    public Credentials find(AccountService.Role role, String username) {
+        Account account = accounts.get(role).get(key(username));
+        return account == null ? null : account.credentials;
+    }
+
+    @Override
+    public boolean exists(AccountService.Role role, String username) {
+        return accounts.get(role).containsKey(key(username));
+    }
+
+    @Override
+    public Set<String> existing(AccountService.Role role, Collection<String> usernames) {
+        Set<String> taken = new HashSet<>();
+        for (String username : usernames) {
+            if (exists(role, username)) {
+                taken.add(username);
+            }
+        }
+        return taken;
+    }
+
+    @Override
+    public void insert(AccountService.Role role, String username, Credentials credentials) throws SQLException {
+        if (accounts.get(role).putIfAbsent(key(username), new Account(username, credentials)) != null) {
+            throw new SQLIntegrityConstraintViolationException("Username taken: " + username);
+        }
+    }
+
+    @Override
+    public boolean[] insertAll(AccountService.Role role, List<String> usernames, List<Credentials> credentials) {
+        boolean[] inserted = new boolean[usernames.size()];
+        Map<String, Account> map = accounts.get(role);
+        for (int i = 0; i < usernames.size(); i++) {
+            inserted[i] = map.putIfAbsent(key(usernames.get(i)), new Account(usernames.get(i), credentials.get(i))) == null;
+        }
+        return inserted;
+    }
+
+    @Override
+    public void updateCredentials(AccountService.Role role, String username, Credentials credentials) {
+        accounts.get(role).computeIfPresent(key(username), (k, account) -> new Account(account.username, credentials));
+    }
+
+    @Override
+    public long count(AccountService.Role role) {
+        return accounts.get(role).size();
+    }
+
+    @Override
+    public void forEachUsername(AccountService.Role role, Consumer<String> action) {
+        for (Account account : accounts.get(role).values()) {
+            action.accept(account.username);
+        }
+    }
+
+    private static String key(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    private static class Account {
+        private final String username;
+        private final Credentials credentials;
+
+        private Account(String username, Credentials credentials) {
+            this.username = username;
+            this.credentials = credentials;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package scheduler.store;
+
+import scheduler.service.AccountService;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+// Appointments by id in a ConcurrentHashMap, plus one ConcurrentSkipListMap per role keyed by
+// "<lower-cased username>\0<appointment id>", so the appointments of an account are a contiguous
+// range in id order. Booking claims a slot by removing it from the availability store; only the
+// thread whose remove succeeds gets the slot.
+public class MemoryAppointmentStore implements AppointmentStore {
+    private final MemoryAvailabilityStore availabilities;
+    private final ConcurrentHashMap<String, Appointment> appointments = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<String, Appointment> byPatient = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<String, Appointment> byCaregiver = new ConcurrentSkipListMap<>();
+
+    public MemoryAppointmentStore(MemoryAvailabilityStore availabilities) {
+        this.availabilities = availabilities;
+    }
+
+    @Override
+    public int book(Appointment appointment, List<String> candidates) throws SQLException {
+        for (int i = 0; i < candidates.size(); i++) {
+            String caregiver = candidates.get(i);
+            if (!availabilities.remove(appointment.getDate(), caregiver)) {
+                continue;
+            }
+            Appointment booked = new Appointment(appointment.getAppointmentId(), appointment.getDate(),
+                    appointment.getPatientUsername(), caregiver, appointment.getVaccineName());
+            if (appointments.putIfAbsent(booked.getAppointmentId(), booked) != null) {
+                availabilities.add(booked.getDate(), caregiver);
+                throw new SQLIntegrityConstraintViolationException("Appointment exists: " + booked.getAppointmentId());
+            }
+            byPatient.put(key(booked.getPatientUsername(), booked.getAppointmentId()), booked);
+            byCaregiver.put(key(caregiver, booked.getAppointmentId()), booked);
+            return i;
+        }
+        return -1;
+    }
+
+    @Override
+    public int[] bookAll(List<Appointment> appointments, List<String> candidates) throws SQLException {
+        int[] assigned = new int[appointments.size()];
+        Arrays.fill(assigned, -1);
+        int next = 0;
+        for (int i = 0; i < candidates.size() && next < assigned.length; i++) {
+            int claimed = book(appointments.get(next), candidates.subList(i, i + 1));
+            if (claimed == 0) {
+                assigned[next++] = i;
+            }
+        }
+        return assigned;
+    }
+
+    @Override
+    public Map<String, Integer> countByCaregiver() {
+        Map<String, Integer> counts = new HashMap<>();
+        for (Appointment appointment : appointments.values()) {
+            counts.merge(appointment.getCaregiverUsername(), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    @Override
+    public Appointment find(String appointmentId) {
+        return appointments.get(appointmentId);
+    }
+
+    @Override
+    public boolean cancel(Appointment appointment) throws SQLException {
+        Appointment removed = remove(appointment);
+        if (removed == null) {
+            return false;
+        }
+        availabilities.add(removed.getDate(), removed.getCaregiverUsername());
+        return true;
+    }
+
+    // the appointment, gone from every map; null if it was not there
+    private Appointment remove(Appointment appointment) {
+        Appointment removed = appointments.remove(appointment.getAppointmentId());
+        if (removed != null) {
+            byPatient.remove(key(removed.getPatientUsername(), removed.getAppointmentId()));
+            byCaregiver.remove(key(removed.getCaregiverUsername(), removed.getAppointmentId()));
+        }
+        return removed;
+    }
+
+    @Override
+    public List<Appointment> cancelAll(String caregiverUsername, LocalDate from, LocalDate to) throws SQLException {
+        for (LocalDate date : availabilities.dates(caregiverUsername, from, to)) {
+            availabilities.remove(date, caregiverUsername);
+        }
+        List<Appointment> canceled = new ArrayList<>();
+        String prefix = prefix(caregiverUsername);
+        for (Appointment appointment : byCaregiver.subMap(prefix, true,
+                prefix.substring(0, prefix.length() - 1) + '\1', false).values()) {
+            if (!appointment.getDate().isBefore(from) && !appointment.getDate().isAfter(to)
+                    && remove(appointment) != null) {
+                canceled.add(appointment);
+            }
+        }
+        return canceled;
+    }
+
+    @Override
+    public List<Appointment> cancelAll(AccountService.Role role, String username, List<String> appointmentIds)
+            throws SQLException {
+        List<Appointment> canceled = new ArrayList<>();
+        boolean patient = role == AccountService.Role.PATIENT;
+        for (String appointmentId : appointmentIds) {
+            Appointment appointment = appointments.get(appointmentId);
+            if (appointment != null
+                    && username.equals(patient ? appointment.getPatientUsername() : appointment.getCaregiverUsername())
+                    && cancel(appointment)) {
+                canceled.add(appointment);
+            }
+        }
+        return canceled;
+    }
+
+    @Override
+    public int forEach(AccountService.Role role, String username, LocalDate from, String afterId, int limit,
+                       Visitor visitor) throws IOException {
+        String prefix = prefix(username);
+        int count = 0;
+        // '\1' sorts right after the '\0' that ends every key of this username
+        for (Appointment appointment : index(role).subMap(afterId == null ? prefix : prefix + afterId, afterId == null,
+                prefix.substring(0, prefix.length() - 1) + '\1', false).values()) {
+            if (count == limit) {
+                break;
+            }
+            if (from == null || !appointment.getDate().isBefore(from)) {
+                visitor.visit(appointment);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private ConcurrentSkipListMap<String, Appointment> index(AccountService.Role role) {
+        return role == AccountService.Role.PATIENT ? byPatient : byCaregiver;
+    }
+
+    private static String prefix(String username) {
+        return username.toLowerCase(Locale.ROOT) + '\0';
+    }
+
+    private static String key(String username, String appointmentId) {
+        return prefix(username) + appointmentId;
+    }
+}
@@ -0,0 +1,91 @@
+package scheduler.store;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.BiConsumer;
+
+// Slots in one ConcurrentSkipListSet ordered by caregiver (case-insensitively), then date, so a
+// caregiver's dates are a contiguous range. A slot is claimed by whoever removes it first.
+public class MemoryAvailabilityStore implements AvailabilityStore {
+    private final ConcurrentSkipListSet<Slot> slots = new ConcurrentSkipListSet<>();
+
+    public MemoryAvailabilityStore() {
+    }
+
+    @Override
+    public void add(LocalDate date, String caregiverUsername) throws SQLException {
+        if (!slots.add(new Slot(caregiverUsername, date))) {
+            throw new SQLIntegrityConstraintViolationException("Slot exists: " + caregiverUsername + " " + date);
+        }
+    }
+
+    // adds one at a time and takes the ones added back out if one fails
+    @Override
+    public void addAll(String caregiverUsername, List<LocalDate> dates) throws SQLException {
+        List<Slot> added = new ArrayList<>(dates.size());
+        for (LocalDate date : dates) {
+            Slot slot = new Slot(caregiverUsername, date);
+            if (!slots.add(slot)) {
+                slots.removeAll(added);
+                throw new SQLIntegrityConstraintViolationException("Slot exists: " + caregiverUsername + " " + date);
+            }
+            added.add(slot);
+        }
+    }
+
+    @Override
+    public boolean remove(LocalDate date, String caregiverUsername) {
+        return slots.remove(new Slot(caregiverUsername, date));
+    }
+
+    @Override
+    public Set<LocalDate> dates(String caregiverUsername, LocalDate from, LocalDate to) {
+        Set<LocalDate> dates = new LinkedHashSet<>();
+        for (Slot slot : slots.subSet(new Slot(caregiverUsername, from), true, new Slot(caregiverUsername, to), true)) {
+            dates.add(slot.date);
+        }
+        return dates;
+    }
+
+    @Override
+    public void forEach(BiConsumer<LocalDate, String> action) {
+        for (Slot slot : slots) {
+            action.accept(slot.date, slot.caregiverUsername);
+        }
+    }
+
+    private static class Slot implements Comparable<Slot> {
+        private final String key;
+        private final String caregiverUsername;
+        private final LocalDate date;
+
+        private Slot(String caregiverUsername, LocalDate date) {
+            this.key = caregiverUsername.toLowerCase(Locale.ROOT);
+            this.caregiverUsername = caregiverUsername;
+            this.date = date;
+        }
+
+        @Override
+        public int compareTo(Slot other) {
+            int c = key.compareTo(other.key);
+            return c != 0 ? c : date.compareTo(other.date);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Slot && compareTo((Slot) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * key.hashCode() + date.hashCode();
+        }
+    }
+}
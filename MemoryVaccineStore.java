@@ -0,0 +1,63 @@
+package scheduler.store;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Vaccines and inventory checkpoints in ConcurrentHashMaps. Vaccines are keyed by the lower-cased
+// name, so names compare without regard to case as they do in SQL Server.
+public class MemoryVaccineStore implements VaccineStore {
+    private final ConcurrentHashMap<String, Integer> doses = new ConcurrentHashMap<>();
+    // lower-cased name -> the name as inserted
+    private final ConcurrentHashMap<String, String> names = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Long> checkpoints = new ConcurrentHashMap<>();
+
+    public MemoryVaccineStore() {
+    }
+
+    @Override
+    public Integer find(String vaccineName) {
+        return doses.get(key(vaccineName));
+    }
+
+    @Override
+    public Map<String, Integer> findAll() {
+        Map<String, Integer> vaccines = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : doses.entrySet()) {
+            vaccines.put(names.get(entry.getKey()), entry.getValue());
+        }
+        return vaccines;
+    }
+
+    @Override
+    public void insert(String vaccineName, int doses) throws SQLException {
+        String key = key(vaccineName);
+        if (names.putIfAbsent(key, vaccineName) != null) {
+            throw new SQLIntegrityConstraintViolationException("Vaccine exists: " + vaccineName);
+        }
+        this.doses.put(key, doses);
+    }
+
+    @Override
+    public long checkpoint(String nodeId) {
+        return checkpoints.computeIfAbsent(nodeId, node -> 0L);
+    }
+
+    // only the inventory's flusher calls this, so the deltas and the checkpoint need no lock
+    // between them
+    @Override
+    public void applyDeltas(Map<String, Long> deltas, String nodeId, long seq) {
+        for (Map.Entry<String, Long> entry : deltas.entrySet()) {
+            doses.computeIfPresent(key(entry.getKey()), (name, n) -> (int) Math.max(Integer.MIN_VALUE,
+                    Math.min(Integer.MAX_VALUE, n + entry.getValue())));
+        }
+        checkpoints.put(nodeId, seq);
+    }
+
+    private static String key(String vaccineName) {
+        return vaccineName.toLowerCase(Locale.ROOT);
+    }
+}
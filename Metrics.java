@@ -0,0 +1,277 @@
+package scheduler.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Per-command latency histograms, JDBC round trips, connections opened and time spent on password
+// hashing. CommandRegistry.dispatch brackets every command with begin/end; in between, the JDBC
+// layer and the password hasher report to a per-thread scope that end() charges to the command, and
+// the registry reports how long it took to get to the handler. Work outside
+// a command (inventory flushes, the HTTP API) only shows up in the totals. Once a command has been
+// seen, recording it allocates nothing.
+// With scheduler.metrics.file set, everything is written there as JSON every
+// scheduler.metrics.intervalMillis and once more at exit.
+public class Metrics {
+    // commands that did not parse share one entry, so junk input cannot grow the map
+    public static final String INVALID_COMMAND = "<invalid>";
+
+    private static final Metrics INSTANCE = fromConfig();
+    private static final ThreadLocal<Scope> SCOPE = ThreadLocal.withInitial(Scope::new);
+
+    private final ConcurrentHashMap<String, Command> commands = new ConcurrentHashMap<>();
+    private final LatencyHistogram hashing = new LatencyHistogram();
+    private final LatencyHistogram dispatch = new LatencyHistogram();
+    private final LongAdder roundTrips = new LongAdder();
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final long startedAt = System.currentTimeMillis();
+    private ScheduledExecutorService dumper = null;
+
+    public static Metrics getInstance() {
+        return INSTANCE;
+    }
+
+    private static Metrics fromConfig() {
+        Metrics metrics = new Metrics();
+        String file = Config.get("scheduler.metrics.file", "");
+        if (!file.isEmpty()) {
+            metrics.startDumping(Paths.get(file), Config.getLong("scheduler.metrics.intervalMillis", 60_000));
+        }
+        return metrics;
+    }
+
+    // starts timing a command on this thread; pass the result to end()
+    public long begin() {
+        SCOPE.get().reset();
+        return System.nanoTime();
+    }
+
+    public void end(String command, long startNanos, boolean failed) {
+        long elapsed = System.nanoTime() - startNanos;
+        Command entry = commands.get(command);
+        if (entry == null) {
+            entry = commands.computeIfAbsent(command, k -> new Command());
+        }
+        Scope scope = SCOPE.get();
+        entry.latency.record(elapsed);
+        entry.roundTrips.add(scope.roundTrips);
+        entry.connectionsOpened.add(scope.connectionsOpened);
+        entry.hashNanos.add(scope.hashNanos);
+        if (failed) {
+            entry.failures.increment();
+        }
+    }
+
+    // tokenizing, lookup and argument checks of one command, up to its handler
+    public void recordDispatch(long nanos) {
+        dispatch.record(nanos);
+    }
+
+    public void recordRoundTrip() {
+        roundTrips.increment();
+        SCOPE.get().roundTrips++;
+    }
+
+    public void recordConnectionOpened() {
+        connectionsOpened.increment();
+        SCOPE.get().connectionsOpened++;
+    }
+
+    // one hash computed, on whichever thread computed it
+    public void recordHash(long nanos) {
+        hashing.record(nanos);
+    }
+
+    // time the current thread spent on a hash, queueing for the hasher included
+    public void recordHashWait(long nanos) {
+        SCOPE.get().hashNanos += nanos;
+    }
+
+    public Map<String, CommandStats> getCommandStats() {
+        Map<String, CommandStats> stats = new TreeMap<>();
+        for (Map.Entry<String, Command> entry : commands.entrySet()) {
+            Command c = entry.getValue();
+            stats.put(entry.getKey(), new CommandStats(c.latency.snapshot(), c.failures.sum(), c.roundTrips.sum(),
+                    c.connectionsOpened.sum(), c.hashNanos.sum()));
+        }
+        return stats;
+    }
+
+    public LatencyHistogram.Snapshot getHashing() {
+        return hashing.snapshot();
+    }
+
+    public LatencyHistogram.Snapshot getDispatch() {
+        return dispatch.snapshot();
+    }
+
+    public long getRoundTrips() {
+        return roundTrips.sum();
+    }
+
+    public long getConnectionsOpened() {
+        return connectionsOpened.sum();
+    }
+
+    public void writeJson(JsonWriter json) throws IOException {
+        json.beginObject();
+        json.field("timestamp", Instant.now().toString());
+        json.field("startedAt", Instant.ofEpochMilli(startedAt).toString());
+        json.field("roundTrips", getRoundTrips());
+        json.field("connectionsOpened", getConnectionsOpened());
+        json.name("hashing");
+        writeHistogram(json, getHashing());
+        json.name("dispatch");
+        writeHistogram(json, getDispatch());
+        json.name("commands").beginObject();
+        for (Map.Entry<String, CommandStats> entry : getCommandStats().entrySet()) {
+            CommandStats stats = entry.getValue();
+            json.name(entry.getKey()).beginObject();
+            json.field("failures", stats.getFailures());
+            json.field("roundTrips", stats.getRoundTrips());
+            json.field("connectionsOpened", stats.getConnectionsOpened());
+            json.field("hashNanos", stats.getHashNanos());
+            json.name("latency");
+            writeHistogram(json, stats.getLatency());
+            json.endObject();
+        }
+        json.endObject();
+        json.endObject();
+    }
+
+    private static void writeHistogram(JsonWriter json, LatencyHistogram.Snapshot snapshot) throws IOException {
+        json.beginObject();
+        json.field("count", snapshot.getCount());
+        json.field("meanNanos", snapshot.getMeanNanos());
+        json.field("p50Nanos", snapshot.percentileNanos(0.5));
+        json.field("p99Nanos", snapshot.percentileNanos(0.99));
+        json.field("p999Nanos", snapshot.percentileNanos(0.999));
+        json.field("maxNanos", snapshot.getMaxNanos());
+        json.endObject();
+    }
+
+    // writes a temporary file next to the target and renames it, so readers never see half a dump
+    public void dump(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8);
+             JsonWriter json = new JsonWriter(out)) {
+            writeJson(json);
+        }
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private synchronized void startDumping(Path file, long intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("Metrics interval must be positive!");
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "metrics-dumper");
+            t.setDaemon(true);
+            return t;
+        });
+        dumper.scheduleWithFixedDelay(() -> dumpQuietly(file), intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            dumper.shutdownNow();
+            dumpQuietly(file);
+        }, "metrics-shutdown"));
+    }
+
+    private void dumpQuietly(Path file) {
+        try {
+            dump(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // what the current thread's command has done so far
+    private static class Scope {
+        private long roundTrips;
+        private long connectionsOpened;
+        private long hashNanos;
+
+        private void reset() {
+            roundTrips = 0;
+            connectionsOpened = 0;
+            hashNanos = 0;
+        }
+    }
+
+    private static class Command {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder roundTrips = new LongAdder();
+        private final LongAdder connectionsOpened = new LongAdder();
+        private final LongAdder hashNanos = new LongAdder();
+    }
+
+    public static class CommandStats {
+        private final LatencyHistogram.Snapshot latency;
+        private final long failures;
+        private final long roundTrips;
+        private final long connectionsOpened;
+        private final long hashNanos;
+
+        private CommandStats(LatencyHistogram.Snapshot latency, long failures, long roundTrips,
+                             long connectionsOpened, long hashNanos) {
+            this.latency = latency;
+            this.failures = failures;
+            this.roundTrips = roundTrips;
+            this.connectionsOpened = connectionsOpened;
+            this.hashNanos = hashNanos;
+        }
+
+        public LatencyHistogram.Snapshot getLatency() {
+            return latency;
+        }
+
+        public long getCount() {
+            return latency.getCount();
+        }
+
+        // commands that reported a failure to the session
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getRoundTrips() {
+            return roundTrips;
+        }
+
+        public long getConnectionsOpened() {
+            return connectionsOpened;
+        }
+
+        public long getHashNanos() {
+            return hashNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "CommandStats{" +
+                    "latency=" + latency +
+                    ", failures=" + failures +
+                    ", roundTrips=" + roundTrips +
+                    ", connectionsOpened=" + connectionsOpened +
+                    ", hashNanos=" + hashNanos +
+                    '}';
+        }
+    }
+}
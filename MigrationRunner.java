@@ -0,0 +1,228 @@
+package scheduler.db;
+
+import scheduler.util.Config;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Brings the database schema up to date. The scripts in scheduler.migrations.dir (default
+// "migrations") are named V<version>__<description>.sql; every one whose version is not yet in
+// SchemaVersion runs, in version order, in a transaction together with its SchemaVersion row.
+// A script is split into batches on lines that only say GO, as with sqlcmd. The checksum of each
+// applied script is recorded, and a script that changed after it was applied stops the migration.
+// Concurrent starts take turns on an application lock.
+// Usage: MigrationRunner [status]   (default: migrate)
+public class MigrationRunner {
+    private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+    private static final Pattern BATCH_SEPARATOR = Pattern.compile("(?im)^\\s*GO\\s*$");
+
+    private final Path directory;
+    private final int lockTimeoutMillis;
+
+    public MigrationRunner(Path directory, int lockTimeoutMillis) {
+        this.directory = directory;
+        this.lockTimeoutMillis = lockTimeoutMillis;
+    }
+
+    public static MigrationRunner fromConfig() {
+        return new MigrationRunner(Paths.get(Config.get("scheduler.migrations.dir", "migrations")),
+                Config.getInt("scheduler.migrations.lockTimeoutMillis", 60_000));
+    }
+
+    public static void main(String[] args) {
+        MigrationRunner runner = fromConfig();
+        try {
+            if (args.length > 0 && args[0].equals("status")) {
+                Map<Integer, String> applied = runner.applied();
+                for (Migration migration : runner.load()) {
+                    System.out.println(migration + (applied.containsKey(migration.getVersion()) ? "  applied" : "  pending"));
+                }
+            } else {
+                List<Migration> applied = runner.migrate();
+                System.out.println(applied.isEmpty() ? "Schema is up to date." : "Applied " + applied);
+            }
+        } catch (SQLException | IOException | IllegalStateException e) {
+            e.printStackTrace();
+        } finally {
+            ConnectionManager.shutdown();
+        }
+    }
+
+    // the scripts in the directory, in version order
+    public List<Migration> load() throws IOException {
+        List<Migration> migrations = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.sql")) {
+            for (Path file : files) {
+                Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+                if (!matcher.matches()) {
+                    throw new IllegalStateException("Migration " + file + " is not named V<version>__<description>.sql");
+                }
+                migrations.add(new Migration(Integer.parseInt(matcher.group(1)), matcher.group(2),
+                        Files.readString(file, StandardCharsets.UTF_8)));
+            }
+        }
+        migrations.sort(Comparator.comparingInt(Migration::getVersion));
+        for (int i = 1; i < migrations.size(); i++) {
+            if (migrations.get(i).getVersion() == migrations.get(i - 1).getVersion()) {
+                throw new IllegalStateException("Two migrations have version " + migrations.get(i).getVersion());
+            }
+        }
+        return migrations;
+    }
+
+    // version -> checksum of every migration applied so far
+    public Map<Integer, String> applied() throws SQLException {
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            cm.prepare(SqlStatement.CREATE_SCHEMA_VERSION_TABLE).executeUpdate();
+            return applied(cm);
+        } finally {
+            cm.closeConnection();
+        }
+    }
+
+    // applies what is pending; returns what it applied
+    public List<Migration> migrate() throws SQLException, IOException {
+        List<Migration> migrations = load();
+        List<Migration> applied = new ArrayList<>();
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            lock(cm);
+            try {
+                cm.prepare(SqlStatement.CREATE_SCHEMA_VERSION_TABLE).executeUpdate();
+                Map<Integer, String> done = applied(cm);
+                for (Migration migration : migrations) {
+                    String checksum = done.get(migration.getVersion());
+                    if (checksum == null) {
+                        apply(cm, migration);
+                        applied.add(migration);
+                    } else if (!checksum.equals(migration.getChecksum())) {
+                        throw new IllegalStateException("Migration " + migration + " changed after it was applied");
+                    }
+                }
+            } finally {
+                cm.prepare(SqlStatement.UNLOCK_MIGRATIONS).execute();
+            }
+        } finally {
+            cm.closeConnection();
+        }
+        return applied;
+    }
+
+    private void lock(ConnectionManager cm) throws SQLException {
+        PreparedStatement statement = cm.prepare(SqlStatement.LOCK_MIGRATIONS);
+        statement.setInt(1, lockTimeoutMillis);
+        try (ResultSet resultSet = statement.executeQuery()) {
+            // sp_getapplock returns a negative code if it did not get the lock
+            if (!resultSet.next() || resultSet.getInt(1) < 0) {
+                throw new SQLException("Timed out after " + lockTimeoutMillis + " ms waiting for the migration lock");
+            }
+        }
+    }
+
+    private static Map<Integer, String> applied(ConnectionManager cm) throws SQLException {
+        Map<Integer, String> applied = new TreeMap<>();
+        try (ResultSet resultSet = cm.prepare(SqlStatement.SELECT_SCHEMA_VERSIONS).executeQuery()) {
+            while (resultSet.next()) {
+                applied.put(resultSet.getInt("Version"), resultSet.getString("Checksum"));
+            }
+        }
+        return applied;
+    }
+
+    private static void apply(ConnectionManager cm, Migration migration) throws SQLException {
+        Connection con = cm.createConnection();
+        con.setAutoCommit(false);
+        try {
+            try (Statement statement = con.createStatement()) {
+                for (String batch : migration.getBatches()) {
+                    statement.execute(batch);
+                }
+            }
+            PreparedStatement insert = cm.prepare(SqlStatement.INSERT_SCHEMA_VERSION);
+            insert.setInt(1, migration.getVersion());
+            insert.setString(2, migration.getDescription());
+            insert.setString(3, migration.getChecksum());
+            insert.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+            insert.executeUpdate();
+            con.commit();
+        } catch (SQLException | RuntimeException e) {
+            con.rollback();
+            throw new SQLException("Migration " + migration + " failed: " + e.getMessage(), e);
+        } finally {
+            con.setAutoCommit(true);
+        }
+    }
+
+    public static class Migration {
+        private final int version;
+        private final String description;
+        private final String sql;
+        private final String checksum;
+
+        private Migration(int version, String description, String sql) {
+            this.version = version;
+            this.description = description;
+            this.sql = sql;
+            // line endings depend on the checkout, so they must not change the checksum
+            this.checksum = sha256(sql.replace("\r\n", "\n"));
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public String getChecksum() {
+            return checksum;
+        }
+
+        // the script split on GO lines, without the empty pieces
+        public List<String> getBatches() {
+            List<String> batches = new ArrayList<>();
+            for (String batch : BATCH_SEPARATOR.split(sql)) {
+                if (!batch.isBlank()) {
+                    batches.add(batch);
+                }
+            }
+            return batches;
+        }
+
+        private static String sha256(String sql) {
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                return HexFormat.of().formatHex(digest.digest(sql.getBytes(StandardCharsets.UTF_8)));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "V" + version + " " + description;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package scheduler.util;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.spec.InvalidKeySpecException;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Password hashing on a small dedicated pool of platform threads, so that a burst of logins or
+// sign-ups is queued instead of taking CPU from every other command. New hashes use the current
+// algorithm with an iteration count calibrated at startup to take about scheduler.hash.budgetMillis
+// (or exactly scheduler.hash.iterations when set); older hashes are still verified with the
+// parameters they were stored with, and needsRehash tells the caller to replace them. A calibrated
+// count differs a little from one startup to the next, so only hashes with fewer than half of it
+// count as weak; otherwise every restart that measured a higher count would rehash every account.
+public class PasswordHasher {
+
+    public enum Algorithm {
+        // what the application used to store: 10 iterations, 16 *bits* of output
+        PBKDF2_SHA1("PBKDF2WithHmacSHA1", 16),
+        PBKDF2_SHA256("PBKDF2WithHmacSHA256", 128);
+
+        private final String jcaName;
+        private final int keyBits;
+
+        Algorithm(String jcaName, int keyBits) {
+            this.jcaName = jcaName;
+            this.keyBits = keyBits;
+        }
+
+        // rows written before the algorithm was stored have none
+        public static Algorithm fromStored(String name) {
+            return name == null ? PBKDF2_SHA1 : valueOf(name.trim());
+        }
+    }
+
+    // iterations of the rows written before the work factor was stored
+    public static final int LEGACY_ITERATIONS = 10;
+    private static final int MIN_ITERATIONS = 10_000;
+    private static final int MAX_ITERATIONS = 10_000_000;
+
+    private static volatile PasswordHasher instance = null;
+
+    // SecretKeyFactory is not thread-safe, so every thread keeps its own per algorithm
+    private static final ThreadLocal<Map<Algorithm, SecretKeyFactory>> FACTORIES =
+            ThreadLocal.withInitial(() -> new EnumMap<>(Algorithm.class));
+
+    private final Algorithm algorithm;
+    private final int iterations;
+    // stored hashes with fewer iterations than this need a rehash
+    private final int rehashBelow;
+    private final ExecutorService workers;
+    // hashes queued or running; bounds the pool's queue
+    private final Semaphore inFlight;
+
+    public PasswordHasher(Algorithm algorithm, int iterations, boolean calibrated, int threads, int maxQueued) {
+        if (iterations <= 0 || threads <= 0 || maxQueued < 0) {
+            throw new IllegalArgumentException("Hasher settings must be positive!");
+        }
+        this.algorithm = algorithm;
+        this.iterations = iterations;
+        this.rehashBelow = calibrated ? Math.max(MIN_ITERATIONS, iterations / 2) : iterations;
+        this.inFlight = new Semaphore(threads + maxQueued);
+        AtomicInteger ids = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+            Thread t = new Thread(r, "password-hasher-" + ids.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static PasswordHasher getInstance() {
+        PasswordHasher h = instance;
+        if (h == null) {
+            synchronized (PasswordHasher.class) {
+                h = instance;
+                if (h == null) {
+                    Algorithm algorithm = Algorithm.valueOf(Config.get("scheduler.hash.algorithm", "PBKDF2_SHA256"));
+                    int iterations = Config.getInt("scheduler.hash.iterations", 0);
+                    boolean calibrated = iterations <= 0;
+                    if (calibrated) {
+                        iterations = calibrate(algorithm, Config.getLong("scheduler.hash.budgetMillis", 50));
+                    }
+                    int cpus = Runtime.getRuntime().availableProcessors();
+                    h = new PasswordHasher(algorithm, iterations, calibrated,
+                            Config.getInt("scheduler.hash.threads", Math.max(1, cpus / 2)),
+                            Config.getInt("scheduler.hash.maxQueued", 256));
+                    instance = h;
+                }
+            }
+        }
+        return h;
+    }
+
+    // The iteration count that makes one hash take about budgetMillis on this machine:
+    // time a small count (after a warm-up) and scale linearly, never going below MIN_ITERATIONS.
+    public static int calibrate(Algorithm algorithm, long budgetMillis) {
+        byte[] salt = new byte[16];
+        int probe = MIN_ITERATIONS;
+        compute(algorithm, probe, "calibration", salt);
+        long elapsed;
+        while (true) {
+            long start = System.nanoTime();
+            compute(algorithm, probe, "calibration", salt);
+            elapsed = System.nanoTime() - start;
+            // measure at least ~10 ms so timer noise does not dominate
+            if (elapsed >= TimeUnit.MILLISECONDS.toNanos(10) || probe >= MAX_ITERATIONS / 2) {
+                break;
+            }
+            probe *= 2;
+        }
+        double perIteration = (double) elapsed / probe;
+        long target = (long) (TimeUnit.MILLISECONDS.toNanos(budgetMillis) / perIteration);
+        return (int) Math.max(MIN_ITERATIONS, Math.min(MAX_ITERATIONS, target));
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    // hashes with the current parameters on the worker pool; waits for a free slot if it is full
+    public byte[] hash(String password, byte[] salt) {
+        long start = System.nanoTime();
+        acquire();
+        try {
+            return await(submit(algorithm, iterations, password, salt));
+        } finally {
+            Metrics.getInstance().recordHashWait(System.nanoTime() - start);
+        }
+    }
+
+    // hashes with the current parameters on the worker pool; fails right away if the pool is full
+    public CompletableFuture<byte[]> hashAsync(String password, byte[] salt) {
+        if (!inFlight.tryAcquire()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Too many passwords being hashed"));
+        }
+        return submit(algorithm, iterations, password, salt);
+    }
+
+    // hashes on the calling thread, for bulk jobs that bring their own threads
+    public byte[] hashHere(String password, byte[] salt) {
+        long start = System.nanoTime();
+        try {
+            return timedCompute(algorithm, iterations, password, salt);
+        } finally {
+            Metrics.getInstance().recordHashWait(System.nanoTime() - start);
+        }
+    }
+
+    // checks a password against a stored hash, using the parameters it was stored with
+    public boolean verify(String password, byte[] salt, byte[] storedHash, Algorithm storedAlgorithm,
+                          int storedIterations) {
+        long start = System.nanoTime();
+        acquire();
+        byte[] calculated;
+        try {
+            calculated = await(submit(storedAlgorithm, storedIterations, password, salt));
+        } finally {
+            Metrics.getInstance().recordHashWait(System.nanoTime() - start);
+        }
+        // BINARY columns pad short hashes (the legacy ones are 2 bytes) with zeros
+        byte[] padded = new byte[Math.max(calculated.length, storedHash.length)];
+        System.arraycopy(calculated, 0, padded, 0, calculated.length);
+        byte[] stored = storedHash.length == padded.length ? storedHash : Arrays.copyOf(storedHash, padded.length);
+        return MessageDigest.isEqual(padded, stored);
+    }
+
+    // true if a hash stored with these parameters is weaker than what we would write today
+    public boolean needsRehash(Algorithm storedAlgorithm, int storedIterations) {
+        return storedAlgorithm != algorithm || storedIterations < rehashBelow;
+    }
+
+    private void acquire() {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to hash a password", e);
+        }
+    }
+
+    private CompletableFuture<byte[]> submit(Algorithm algorithm, int iterations, String password, byte[] salt) {
+        CompletableFuture<byte[]> future;
+        try {
+            future = CompletableFuture.supplyAsync(() -> timedCompute(algorithm, iterations, password, salt), workers);
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            throw e;
+        }
+        return future.whenComplete((hash, error) -> inFlight.release());
+    }
+
+    private static byte[] await(CompletableFuture<byte[]> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing a password", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to hash password", e.getCause());
+        }
+    }
+
+    private static byte[] timedCompute(Algorithm algorithm, int iterations, String password, byte[] salt) {
+        long start = System.nanoTime();
+        try {
+            return compute(algorithm, iterations, password, salt);
+        } finally {
+            Metrics.getInstance().recordHash(System.nanoTime() - start);
+        }
+    }
+
+    private static byte[] compute(Algorithm algorithm, int iterations, String password, byte[] salt) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, algorithm.keyBits);
+        try {
+            SecretKeyFactory factory = FACTORIES.get().get(algorithm);
+            if (factory == null) {
+                factory = SecretKeyFactory.getInstance(algorithm.jcaName);
+                FACTORIES.get().put(algorithm, factory);
+            }
+            return factory.generateSecret(spec).getEncoded();
+        } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
@@ -1,30 +1,38 @@
 package scheduler.model;
 
-import scheduler.db.ConnectionManager;
+import scheduler.service.AccountService;
+import scheduler.service.CredentialCache;
+import scheduler.service.UsernameFilter;
+import scheduler.store.AccountStore;
+import scheduler.store.Credentials;
+import scheduler.store.Storage;
+import scheduler.util.PasswordHasher;
 import scheduler.util.Util;
 
-import java.sql.Connection;
 import java.sql.Date;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.Arrays;
 
 public class Patient {
     private final String username;
     private final byte[] salt;
     private final byte[] hash;
+    private final PasswordHasher.Algorithm hashAlgorithm;
+    private final int iterations;
 
     private Patient(Patient.PatientBuilder builder) {
         this.username = builder.username;
         this.salt = builder.salt;
         this.hash = builder.hash;
+        this.hashAlgorithm = builder.hashAlgorithm;
+        this.iterations = builder.iterations;
     }
 
     private Patient(Patient.PatientGetter getter) {
         this.username = getter.username;
         this.salt = getter.salt;
         this.hash = getter.hash;
+        this.hashAlgorithm = getter.hashAlgorithm;
+        this.iterations = getter.iterations;
     }
 
     // Getters
@@ -40,38 +48,30 @@ public class Patient {
         return hash;
     }
 
-    public void saveToDB() throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
+    public PasswordHasher.Algorithm getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
 
-        String addPatient = "INSERT INTO Patients VALUES (? , ?, ?)";
+    public void saveToDB() throws SQLException {
         try {
-            PreparedStatement statement = con.prepareStatement(addPatient);
-            statement.setString(1, this.username);
-            statement.setBytes(2, this.salt);
-            statement.setBytes(3, this.hash);
-            statement.executeUpdate();
+            Storage.getInstance().accounts().insert(AccountService.Role.PATIENT, this.username,
+                    new Credentials(this.salt, this.hash, this.hashAlgorithm, this.iterations));
+            UsernameFilter.getInstance().add(AccountService.Role.PATIENT, this.username);
+            CredentialCache.getInstance().invalidate(AccountService.Role.PATIENT, this.username);
         } catch (SQLException e) {
             throw new SQLException();
-        } finally {
-            cm.closeConnection();
         }
     }
 
     public void uploadAvailability(Date d) throws SQLException {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String addAvailability = "INSERT INTO Availabilities VALUES (? , ?)";
         try {
-            PreparedStatement statement = con.prepareStatement(addAvailability);
-            statement.setDate(1, d);
-            statement.setString(2, this.username);
-            statement.executeUpdate();
+            Storage.getInstance().availabilities().add(d.toLocalDate(), this.username);
         } catch (SQLException e) {
             throw new SQLException();
-        } finally {
-            cm.closeConnection();
         }
     }
 
@@ -80,11 +80,22 @@ public class Patient {
         private final String username;
         private final byte[] salt;
         private final byte[] hash;
+        private final PasswordHasher.Algorithm hashAlgorithm;
+        private final int iterations;
 
+        // for a hash computed with the hasher's current parameters (Util.generateHash)
         public PatientBuilder(String username, byte[] salt, byte[] hash) {
+            this(username, salt, hash, PasswordHasher.getInstance().getAlgorithm(),
+                    PasswordHasher.getInstance().getIterations());
+        }
+
+        public PatientBuilder(String username, byte[] salt, byte[] hash, PasswordHasher.Algorithm hashAlgorithm,
+                         int iterations) {
             this.username = username;
             this.salt = salt;
             this.hash = hash;
+            this.hashAlgorithm = hashAlgorithm;
+            this.iterations = iterations;
         }
 
         public Patient build() {
@@ -97,6 +108,8 @@ public class Patient {
         private final String password;
         private byte[] salt;
         private byte[] hash;
+        private PasswordHasher.Algorithm hashAlgorithm;
+        private int iterations;
 
         public PatientGetter(String username, String password) {
             this.username = username;
@@ -104,32 +117,40 @@ public class Patient {
         }
 
         public Patient get() throws SQLException {
-            ConnectionManager cm = new ConnectionManager();
-            Connection con = cm.createConnection();
-
-            String getPatient = "SELECT Salt, Hash FROM Patients WHERE Username = ?";
+            // a login verified recently with the same password needs neither the query nor the KDF
+            Patient cached = CredentialCache.getInstance().lookup(AccountService.Role.PATIENT, username, password, Patient.class);
+            if (cached != null) {
+                return cached;
+            }
             try {
-                PreparedStatement statement = con.prepareStatement(getPatient);
-                statement.setString(1, this.username);
-                ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    byte[] salt = resultSet.getBytes("Salt");
-                    byte[] hash = Util.trim(resultSet.getBytes("Hash"));
-                    // check if the password matches
-                    byte[] calculatedHash = Util.generateHash(password, salt);
-                    if (!Arrays.equals(hash, calculatedHash)) {
-                        return null;
-                    } else {
-                        this.salt = salt;
-                        this.hash = hash;
-                        return new Patient(this);
-                    }
+                AccountStore accounts = Storage.getInstance().accounts();
+                Credentials stored = accounts.find(AccountService.Role.PATIENT, this.username);
+                if (stored == null) {
+                    return null;
+                }
+                this.salt = stored.getSalt();
+                this.hash = stored.getHash();
+                this.hashAlgorithm = stored.getAlgorithm();
+                this.iterations = stored.getIterations();
+                // check if the password matches, with the parameters the hash was stored with
+                PasswordHasher hasher = PasswordHasher.getInstance();
+                if (!hasher.verify(password, salt, hash, hashAlgorithm, iterations)) {
+                    return null;
+                }
+                // the password is known right now, so an outdated hash is replaced transparently
+                if (hasher.needsRehash(hashAlgorithm, iterations)) {
+                    this.salt = Util.generateSalt();
+                    this.hash = hasher.hash(password, salt);
+                    this.hashAlgorithm = hasher.getAlgorithm();
+                    this.iterations = hasher.getIterations();
+                    accounts.updateCredentials(AccountService.Role.PATIENT, username,
+                            new Credentials(salt, hash, hashAlgorithm, iterations));
                 }
-                return null;
+                Patient account = new Patient(this);
+                CredentialCache.getInstance().put(AccountService.Role.PATIENT, username, password, account);
+                return account;
             } catch (SQLException e) {
                 throw new SQLException();
-            } finally {
-                cm.closeConnection();
             }
         }
     }
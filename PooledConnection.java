@@ -0,0 +1,77 @@
+package scheduler.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+public class PooledConnection {
+    private final Connection connection;
+    private final StatementCache statements;
+    private final long createdAt;
+    private volatile long lastUsedAt;
+    private volatile boolean broken = false;
+
+    PooledConnection(Connection connection, StatementCache statements) {
+        this.connection = connection;
+        this.statements = statements;
+        this.createdAt = System.currentTimeMillis();
+        this.lastUsedAt = createdAt;
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    // returns the cached prepared statement for sql with its parameters cleared;
+    // the statement belongs to the connection and must not be closed by the caller
+    public PreparedStatement prepare(SqlStatement sql) throws SQLException {
+        return statements.get(sql);
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    long getLastUsedAt() {
+        return lastUsedAt;
+    }
+
+    void touch() {
+        this.lastUsedAt = System.currentTimeMillis();
+    }
+
+    // a connection marked as broken is discarded instead of going back into the pool
+    public void markBroken() {
+        this.broken = true;
+    }
+
+    boolean isBroken() {
+        return broken;
+    }
+
+    boolean isValid(int timeoutSeconds) {
+        try {
+            return !connection.isClosed() && connection.isValid(timeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    // puts the connection back into the state a fresh one would be in
+    void reset() throws SQLException {
+        if (!connection.getAutoCommit()) {
+            connection.rollback();
+            connection.setAutoCommit(true);
+        }
+        connection.clearWarnings();
+    }
+
+    void closeQuietly() {
+        statements.clear();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // nothing left to do with a connection we are throwing away
+        }
+    }
+}
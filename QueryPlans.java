@@ -0,0 +1,149 @@
+package scheduler.db;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Asks the database (SQL Server) how it would run the queries behind each command, without
+// running them: SHOWPLAN_XML returns the estimated plan instead of executing. A query passes if
+// its plan seeks an index and scans no table or index. Parameters are filled in with sample
+// literals, which lead to the same access paths as the real values would.
+public class QueryPlans {
+    private static final Pattern PHYSICAL_OP = Pattern.compile("<RelOp [^>]*PhysicalOp=\"([^\"]+)\"");
+    private static final Pattern INDEX = Pattern.compile("<Object [^>]*Index=\"\\[([^\\]]+)\\]\"");
+
+    private static final List<Query> QUERIES = List.of(
+            new Query("create_patient", SqlStatement.PATIENT_EXISTS, "'explain'"),
+            new Query("create_caregiver", SqlStatement.CAREGIVER_EXISTS, "'explain'"),
+            new Query("login_patient", SqlStatement.SELECT_PATIENT_CREDENTIALS, "'explain'"),
+            new Query("login_caregiver", SqlStatement.SELECT_CAREGIVER_CREDENTIALS, "'explain'"),
+            new Query("upload_availability", SqlStatement.SELECT_CAREGIVER_DATES, "'explain'", "'2030-01-01'",
+                    "'2030-01-31'"),
+            new Query("reserve", SqlStatement.DELETE_AVAILABILITY, "'explain'", "'2030-01-01'"),
+            new Query("add_doses", SqlStatement.INCREMENT_VACCINE_DOSES, "1", "'explain'"),
+            new Query("cancel", SqlStatement.SELECT_APPOINTMENT, "'explain'"),
+            new Query("cancel", SqlStatement.DELETE_APPOINTMENT, "'explain'"),
+            new Query("cancel_all", SqlStatement.DELETE_CAREGIVER_AVAILABILITIES, "'explain'", "'2030-01-01'",
+                    "'2030-01-31'"),
+            new Query("cancel_all", SqlStatement.CANCEL_CAREGIVER_APPOINTMENTS, "'explain'", "'2030-01-01'",
+                    "'2030-01-31'"),
+            new Query("show_appointments", SqlStatement.SELECT_PATIENT_APPOINTMENTS, "100", "'explain'", "''",
+                    "'0001-01-01'"),
+            new Query("show_appointments", SqlStatement.SELECT_CAREGIVER_APPOINTMENTS, "100", "'explain'", "''",
+                    "'0001-01-01'"));
+
+    private QueryPlans() {
+    }
+
+    public static List<Plan> explain() throws SQLException {
+        List<Plan> plans = new ArrayList<>();
+        ConnectionManager cm = new ConnectionManager();
+        try {
+            Connection con = cm.createConnection();
+            try (Statement statement = con.createStatement()) {
+                statement.execute("SET SHOWPLAN_XML ON");
+                try {
+                    for (Query query : QUERIES) {
+                        try (ResultSet resultSet = statement.executeQuery(query.withLiterals())) {
+                            plans.add(new Plan(query.command, query.statement,
+                                    resultSet.next() ? resultSet.getString(1) : ""));
+                        }
+                    }
+                } finally {
+                    statement.execute("SET SHOWPLAN_XML OFF");
+                }
+            }
+        } finally {
+            cm.closeConnection();
+        }
+        return plans;
+    }
+
+    private static class Query {
+        private final String command;
+        private final SqlStatement statement;
+        private final String[] literals;
+
+        private Query(String command, SqlStatement statement, String... literals) {
+            this.command = command;
+            this.statement = statement;
+            this.literals = literals;
+        }
+
+        private String withLiterals() {
+            String sql = statement.getSql();
+            StringBuilder sb = new StringBuilder(sql.length() + 32);
+            int next = 0;
+            for (int i = 0; i < sql.length(); i++) {
+                char c = sql.charAt(i);
+                if (c == '?') {
+                    sb.append(literals[next++]);
+                } else {
+                    sb.append(c);
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    public static class Plan {
+        private final String command;
+        private final SqlStatement statement;
+        private final Set<String> operators = new LinkedHashSet<>();
+        private final Set<String> indexes = new LinkedHashSet<>();
+
+        private Plan(String command, SqlStatement statement, String xml) {
+            this.command = command;
+            this.statement = statement;
+            Matcher op = PHYSICAL_OP.matcher(xml);
+            while (op.find()) {
+                operators.add(op.group(1));
+            }
+            Matcher index = INDEX.matcher(xml);
+            while (index.find()) {
+                indexes.add(index.group(1));
+            }
+        }
+
+        public String getCommand() {
+            return command;
+        }
+
+        public SqlStatement getStatement() {
+            return statement;
+        }
+
+        public Set<String> getOperators() {
+            return operators;
+        }
+
+        public Set<String> getIndexes() {
+            return indexes;
+        }
+
+        public boolean usesIndex() {
+            boolean seeks = false;
+            for (String operator : operators) {
+                // a Constant Scan reads no table
+                if (operator.endsWith("Scan") && !operator.equals("Constant Scan")) {
+                    return false;
+                }
+                seeks |= operator.endsWith("Seek");
+            }
+            return seeks;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-20s %-30s %-4s %s %s", command, statement, usesIndex() ? "OK" : "SCAN",
+                    operators, indexes);
+        }
+    }
+}
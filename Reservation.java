@@ -0,0 +1,76 @@
+package scheduler.service;
+
+import java.sql.Date;
+
+public class Reservation {
+
+    public enum Status {
+        RESERVED,
+        NO_CAREGIVER,
+        NO_VACCINE,
+        NO_DOSES,
+        // every attempt lost a race with a concurrent reservation
+        CONFLICT,
+        // the store failed while a batch was being booked; this request was not booked, though
+        // others of the batch may have been
+        FAILED
+    }
+
+    private final Status status;
+    private final String appointmentId;
+    private final String caregiverUsername;
+    private final Date date;
+    private final String vaccineName;
+
+    private Reservation(Status status, String appointmentId, String caregiverUsername, Date date,
+                        String vaccineName) {
+        this.status = status;
+        this.appointmentId = appointmentId;
+        this.caregiverUsername = caregiverUsername;
+        this.date = date;
+        this.vaccineName = vaccineName;
+    }
+
+    static Reservation reserved(String appointmentId, String caregiverUsername, Date date, String vaccineName) {
+        return new Reservation(Status.RESERVED, appointmentId, caregiverUsername, date, vaccineName);
+    }
+
+    static Reservation rejected(Status status, Date date, String vaccineName) {
+        return new Reservation(status, null, null, date, vaccineName);
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isReserved() {
+        return status == Status.RESERVED;
+    }
+
+    public String getAppointmentId() {
+        return appointmentId;
+    }
+
+    public String getCaregiverUsername() {
+        return caregiverUsername;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public String getVaccineName() {
+        return vaccineName;
+    }
+
+    @Override
+    public String toString() {
+        return "Reservation{" +
+                "status=" + status +
+                ", appointmentId='" + appointmentId + '\'' +
+                ", caregiverUsername='" + caregiverUsername + '\'' +
+                ", date=" + date +
+                ", vaccineName='" + vaccineName + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,284 @@
+package scheduler.service;
+
+import scheduler.util.Config;
+import scheduler.util.LatencyHistogram;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Coalesces concurrent reservations for the same date. The first request for a date opens a
+// batch; requests for that date arriving within scheduler.reserve.windowMillis join it, and it is
+// booked when the window closes or when it reaches scheduler.reserve.maxBatch requests, whichever
+// comes first, with one ReservationEngine.reserveAll call: the batch is matched against the date's
+// free caregivers and doses together instead of every request racing for the same first caregiver.
+// Each caller gets its own Reservation back through a future. A full batch is booked on the thread
+// of the request that filled it, an expired one on one of scheduler.reserve.threads threads.
+// With a window of 0 every request goes straight to ReservationEngine.reserve.
+public class ReservationCoordinator {
+    private static final ReservationCoordinator INSTANCE = new ReservationCoordinator(ReservationEngine.getInstance(),
+            Config.getLong("scheduler.reserve.windowMillis", 2),
+            Config.getInt("scheduler.reserve.maxBatch", 64),
+            Config.getInt("scheduler.reserve.threads", 4));
+
+    private final ReservationEngine engine;
+    private final long windowNanos;
+    private final int maxBatch;
+    private final ScheduledExecutorService timer;
+    private final ConcurrentHashMap<Date, Batch> open = new ConcurrentHashMap<>();
+
+    private final long startedAt = System.nanoTime();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder reserved = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder fullBatches = new LongAdder();
+    private final LongAdder batched = new LongAdder();
+    private final AtomicLong largestBatch = new AtomicLong();
+    // from joining a batch until the batch starts booking
+    private final LatencyHistogram queueing = new LatencyHistogram();
+
+    public ReservationCoordinator(ReservationEngine engine, long windowMillis, int maxBatch, int threads) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("Window must not be negative!");
+        }
+        if (maxBatch <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("Batch size and threads must be positive!");
+        }
+        this.engine = engine;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxBatch = maxBatch;
+        this.timer = windowMillis == 0 ? null : Executors.newScheduledThreadPool(threads, r -> {
+            Thread t = new Thread(r, "reservation-coordinator");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static ReservationCoordinator getInstance() {
+        return INSTANCE;
+    }
+
+    // blocks until the request's batch has been booked
+    public Reservation reserve(String patientUsername, Date date, String vaccineName) throws SQLException {
+        if (timer == null) {
+            requests.increment();
+            Reservation reservation = engine.reserve(patientUsername, date, vaccineName);
+            complete(reservation);
+            return reservation;
+        }
+        try {
+            return submit(patientUsername, date, vaccineName).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public CompletableFuture<Reservation> submit(String patientUsername, Date date, String vaccineName) {
+        requests.increment();
+        Request request = new Request(patientUsername, vaccineName);
+        while (true) {
+            Batch batch = open.get(date);
+            if (batch == null) {
+                Batch created = new Batch(date);
+                batch = open.putIfAbsent(date, created);
+                if (batch == null) {
+                    batch = created;
+                    // the window starts with the first request
+                    created.expiry = timer.schedule(() -> close(created), windowNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+            int size = batch.add(request);
+            if (size < 0) {
+                // closed under us; the date gets a new batch
+                open.remove(date, batch);
+                continue;
+            }
+            if (size == maxBatch) {
+                fullBatches.increment();
+                close(batch);
+            }
+            return request.future;
+        }
+    }
+
+    private void close(Batch batch) {
+        List<Request> requests = batch.close();
+        if (requests == null) {
+            return;
+        }
+        open.remove(batch.date, batch);
+        ScheduledFuture<?> expiry = batch.expiry;
+        if (expiry != null) {
+            expiry.cancel(false);
+        }
+        book(batch.date, requests);
+    }
+
+    private void book(Date date, List<Request> batch) {
+        long now = System.nanoTime();
+        batches.increment();
+        batched.add(batch.size());
+        largestBatch.accumulateAndGet(batch.size(), Math::max);
+        List<String> patients = new ArrayList<>(batch.size());
+        List<String> vaccines = new ArrayList<>(batch.size());
+        for (Request request : batch) {
+            queueing.record(now - request.queuedAt);
+            patients.add(request.patientUsername);
+            vaccines.add(request.vaccineName);
+        }
+        try {
+            List<Reservation> reservations = engine.reserveAll(date, patients, vaccines);
+            for (int i = 0; i < batch.size(); i++) {
+                complete(reservations.get(i));
+                batch.get(i).future.complete(reservations.get(i));
+            }
+        } catch (SQLException | RuntimeException e) {
+            // reserveAll only throws before anything of the batch is booked
+            for (Request request : batch) {
+                request.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void complete(Reservation reservation) {
+        completed.increment();
+        if (reservation.isReserved()) {
+            reserved.increment();
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(requests.sum(), completed.sum(), reserved.sum(), batches.sum(), fullBatches.sum(),
+                batched.sum(), largestBatch.get(), queueing.snapshot(), System.nanoTime() - startedAt);
+    }
+
+    private static class Request {
+        private final String patientUsername;
+        private final String vaccineName;
+        private final long queuedAt = System.nanoTime();
+        private final CompletableFuture<Reservation> future = new CompletableFuture<>();
+
+        private Request(String patientUsername, String vaccineName) {
+            this.patientUsername = patientUsername;
+            this.vaccineName = vaccineName;
+        }
+    }
+
+    private static class Batch {
+        private final Date date;
+        private List<Request> requests = new ArrayList<>();
+        private volatile ScheduledFuture<?> expiry;
+
+        private Batch(Date date) {
+            this.date = date;
+        }
+
+        // the batch size with the request, or -1 if the batch is already closed
+        private synchronized int add(Request request) {
+            if (requests == null) {
+                return -1;
+            }
+            requests.add(request);
+            return requests.size();
+        }
+
+        // the requests, to the one caller that closes the batch; null to everyone else
+        private synchronized List<Request> close() {
+            List<Request> closed = requests;
+            requests = null;
+            return closed;
+        }
+    }
+
+    public static class Stats {
+        private final long requests;
+        private final long completed;
+        private final long reserved;
+        private final long batches;
+        private final long fullBatches;
+        private final long batched;
+        private final long largestBatch;
+        private final LatencyHistogram.Snapshot queueing;
+        private final long elapsedNanos;
+
+        private Stats(long requests, long completed, long reserved, long batches, long fullBatches, long batched,
+                      long largestBatch, LatencyHistogram.Snapshot queueing, long elapsedNanos) {
+            this.requests = requests;
+            this.completed = completed;
+            this.reserved = reserved;
+            this.batches = batches;
+            this.fullBatches = fullBatches;
+            this.batched = batched;
+            this.largestBatch = largestBatch;
+            this.queueing = queueing;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getCompleted() {
+            return completed;
+        }
+
+        public long getReserved() {
+            return reserved;
+        }
+
+        public long getBatches() {
+            return batches;
+        }
+
+        // batches booked because they reached maxBatch before the window closed
+        public long getFullBatches() {
+            return fullBatches;
+        }
+
+        public long getLargestBatch() {
+            return largestBatch;
+        }
+
+        public double getMeanBatch() {
+            return batches == 0 ? 0 : (double) batched / batches;
+        }
+
+        public LatencyHistogram.Snapshot getQueueing() {
+            return queueing;
+        }
+
+        public double getCompletedPerSecond() {
+            double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+            return seconds <= 0 ? 0 : completed / seconds;
+        }
+
+        @Override
+        public String toString() {
+            return "Coalescing{" +
+                    "requests=" + requests +
+                    ", completed=" + completed +
+                    ", reserved=" + reserved +
+                    ", batches=" + batches +
+                    ", fullBatches=" + fullBatches +
+                    ", meanBatch=" + String.format("%.2f", getMeanBatch()) +
+                    ", largestBatch=" + largestBatch +
+                    ", completedPerSecond=" + String.format("%.1f", getCompletedPerSecond()) +
+                    ", queueing=" + queueing +
+                    '}';
+        }
+    }
+}
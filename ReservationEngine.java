@@ -0,0 +1,352 @@
+package scheduler.service;
+
+import scheduler.db.RetryPolicy;
+import scheduler.store.Appointment;
+import scheduler.store.AppointmentStore;
+import scheduler.store.Storage;
+import scheduler.util.Config;
+import scheduler.util.Util;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Books an appointment: take one dose from the in-memory inventory, then let the appointment store
+// claim a caregiver slot and insert the appointment atomically (see AppointmentStore.book). A lost
+// race for a slot just moves on to the next caregiver (or, for a deadlock victim, retries), and
+// the inventory never goes below zero, so neither a slot nor the last dose can ever be handed out
+// twice. A dose taken for an appointment that is not booked is given back. Which caregivers are
+// tried first is up to the AssignmentStrategy.
+public class ReservationEngine {
+    private static final ReservationEngine INSTANCE = new ReservationEngine(
+            RetryPolicy.fromConfig("scheduler.reserve"),
+            Config.getInt("scheduler.reserve.candidateBatch", 8),
+            AssignmentStrategy.fromConfig());
+
+    private final RetryPolicy retryPolicy;
+    // how many caregivers of a date are tried at a time when looking for a free slot
+    private final int candidateBatch;
+    private final AssignmentStrategy strategy;
+
+    private final long startedAt = System.nanoTime();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder reserved = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder conflicts = new LongAdder();
+    private final LongAdder slotsLost = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    public ReservationEngine(RetryPolicy retryPolicy, int candidateBatch, AssignmentStrategy strategy) {
+        if (candidateBatch <= 0) {
+            throw new IllegalArgumentException("Candidate batch must be positive!");
+        }
+        this.retryPolicy = retryPolicy;
+        this.candidateBatch = candidateBatch;
+        this.strategy = strategy;
+    }
+
+    public static ReservationEngine getInstance() {
+        return INSTANCE;
+    }
+
+    public Reservation reserve(String patientUsername, Date date, String vaccineName) throws SQLException {
+        requests.increment();
+        for (int attempt = 1; ; attempt++) {
+            attempts.increment();
+            try {
+                Reservation reservation = attempt(patientUsername, date, vaccineName);
+                if (reservation.isReserved()) {
+                    reserved.increment();
+                } else {
+                    rejected.increment();
+                }
+                return reservation;
+            } catch (SQLException e) {
+                if (!retryPolicy.isRetryable(e)) {
+                    throw e;
+                }
+                conflicts.increment();
+                if (attempt >= retryPolicy.getMaxAttempts() || !retryPolicy.backoff(attempt)) {
+                    exhausted.increment();
+                    return Reservation.rejected(Reservation.Status.CONFLICT, date, vaccineName);
+                }
+            }
+        }
+    }
+
+    // Takes a dose, then books the first candidate caregiver whose slot is still there. Candidates
+    // are the strategy's pick of the date's caregivers in the availability index, candidateBatch at
+    // a time; every candidate tried leaves the index (a slot claimed by a concurrent reservation is
+    // dropped from it), so the next pick only has caregivers not tried yet.
+    private Reservation attempt(String patientUsername, Date date, String vaccineName) throws SQLException {
+        AvailabilityIndex index = AvailabilityIndex.getInstance();
+        LocalDate day = date.toLocalDate();
+        List<String> candidates = strategy.candidates(day, index.caregivers(day), candidateBatch);
+        if (candidates.isEmpty()) {
+            return Reservation.rejected(Reservation.Status.NO_CAREGIVER, date, vaccineName);
+        }
+
+        InventoryService inventory = InventoryService.getInstance();
+        if (!inventory.tryTake(vaccineName)) {
+            Reservation.Status status = inventory.exists(vaccineName)
+                    ? Reservation.Status.NO_DOSES : Reservation.Status.NO_VACCINE;
+            return Reservation.rejected(status, date, vaccineName);
+        }
+
+        boolean booked = false;
+        try {
+            AppointmentStore appointments = Storage.getInstance().appointments();
+            Appointment appointment = new Appointment(Util.generateId(), day, patientUsername, null, vaccineName);
+            while (!candidates.isEmpty()) {
+                int claimed = appointments.book(appointment, candidates);
+                int lost = claimed < 0 ? candidates.size() : claimed;
+                for (int i = 0; i < lost; i++) {
+                    slotsLost.increment();
+                    index.remove(day, candidates.get(i));
+                }
+                if (claimed >= 0) {
+                    booked = true;
+                    String caregiverUsername = candidates.get(claimed);
+                    index.remove(day, caregiverUsername);
+                    CaregiverLoad.getInstance().booked(caregiverUsername);
+                    return Reservation.reserved(appointment.getAppointmentId(), caregiverUsername, date, vaccineName);
+                }
+                candidates = strategy.candidates(day, index.caregivers(day), candidateBatch);
+            }
+            return Reservation.rejected(Reservation.Status.NO_CAREGIVER, date, vaccineName);
+        } finally {
+            if (!booked) {
+                inventory.add(vaccineName, 1);
+            }
+        }
+    }
+
+    // Books the reservations of one date together (see ReservationCoordinator). Doses are taken per
+    // request; the requests that got one are matched with the strategy's pick of the date's free
+    // caregivers, in the strategy's order, and booked with one AppointmentStore.bookAll transaction. Only if some of
+    // those slots were taken concurrently does it take another round with the next caregivers.
+    // A retryable failure repeats the round that failed, and nothing that was already committed.
+    // Any other failure once booking has started ends the batch without throwing: the requests
+    // committed in earlier rounds keep their appointments, and the rest are FAILED.
+    public List<Reservation> reserveAll(Date date, List<String> patientUsernames, List<String> vaccineNames)
+            throws SQLException {
+        int n = patientUsernames.size();
+        requests.add(n);
+        Reservation[] results = new Reservation[n];
+        AvailabilityIndex index = AvailabilityIndex.getInstance();
+        InventoryService inventory = InventoryService.getInstance();
+        LocalDate day = date.toLocalDate();
+
+        // the requests that hold a dose, in arrival order
+        List<Integer> waiting = new ArrayList<>(n);
+        List<Appointment> unassigned = new ArrayList<>(n);
+        try {
+            boolean available = index.hasAvailability(day);
+            for (int i = 0; i < n; i++) {
+                String vaccineName = vaccineNames.get(i);
+                if (!available) {
+                    results[i] = Reservation.rejected(Reservation.Status.NO_CAREGIVER, date, vaccineName);
+                } else if (inventory.tryTake(vaccineName)) {
+                    waiting.add(i);
+                    unassigned.add(new Appointment(Util.generateId(), day, patientUsernames.get(i), null, vaccineName));
+                } else {
+                    results[i] = Reservation.rejected(inventory.exists(vaccineName)
+                            ? Reservation.Status.NO_DOSES : Reservation.Status.NO_VACCINE, date, vaccineName);
+                }
+            }
+
+            AppointmentStore appointments = Storage.getInstance().appointments();
+            while (!unassigned.isEmpty()) {
+                int[] assigned;
+                List<String> candidates;
+                try {
+                    candidates = strategy.candidates(day, index.caregivers(day), unassigned.size() + candidateBatch);
+                    if (candidates.isEmpty()) {
+                        break;
+                    }
+                    assigned = bookAll(appointments, unassigned, candidates);
+                } catch (SQLException | RuntimeException e) {
+                    // throwing would fail the whole batch, the requests already booked included
+                    e.printStackTrace();
+                    for (int i : waiting) {
+                        results[i] = Reservation.rejected(Reservation.Status.FAILED, date, vaccineNames.get(i));
+                    }
+                    break;
+                }
+                if (assigned == null) {
+                    for (int i : waiting) {
+                        results[i] = Reservation.rejected(Reservation.Status.CONFLICT, date, vaccineNames.get(i));
+                    }
+                    break;
+                }
+                boolean[] claimed = new boolean[candidates.size()];
+                int tried = candidates.size();
+                List<Integer> stillWaiting = new ArrayList<>();
+                List<Appointment> stillUnassigned = new ArrayList<>();
+                for (int k = 0; k < assigned.length; k++) {
+                    Appointment appointment = unassigned.get(k);
+                    if (assigned[k] < 0) {
+                        stillWaiting.add(waiting.get(k));
+                        stillUnassigned.add(appointment);
+                        continue;
+                    }
+                    String caregiverUsername = candidates.get(assigned[k]);
+                    claimed[assigned[k]] = true;
+                    index.remove(day, caregiverUsername);
+                    CaregiverLoad.getInstance().booked(caregiverUsername);
+                    results[waiting.get(k)] = Reservation.reserved(appointment.getAppointmentId(), caregiverUsername,
+                            date, appointment.getVaccineName());
+                }
+                if (stillUnassigned.isEmpty()) {
+                    tried = assigned[assigned.length - 1] + 1;
+                }
+                for (int i = 0; i < tried; i++) {
+                    if (!claimed[i]) {
+                        slotsLost.increment();
+                        index.remove(day, candidates.get(i));
+                    }
+                }
+                waiting = stillWaiting;
+                unassigned = stillUnassigned;
+            }
+        } finally {
+            // a dose taken for a request that was not booked goes back
+            for (int i : waiting) {
+                if (results[i] == null || !results[i].isReserved()) {
+                    try {
+                        inventory.add(vaccineNames.get(i), 1);
+                    } catch (SQLException e) {
+                        // the dose stays taken rather than failing requests that were booked
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            if (results[i] == null) {
+                results[i] = Reservation.rejected(Reservation.Status.NO_CAREGIVER, date, vaccineNames.get(i));
+            }
+            if (results[i].isReserved()) {
+                reserved.increment();
+            } else if (results[i].getStatus() != Reservation.Status.CONFLICT
+                    && results[i].getStatus() != Reservation.Status.FAILED) {
+                rejected.increment();
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    // one bookAll transaction, retried like reserve(); null once the retries are used up
+    private int[] bookAll(AppointmentStore appointments, List<Appointment> unassigned, List<String> candidates)
+            throws SQLException {
+        for (int attempt = 1; ; attempt++) {
+            attempts.increment();
+            try {
+                return appointments.bookAll(unassigned, candidates);
+            } catch (SQLException e) {
+                if (!retryPolicy.isRetryable(e)) {
+                    throw e;
+                }
+                conflicts.increment();
+                if (attempt >= retryPolicy.getMaxAttempts() || !retryPolicy.backoff(attempt)) {
+                    exhausted.increment();
+                    return null;
+                }
+            }
+        }
+    }
+
+    public AssignmentStrategy getStrategy() {
+        return strategy;
+    }
+
+    public Stats getStats() {
+        return new Stats(requests.sum(), reserved.sum(), rejected.sum(), attempts.sum(), conflicts.sum(),
+                slotsLost.sum(), exhausted.sum(), System.nanoTime() - startedAt);
+    }
+
+    public static class Stats {
+        private final long requests;
+        private final long reserved;
+        private final long rejected;
+        private final long attempts;
+        private final long conflicts;
+        private final long slotsLost;
+        private final long exhausted;
+        private final long elapsedNanos;
+
+        private Stats(long requests, long reserved, long rejected, long attempts, long conflicts,
+                      long slotsLost, long exhausted, long elapsedNanos) {
+            this.requests = requests;
+            this.reserved = reserved;
+            this.rejected = rejected;
+            this.attempts = attempts;
+            this.conflicts = conflicts;
+            this.slotsLost = slotsLost;
+            this.exhausted = exhausted;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getReserved() {
+            return reserved;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getAttempts() {
+            return attempts;
+        }
+
+        // transactions rolled back because of a deadlock, serialization failure or lock timeout
+        public long getConflicts() {
+            return conflicts;
+        }
+
+        // slots that were gone by the time we tried to claim them
+        public long getSlotsLost() {
+            return slotsLost;
+        }
+
+        // reservations given up on after the last retry
+        public long getExhausted() {
+            return exhausted;
+        }
+
+        public double getConflictRate() {
+            return attempts == 0 ? 0 : (double) conflicts / attempts;
+        }
+
+        public double getReservationsPerSecond() {
+            double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+            return seconds <= 0 ? 0 : reserved / seconds;
+        }
+
+        @Override
+        public String toString() {
+            return "Reservations{" +
+                    "requests=" + requests +
+                    ", reserved=" + reserved +
+                    ", rejected=" + rejected +
+                    ", attempts=" + attempts +
+                    ", conflicts=" + conflicts +
+                    ", slotsLost=" + slotsLost +
+                    ", exhausted=" + exhausted +
+                    ", conflictRate=" + String.format("%.4f", getConflictRate()) +
+                    ", reservedPerSecond=" + String.format("%.1f", getReservationsPerSecond()) +
+                    '}';
+        }
+    }
+}
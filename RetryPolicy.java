@@ -0,0 +1,65 @@
+package scheduler.db;
+
+import scheduler.util.Config;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Bounded retry with exponential backoff and full jitter for transactions that lose a race
+// (deadlock victim, serialization failure, lock timeout).
+public class RetryPolicy {
+    // SQL Server: chosen as deadlock victim, lock request timeout
+    private static final int SQLSERVER_DEADLOCK = 1205;
+    private static final int SQLSERVER_LOCK_TIMEOUT = 1222;
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("Attempts must be positive!");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    public static RetryPolicy fromConfig(String prefix) {
+        return new RetryPolicy(Config.getInt(prefix + ".maxAttempts", 5),
+                Config.getLong(prefix + ".backoffBaseMillis", 5),
+                Config.getLong(prefix + ".backoffMaxMillis", 200));
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public boolean isRetryable(SQLException e) {
+        for (SQLException cur = e; cur != null; cur = cur.getNextException()) {
+            String state = cur.getSQLState();
+            if (state != null && state.startsWith("40")) {
+                return true;
+            }
+            if (cur.getErrorCode() == SQLSERVER_DEADLOCK || cur.getErrorCode() == SQLSERVER_LOCK_TIMEOUT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // sleeps before the given (1-based) retry; returns false if the thread was interrupted
+    public boolean backoff(int attempt) {
+        long ceiling = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt, 20));
+        if (ceiling <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package scheduler.service;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.SortedSet;
+
+public class ScheduleService {
+
+    private ScheduleService() {
+    }
+
+    // caregivers that still have a free slot on the date, in username order
+    public static SortedSet<String> availableCaregivers(Date date) throws SQLException {
+        return AvailabilityIndex.getInstance().caregivers(date.toLocalDate());
+    }
+
+    // vaccine name -> available doses, in name order
+    public static Map<String, Integer> vaccineInventory() throws SQLException {
+        return InventoryService.getInstance().snapshot();
+    }
+}
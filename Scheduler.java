@@ -1,108 +1,215 @@
 package scheduler;
 
 import scheduler.db.ConnectionManager;
+import scheduler.db.QueryPlans;
+import scheduler.http.ApiServer;
 import scheduler.model.Caregiver;
 import scheduler.model.Patient;
-import scheduler.model.Vaccine;
+import scheduler.service.AccountImporter;
+import scheduler.service.AccountService;
+import scheduler.service.AppointmentService;
+import scheduler.service.AvailabilityIndex;
+import scheduler.service.CredentialCache;
+import scheduler.service.InventoryService;
+import scheduler.service.Reservation;
+import scheduler.service.ReservationCoordinator;
+import scheduler.service.ReservationEngine;
+import scheduler.service.ScheduleService;
+import scheduler.service.UsernameFilter;
+import scheduler.store.Storage;
+import scheduler.util.LatencyHistogram;
+import scheduler.util.Metrics;
 import scheduler.util.Util;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.sql.Date;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
 
 public class Scheduler {
-
-    // objects to keep track of the currently logged-in user
-    // Note: it is always true that at most one of currentCaregiver and currentPatient is not null
-    //       since only one user can be logged-in at a time
-    private static Caregiver currentCaregiver = null;
-    private static Patient currentPatient = null;
+    // search and show_appointments output is formatted into a per-thread buffer that is written
+    // out every ~8K characters
+    private static final int OUTPUT_BUFFER_LIMIT = 8192;
+    private static final ThreadLocal<StringBuilder> OUTPUT_BUFFER =
+            ThreadLocal.withInitial(() -> new StringBuilder(OUTPUT_BUFFER_LIMIT));
+    private static final CommandRegistry COMMANDS = registry();
 
     public static void main(String[] args) {
-        // printing greetings text
-        System.out.println();
-        System.out.println("Welcome to the COVID-19 Vaccine Reservation Scheduling Application!");
-        System.out.println("*** Please enter one of the following commands ***");
-        System.out.println("> create_patient <username> <password>");  //TODO: implement create_patient (Part 1)
-        System.out.println("> create_caregiver <username> <password>");
-        System.out.println("> login_patient <username> <password>");  // TODO: implement login_patient (Part 1)
-        System.out.println("> login_caregiver <username> <password>");
-        System.out.println("> search_caregiver_schedule <date>");  // TODO: implement search_caregiver_schedule (Part 2)
-        System.out.println("> reserve <date> <vaccine>");  // TODO: implement reserve (Part 2)
-        System.out.println("> upload_availability <date>");
-        System.out.println("> cancel <appointment_id>");  // TODO: implement cancel (extra credit)
-        System.out.println("> add_doses <vaccine> <number>");
-        System.out.println("> show_appointments");  // TODO: implement show_appointments (Part 2)
-        System.out.println("> logout");  // TODO: implement logout (Part 2)
-        System.out.println("> quit");
-        System.out.println();
+        if (args.length > 0 && args[0].equals("--server")) {
+            SchedulerServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--http")) {
+            ApiServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--batch")) {
+            BatchRunner.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        // the console is a single session; the server creates one per client connection
+        Session session = new Session(new PrintWriter(new OutputStreamWriter(System.out), true), true);
+        printMenu(session.out());
 
         // read input from user
         BufferedReader r = new BufferedReader(new InputStreamReader(System.in));
         while (true) {
-            System.out.print("> ");
-            String response = "";
+            session.out().print("> ");
+            session.out().flush();
+            String response;
             try {
                 response = r.readLine();
             } catch (IOException e) {
-                System.out.println("Please try again!");
-            }
-            // split the user input by spaces
-            String[] tokens = response.split(" ");
-            // check if input exists
-            if (tokens.length == 0) {
-                System.out.println("Please try again!");
+                session.fail("Please try again!");
                 continue;
             }
-            // determine which operation to perform
-            String operation = tokens[0];
-            if (operation.equals("create_patient")) {
-                createPatient(tokens);
-            } else if (operation.equals("create_caregiver")) {
-                createCaregiver(tokens);
-            } else if (operation.equals("login_patient")) {
-                loginPatient(tokens);
-            } else if (operation.equals("login_caregiver")) {
-                loginCaregiver(tokens);
-            } else if (operation.equals("search_caregiver_schedule")) {
-                searchCaregiverSchedule(tokens);
-            } else if (operation.equals("reserve")) {
-                reserve(tokens);
-            } else if (operation.equals("upload_availability")) {
-                uploadAvailability(tokens);
-            } else if (operation.equals("cancel")) {
-                cancel(tokens);
-            } else if (operation.equals("add_doses")) {
-                addDoses(tokens);
-            } else if (operation.equals("show_appointments")) {
-                showAppointments(tokens);
-            } else if (operation.equals("logout")) {
-                logout(tokens);
-            } else if (operation.equals("quit")) {
-                System.out.println("Bye!");
-                return;
-            } else {
-                System.out.println("Invalid operation name!");
+            // end of input is treated like quit
+            if (response == null || !execute(session, response)) {
+                break;
             }
         }
+        InventoryService.getInstance().shutdown();
+        ConnectionManager.shutdown();
     }
 
-    private static void createPatient(String[] tokens) {
-        // TODO: Part 1
-        if (tokens.length != 3) {
-            System.out.println("Failed to create user.");
-            return;
+    public static void printMenu(PrintWriter out) {
+        // printing greetings text
+        out.println();
+        out.println("Welcome to the COVID-19 Vaccine Reservation Scheduling Application!");
+        out.println("*** Please enter one of the following commands ***");
+        for (Command command : COMMANDS.getCommands()) {
+            out.println("> " + command.getUsage());
         }
-        String username = tokens[1];
-        String password = tokens[2];
+        out.println();
+    }
+
+    public static CommandRegistry commands() {
+        return COMMANDS;
+    }
+
+    // runs a single command line on behalf of the session; returns false once the session asked to quit
+    public static boolean execute(Session session, String response) {
+        return COMMANDS.dispatch(session, response);
+    }
+
+    private static CommandRegistry registry() {
+        return new CommandRegistry(List.of(
+                new Command.Builder("create_patient", Scheduler::createPatient)
+                        .usage("<username> <password>")
+                        .arguments(Command.Type.WORD, Command.Type.WORD)
+                        .arityMessage("Failed to create user.")
+                        .build(),
+                new Command.Builder("create_caregiver", Scheduler::createCaregiver)
+                        .usage("<username> <password>")
+                        .arguments(Command.Type.WORD, Command.Type.WORD)
+                        .arityMessage("Failed to create user.")
+                        .build(),
+                new Command.Builder("login_patient", Scheduler::loginPatient)
+                        .usage("<username> <password>")
+                        .requires(Command.Requirement.LOGGED_OUT)
+                        .arguments(Command.Type.WORD, Command.Type.WORD)
+                        .arityMessage("Login failed.")
+                        .build(),
+                new Command.Builder("login_caregiver", Scheduler::loginCaregiver)
+                        .usage("<username> <password>")
+                        .requires(Command.Requirement.LOGGED_OUT)
+                        .arguments(Command.Type.WORD, Command.Type.WORD)
+                        .arityMessage("Login failed.")
+                        .build(),
+                new Command.Builder("resume", Scheduler::resume)
+                        .usage("<session_token>")
+                        .requires(Command.Requirement.LOGGED_OUT)
+                        .arguments(Command.Type.WORD)
+                        .build(),
+                new Command.Builder("search_caregiver_schedule", Scheduler::searchCaregiverSchedule)
+                        .usage("<date> [--compact]")
+                        .requires(Command.Requirement.LOGGED_IN)
+                        .arguments(Command.Type.DATE)
+                        .optional(Command.Type.WORD)
+                        .build(),
+                new Command.Builder("reserve", Scheduler::reserve)
+                        .usage("<date> <vaccine>")
+                        .requires(Command.Requirement.PATIENT)
+                        .arguments(Command.Type.DATE, Command.Type.WORD)
+                        .invalidMessage("Please enter a valid date!")
+                        .build(),
+                new Command.Builder("upload_availability", Scheduler::uploadAvailability)
+                        .usage("<date> | <from> <to> [weekday-mask, e.g. 1111100 for Mon-Fri]")
+                        .requires(Command.Requirement.CAREGIVER)
+                        .arguments(Command.Type.DATE)
+                        .optional(Command.Type.DATE, Command.Type.WORD)
+                        .invalidMessage("Please enter a valid date!")
+                        .build(),
+                new Command.Builder("cancel", Scheduler::cancel)
+                        .usage("<appointment_id>")
+                        .requires(Command.Requirement.LOGGED_IN)
+                        .arguments(Command.Type.WORD)
+                        .arityMessage("Please provide the appointment ID to cancel.")
+                        .build(),
+                new Command.Builder("cancel_all", Scheduler::cancelAll)
+                        .usage("<appointment_id>... | --file <id_file> | --date <from> [<to>]")
+                        .requires(Command.Requirement.LOGGED_IN)
+                        .arguments(Command.Type.WORD)
+                        .rest()
+                        .arityMessage("Please provide the appointment IDs to cancel.")
+                        .build(),
+                new Command.Builder("add_doses", Scheduler::addDoses)
+                        .usage("<vaccine> <number>")
+                        .requires(Command.Requirement.CAREGIVER)
+                        .arguments(Command.Type.WORD, Command.Type.INT)
+                        .build(),
+                new Command.Builder("show_appointments", Scheduler::showAppointments)
+                        .usage("[--from <date>] [--limit <n>] [--after <appointment_id>]")
+                        .requires(Command.Requirement.LOGGED_IN)
+                        .rest()
+                        .build(),
+                new Command.Builder("import_accounts", Scheduler::importAccounts)
+                        .usage("<patient|caregiver> <csv_file>")
+                        .requires(Command.Requirement.LOCAL)
+                        .arguments(Command.Type.WORD, Command.Type.WORD)
+                        .build(),
+                new Command.Builder("reconcile_availability", Scheduler::reconcileAvailability)
+                        .requires(Command.Requirement.CAREGIVER)
+                        .build(),
+                // pool and latency internals, and query plans from the database: not for remote clients
+                new Command.Builder("stats", Scheduler::stats)
+                        .requires(Command.Requirement.LOCAL)
+                        .build(),
+                new Command.Builder("explain", Scheduler::explain)
+                        .requires(Command.Requirement.LOCAL)
+                        .build(),
+                new Command.Builder("logout", Scheduler::logout)
+                        .requires(Command.Requirement.LOGGED_IN)
+                        .build(),
+                new Command.Builder("quit", (session, args) -> session.out().println("Bye!"))
+                        .quits()
+                        .build()));
+    }
+
+    private static void createPatient(Session session, Arguments args) {
+        // TODO: Part 1
+        String username = args.getString(1);
+        String password = args.getString(2);
 
         if (usernameExistsPatient(username)) {
-            System.out.println("Username taken, try again!");
+            session.fail("Username taken, try again!");
             return;
         }
         byte[] salt = Util.generateSalt();
@@ -112,46 +219,31 @@ public class Scheduler {
             Patient patient = new Patient.PatientBuilder(username, salt, hash).build();
 
             patient.saveToDB();
-            System.out.println("Created user " + username);
+            session.out().println("Created user " + username);
         } catch (SQLException e) {
-            System.out.println("Failed to create user.");
+            session.fail("Failed to create user.");
             e.printStackTrace();
         }
     }
 
 
     private static boolean usernameExistsPatient(String username) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String selectUsername = "SELECT * FROM Patients WHERE Username = ?";
         try {
-            PreparedStatement statement = con.prepareStatement(selectUsername);
-            statement.setString(1, username);
-            ResultSet resultSet = statement.executeQuery();
-
-            return resultSet.isBeforeFirst();
+            return AccountService.usernameExists(AccountService.Role.PATIENT, username);
         } catch (SQLException e) {
             System.out.println("Error occurred when checking username");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
         return true;
     }
 
-    private static void createCaregiver(String[] tokens) {
+    private static void createCaregiver(Session session, Arguments args) {
         // create_caregiver <username> <password>
-        // check 1: the length for tokens need to be exactly 3 to include all information (with the operation name)
-        if (tokens.length != 3) {
-            System.out.println("Failed to create user.");
-            return;
-        }
-        String username = tokens[1];
-        String password = tokens[2];
-        // check 2: check if the username has been taken already
+        String username = args.getString(1);
+        String password = args.getString(2);
+        // check if the username has been taken already
         if (usernameExistsCaregiver(username)) {
-            System.out.println("Username taken, try again!");
+            session.fail("Username taken, try again!");
             return;
         }
         byte[] salt = Util.generateSalt();
@@ -161,540 +253,536 @@ public class Scheduler {
             Caregiver caregiver = new Caregiver.CaregiverBuilder(username, salt, hash).build(); 
             // save to caregiver information to our database
             caregiver.saveToDB();
-            System.out.println("Created user " + username);
+            session.out().println("Created user " + username);
         } catch (SQLException e) {
-            System.out.println("Failed to create user.");
+            session.fail("Failed to create user.");
             e.printStackTrace();
         }
     }
 
     private static boolean usernameExistsCaregiver(String username) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String selectUsername = "SELECT * FROM Caregivers WHERE Username = ?";
         try {
-            PreparedStatement statement = con.prepareStatement(selectUsername);
-            statement.setString(1, username);
-            ResultSet resultSet = statement.executeQuery();
-            // returns false if the cursor is not before the first record or if there are no rows in the ResultSet.
-            return resultSet.isBeforeFirst();
+            return AccountService.usernameExists(AccountService.Role.CAREGIVER, username);
         } catch (SQLException e) {
             System.out.println("Error occurred when checking username");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
         return true;
     }
 
 
 
-    private static void loginPatient(String[] tokens) {
+    private static void loginPatient(Session session, Arguments args) {
         // TODO: Part 1
-        if (currentCaregiver != null || currentPatient != null) {
-            System.out.println("User already logged in.");
-            return;
-        }
-        if (tokens.length != 3) {
-            System.out.println("Login failed.");
-
-            return;
-        }
-        String username = tokens[1];
-        String password = tokens[2];
+        String username = args.getString(1);
+        String password = args.getString(2);
 
         Patient patient = null;
         try {
             patient = new Patient.PatientGetter(username, password).get();
         } catch (SQLException e) {
-            System.out.println("Login failed.");
+            session.fail("Login failed.");
             e.printStackTrace();
         }
         if (patient == null) {
-            System.out.println("Login failed.");
+            session.fail("Login failed.");
         } else {
-            System.out.println("Logged in as: " + username);
-            currentPatient = patient;
+            session.out().println("Logged in as: " + username);
+            session.setCurrentPatient(patient);
+            issueToken(session);
         }
 
     }
 
-    private static void loginCaregiver(String[] tokens) {
-
-        if (currentCaregiver != null || currentPatient != null) {
-            System.out.println("User already logged in.");
-            return;
-        }
-
-        if (tokens.length != 3) {
-            System.out.println("Login failed.");
-            return;
-        }
-        String username = tokens[1];
-        String password = tokens[2];
+    private static void loginCaregiver(Session session, Arguments args) {
+        String username = args.getString(1);
+        String password = args.getString(2);
 
         Caregiver caregiver = null;
         try {
             caregiver = new Caregiver.CaregiverGetter(username, password).get();
         } catch (SQLException e) {
-            System.out.println("Login failed.");
+            session.fail("Login failed.");
             e.printStackTrace();
         }
         // check if the login was successful
         if (caregiver == null) {
-            System.out.println("Login failed.");
+            session.fail("Login failed.");
         } else {
-            System.out.println("Logged in as: " + username);
-            currentCaregiver = caregiver;
+            session.out().println("Logged in as: " + username);
+            session.setCurrentCaregiver(caregiver);
+            issueToken(session);
         }
     }
 
-    private static void searchCaregiverSchedule(String[] tokens) {
-        // TODO: Part 2
+    // lets a later connection pick this login up again with `resume <token>`
+    private static void issueToken(Session session) {
+        String token = SessionRegistry.getInstance().register(session);
+        session.setToken(token);
+        session.out().println("Session token: " + token);
+    }
 
-        if (tokens.length != 2) {
-            System.out.println("Please try again!");
+    private static void resume(Session session, Arguments args) {
+        // resume <token>
+        String token = args.getString(1);
+        Session previous = SessionRegistry.getInstance().get(token);
+        if (previous == null || !previous.isLoggedIn()) {
+            session.fail("Session expired, please login again.");
             return;
-        } else if (currentCaregiver == null && currentPatient == null) {
-            System.out.println("Please login first.");
+        }
+        Caregiver caregiver = previous.getCurrentCaregiver();
+        Patient patient = previous.getCurrentPatient();
+        if (!SessionRegistry.getInstance().rebind(token, session)) {
+            session.fail("Session expired, please login again.");
             return;
-        } else {
-            String date = tokens[1];
-            if(!existsDate(date)) {
-                System.out.println("there is no available caregivers at this date");
-            }
-
-            try{
-                ConnectionManager cm = new ConnectionManager();
-                Connection con = cm.createConnection();
-
-                String selectCaregivers = "SELECT DISTINCT A.Username " +
-                        "FROM Availabilities A " +
-                        "WHERE A.Time = ? " +
-                        "ORDER BY A.Username";
-
-                PreparedStatement statement = con.prepareStatement(selectCaregivers);
-                statement.setString(1, date);
-                ResultSet resultSet = statement.executeQuery();
-                while (resultSet.next()) {
-                    String caregiverUsername = resultSet.getString("Username");
-
-
-                    String selectVaccineInfo = "SELECT Name, Doses FROM Vaccines";
-                    PreparedStatement vaccineStatement = con.prepareStatement(selectVaccineInfo);
-                    ResultSet vaccineResultSet = vaccineStatement.executeQuery();
-
-                    System.out.print("Caregiver: " + caregiverUsername + ", ");
-
-
-                    while (vaccineResultSet.next()) {
-                        String vaccineName = vaccineResultSet.getString("Name");
-                        int availableDoses = vaccineResultSet.getInt("Doses");
-
-                        System.out.print("Vaccine: " + vaccineName +
-                                ", Available Doses: " + availableDoses + ", ");
-                    }
-
-                    System.out.println();
-                }
-
-                    cm.closeConnection();
-
+        }
+        session.setCurrentCaregiver(caregiver);
+        session.setCurrentPatient(patient);
+        session.setToken(token);
+        session.out().println("Logged in as: " + (caregiver != null ? caregiver.getUsername() : patient.getUsername()));
+    }
 
+    private static void searchCaregiverSchedule(Session session, Arguments args) {
+        // search_caregiver_schedule <date> [--compact]
+        boolean compact = args.is(2, "--compact");
+        if (args.length() == 3 && !compact) {
+            session.fail("Please try again!");
+            return;
+        }
+        Date date = Date.valueOf(args.getDate(1));
+        SortedSet<String> caregivers;
+        Map<String, Integer> vaccines;
+        try {
+            // one read of the availability index and one of the inventory per search
+            caregivers = ScheduleService.availableCaregivers(date);
+            vaccines = ScheduleService.vaccineInventory();
+        } catch (SQLException e) {
+            session.fail("Please try again!");
+            e.printStackTrace();
+            return;
+        }
+        if (caregivers.isEmpty()) {
+            session.out().println("there is no available caregivers at this date");
+            return;
+        }
 
-            } catch (SQLException e) {
-                System.out.println("Please try again!");
-                e.printStackTrace();
+        StringBuilder buffer = OUTPUT_BUFFER.get();
+        buffer.setLength(0);
+        if (compact) {
+            // vaccines are the same for every caregiver, so list them once
+            buffer.append("Caregivers: ");
+            String separator = "";
+            for (String caregiverUsername : caregivers) {
+                buffer.append(separator).append(caregiverUsername);
+                separator = ", ";
+                drain(session, buffer);
             }
-
+            buffer.append(System.lineSeparator()).append("Vaccines: ");
+            separator = "";
+            for (Map.Entry<String, Integer> vaccine : vaccines.entrySet()) {
+                buffer.append(separator).append(vaccine.getKey()).append(" (").append(vaccine.getValue()).append(')');
+                separator = ", ";
+            }
+            buffer.append(System.lineSeparator());
+        } else {
+            // the vaccine part of every line is formatted once
+            StringBuilder vaccinePart = new StringBuilder();
+            for (Map.Entry<String, Integer> vaccine : vaccines.entrySet()) {
+                vaccinePart.append("Vaccine: ").append(vaccine.getKey())
+                        .append(", Available Doses: ").append(vaccine.getValue()).append(", ");
+            }
+            for (String caregiverUsername : caregivers) {
+                buffer.append("Caregiver: ").append(caregiverUsername).append(", ")
+                        .append(vaccinePart).append(System.lineSeparator());
+                drain(session, buffer);
             }
-
         }
+        flush(session, buffer);
+    }
 
+    // hands the buffer to the session's writer once it has grown past the limit
+    private static void drain(Session session, StringBuilder buffer) {
+        if (buffer.length() >= OUTPUT_BUFFER_LIMIT) {
+            session.out().append(buffer);
+            buffer.setLength(0);
+        }
+    }
 
+    // hands over the rest, and gives back what one very long line made the buffer grow to
+    private static void flush(Session session, StringBuilder buffer) {
+        session.out().append(buffer);
+        buffer.setLength(0);
+        if (buffer.capacity() > OUTPUT_BUFFER_LIMIT * 2) {
+            buffer.trimToSize();
+        }
+    }
 
-
-
-    private static boolean existsDate(String date) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String selectUsername = "SELECT Username FROM Availabilities WHERE Time = ?";
+    private static void reconcileAvailability(Session session, Arguments args) {
+        // reconcile_availability
         try {
-            PreparedStatement statement = con.prepareStatement(selectUsername);
-            statement.setString(1, date);
-            ResultSet resultSet = statement.executeQuery();
-            // returns false if the cursor is not before the first record or if there are no rows in the ResultSet.
-            return resultSet.isBeforeFirst();
+            AvailabilityIndex.Reconciliation result = AvailabilityIndex.getInstance().reconcile();
+            session.out().println(result.isConsistent()
+                    ? "Availability index is consistent (" + result.getRows() + " slots)."
+                    : "Availability index repaired: " + result);
         } catch (SQLException e) {
-            System.out.println("Error occurred when checking date");
+            session.fail("Please try again!");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
-        return true;
     }
 
-    private static void reserve(String[] tokens) {
-        // TODO: Part 2
-        if (tokens.length != 3) {
-            System.out.println("Please try again!");
-            return;
-        } else if (currentPatient == null && currentCaregiver == null) {
-            System.out.println("Please login first");
-            return;
-        } else if (currentPatient == null){
-            System.out.println("Please login as a patient!");
+    private static void stats(Session session, Arguments args) {
+        // stats
+        PrintWriter out = session.out();
+        Metrics metrics = Metrics.getInstance();
+        out.printf("%-26s %8s %8s %9s %9s %9s %9s %8s %8s %9s%n", "command", "count", "failed", "p50 ms",
+                "p99 ms", "p999 ms", "max ms", "trips", "conns", "hash ms");
+        for (Map.Entry<String, Metrics.CommandStats> entry : metrics.getCommandStats().entrySet()) {
+            Metrics.CommandStats stats = entry.getValue();
+            LatencyHistogram.Snapshot latency = stats.getLatency();
+            // round trips, connections and hashing are per command on average
+            double count = Math.max(1, stats.getCount());
+            out.printf("%-26s %8d %8d %9.3f %9.3f %9.3f %9.3f %8.2f %8.2f %9.3f%n", entry.getKey(),
+                    stats.getCount(), stats.getFailures(), latency.percentileNanos(0.5) / 1e6,
+                    latency.percentileNanos(0.99) / 1e6, latency.percentileNanos(0.999) / 1e6,
+                    latency.getMaxNanos() / 1e6, stats.getRoundTrips() / count, stats.getConnectionsOpened() / count,
+                    stats.getHashNanos() / count / 1e6);
+        }
+        out.println("Hashing: " + metrics.getHashing());
+        out.println("Dispatch: " + metrics.getDispatch());
+        out.println("JDBC: roundTrips=" + metrics.getRoundTrips() + ", connectionsOpened=" + metrics.getConnectionsOpened());
+        if (Storage.getInstance().isDurable()) {
+            out.println(ConnectionManager.getPool().getStats());
+        }
+        out.println(InventoryService.getInstance().getStats());
+        out.println(AvailabilityIndex.getInstance().getStats());
+        out.println(ReservationEngine.getInstance().getStats() + " strategy="
+                + ReservationEngine.getInstance().getStrategy().getName());
+        out.println(ReservationCoordinator.getInstance().getStats());
+        for (AccountService.Role role : AccountService.Role.values()) {
+            out.println(role + " " + UsernameFilter.getInstance().getStats(role));
+        }
+        CredentialCache credentials = CredentialCache.getInstance();
+        out.println("CredentialCache{size=" + credentials.size() + ", hits=" + credentials.getHits()
+                + ", misses=" + credentials.getMisses() + '}');
+    }
+
+    private static void explain(Session session, Arguments args) {
+        // explain
+        if (!Storage.getInstance().isDurable()) {
+            session.out().println("Storage is in memory, there are no query plans.");
             return;
         }
-
-        String date = tokens[1];
-        String vaccineName = tokens[2];
-
         try {
-            ConnectionManager cm = new ConnectionManager();
-            Connection con = cm.createConnection();
-
-
-            // Find available caregivers for the given date
-            String selectCaregivers = "SELECT DISTINCT A.Username " +
-                    "FROM Availabilities A " +
-                    "WHERE A.Time = ? " +
-                    "ORDER BY A.Username";
-
-            PreparedStatement statement = con.prepareStatement(selectCaregivers);
-            statement.setString(1, date);
-            ResultSet resultSet = statement.executeQuery();
-
-            if(!resultSet.next()) {
-                System.out.println("no caregiver available");
-                return;
-            }
-            String caregiverUsername = resultSet.getString("Username");
-
-            // Check if caregiver has an appointment for the given date
-
-                // Check if there are enough vaccine doses available
-                Vaccine vaccine = new Vaccine.VaccineGetter(vaccineName).get();
-                if (vaccine == null ) {
-                    System.out.println("No Vaccine!");
-                    return;
-                } else if(vaccine.getAvailableDoses() == 0) {
-                        // Not enough available doses
-                        System.out.println("Not enough available doses!");
-                        return;
+            int scans = 0;
+            for (QueryPlans.Plan plan : QueryPlans.explain()) {
+                session.out().println(plan);
+                if (!plan.usesIndex()) {
+                    scans++;
                 }
-                    // Decrease available vaccine doses
-                    vaccine.decreaseAvailableDoses(1);
-
-                    // Generate a unique appointment ID
-                    String appointmentId = Util.generateUUID();
-
-                    // Insert the appointment into the Appointments table
-                    String insertAppointment = "INSERT INTO Appointments VALUES (?, ?, ?, ?, ?)";
-                    PreparedStatement appointmentStatement = con.prepareStatement(insertAppointment);
-                    appointmentStatement.setString(1, appointmentId);
-                    appointmentStatement.setDate(2, Date.valueOf(date));
-                    appointmentStatement.setString(3, currentPatient.getUsername());
-                    appointmentStatement.setString(4, caregiverUsername);
-                    appointmentStatement.setString(5, vaccineName);
-                    appointmentStatement.executeUpdate();
-
-                    System.out.println("Appointment ID: " + appointmentId + ", Caregiver username: " + caregiverUsername);
-                    String deleteTable = "DELETE FROM Availabilities WHERE Username = ? AND Time = ?";
-                    PreparedStatement deleteStatement = con.prepareStatement(deleteTable);
-                    deleteStatement.setString(1,caregiverUsername);
-                    deleteStatement.setDate(2,Date.valueOf(date));
-                    deleteStatement.executeUpdate();
-
-                    cm.closeConnection();
-                    return;
-
+            }
+            if (scans > 0) {
+                session.fail(scans + " queries do not use an index!");
+            } else {
+                session.out().println("Every query uses an index.");
+            }
         } catch (SQLException e) {
-            System.out.println("Please try again!");
+            session.fail("Please try again!");
             e.printStackTrace();
         }
     }
 
+    private static void reserve(Session session, Arguments args) {
+        // TODO: Part 2
+        Date date = Date.valueOf(args.getDate(1));
+        String vaccineName = args.getString(2);
 
-
-
-    private static void uploadAvailability(String[] tokens) {
-        // upload_availability <date>
-        // check 1: check if the current logged-in user is a caregiver
-        if (currentCaregiver == null) {
-            System.out.println("Please login as a caregiver first!");
-            return;
-        }
-        // check 2: the length for tokens need to be exactly 2 to include all information (with the operation name)
-        if (tokens.length != 2) {
-            System.out.println("Please try again!");
-            return;
-        }
-        String date = tokens[1];
         try {
-            Date d = Date.valueOf(date);
-            currentCaregiver.uploadAvailability(d);
-            System.out.println("Availability uploaded!");
-        } catch (IllegalArgumentException e) {
-            System.out.println("Please enter a valid date!");
+            // claims the slot, takes the dose and books the appointment in one transaction
+            Reservation reservation = ReservationCoordinator.getInstance()
+                    .reserve(session.getCurrentPatient().getUsername(), date, vaccineName);
+            switch (reservation.getStatus()) {
+                case RESERVED:
+                    session.out().println("Appointment ID: " + reservation.getAppointmentId()
+                            + ", Caregiver username: " + reservation.getCaregiverUsername());
+                    break;
+                case NO_CAREGIVER:
+                    session.fail("no caregiver available");
+                    break;
+                case NO_VACCINE:
+                    session.fail("No Vaccine!");
+                    break;
+                case NO_DOSES:
+                    session.fail("Not enough available doses!");
+                    break;
+                default:
+                    session.fail("Please try again!");
+                    break;
+            }
         } catch (SQLException e) {
-            System.out.println("Error occurred when uploading availability");
+            session.fail("Please try again!");
             e.printStackTrace();
         }
     }
 
-    private static void cancel(String[] tokens) {
-        // TODO: Extra credit
 
-        // Check if the current user is a caregiver or patient
-        if (currentCaregiver == null && currentPatient == null) {
-            System.out.println("Please login first.");
-            return;
-        }
 
-        // Check if the correct number of arguments is provided
-        if (tokens.length != 2) {
-            System.out.println("Please provide the appointment ID to cancel.");
+
+    private static void uploadAvailability(Session session, Arguments args) {
+        // upload_availability <date>
+        // upload_availability <from> <to> [weekday-mask]
+        if (args.length() > 2) {
+            uploadAvailabilityRange(session, args);
             return;
         }
-
-        // Get the appointment ID from the tokens
-        String appointmentId = tokens[1];
-
         try {
-            ConnectionManager cm = new ConnectionManager();
-            Connection con = cm.createConnection();
-
-            // Check if the appointment exists
-            String selectAppointment = "SELECT * FROM Appointments WHERE aid = ?";
-            PreparedStatement appointmentStatement = con.prepareStatement(selectAppointment);
-            appointmentStatement.setString(1, appointmentId);
-            ResultSet resultSet = appointmentStatement.executeQuery();
-
-            if (!resultSet.next()) {
-                System.out.println("Appointment with ID " + appointmentId + " not found.");
-                cm.closeConnection();
-                return;
-            }
-
-            // Check if the appointment belongs to the logged-in caregiver or patient
-            String caregiverUsername = resultSet.getString("cid");
-            String patientUsername = resultSet.getString("pid");
-
-            if ((currentCaregiver != null && currentCaregiver.getUsername().equals(caregiverUsername)) ||
-                    (currentPatient != null && currentPatient.getUsername().equals(patientUsername))) {
-
-
-                // Delete the appointment from the Appointments table
-                String deleteAppointment = "DELETE FROM Appointments WHERE aid = ?";
-                PreparedStatement deleteStatement = con.prepareStatement(deleteAppointment);
-                deleteStatement.setString(1, appointmentId);
-                deleteStatement.executeUpdate();
-
-                String addBackAv = "INSERT INTO Availabilities VALUES(?, ?)";
-                PreparedStatement addStatement = con.prepareStatement(addBackAv);
-                addStatement.setDate(1, resultSet.getDate("Time"));
-                addStatement.setString(2, resultSet.getString("cid"));
-                addStatement.executeUpdate();
-
-                // Increase available doses for the canceled appointment
-                String vaccineName = resultSet.getString("vid");
-                int canceledDoses = 1;
-                Vaccine vaccine = new Vaccine.VaccineGetter(vaccineName).get();
-                if (vaccine != null) {
-                    vaccine.increaseAvailableDoses(canceledDoses);
-                }
-
-                System.out.println("Appointment with ID " + appointmentId + " canceled successfully.");
-            } else {
-                System.out.println("You don't have permission to cancel this appointment.");
-                return;
-            }
-
-            cm.closeConnection();
-
+            session.getCurrentCaregiver().uploadAvailability(Date.valueOf(args.getDate(1)));
+            session.out().println("Availability uploaded!");
         } catch (SQLException e) {
-            System.out.println("Error occurred while canceling appointment.");
+            session.fail("Error occurred when uploading availability");
             e.printStackTrace();
         }
     }
 
-    private static void addDoses(String[] tokens) {
-        // add_doses <vaccine> <number>
-        // check 1: check if the current logged-in user is a caregiver
-        if (currentCaregiver == null) {
-            System.out.println("Please login as a caregiver first!");
-            return;
-        }
-        // check 2: the length for tokens need to be exactly 3 to include all information (with the operation name)
-        if (tokens.length != 3) {
-            System.out.println("Please try again!");
-            return;
+    private static void uploadAvailabilityRange(Session session, Arguments args) {
+        Date from = Date.valueOf(args.getDate(1));
+        Date to = Date.valueOf(args.getDate(2));
+        Set<DayOfWeek> days = EnumSet.allOf(DayOfWeek.class);
+        if (args.length() == 4) {
+            days = parseWeekdayMask(args.getString(3));
+            if (days == null) {
+                session.fail("Please enter a weekday mask of seven 0/1 digits, Monday first!");
+                return;
+            }
         }
-        String vaccineName = tokens[1];
-        int doses = Integer.parseInt(tokens[2]);
-        Vaccine vaccine = null;
         try {
-            vaccine = new Vaccine.VaccineGetter(vaccineName).get();
+            long start = System.nanoTime();
+            int inserted = session.getCurrentCaregiver().uploadAvailability(from, to, days);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            session.out().println("Availability uploaded! " + inserted + " dates added in " + millis + " ms");
+        } catch (IllegalArgumentException e) {
+            session.fail(e.getMessage());
         } catch (SQLException e) {
-            System.out.println("Error occurred when adding doses");
+            session.fail("Error occurred when uploading availability");
             e.printStackTrace();
         }
-        // check 3: if getter returns null, it means that we need to create the vaccine and insert it into the Vaccines
-        //          table
-        if (vaccine == null) {
-            try {
-                vaccine = new Vaccine.VaccineBuilder(vaccineName, doses).build();
-                vaccine.saveToDB();
-            } catch (SQLException e) {
-                System.out.println("Error occurred when adding doses");
-                e.printStackTrace();
-            }
-        } else {
-            // if the vaccine is not null, meaning that the vaccine already exists in our table
-            try {
-                vaccine.increaseAvailableDoses(doses);
-            } catch (SQLException e) {
-                System.out.println("Error occurred when adding doses");
-                e.printStackTrace();
-            }
-        }
-        System.out.println("Doses updated!");
     }
 
-    private static void showAppointments(String[] tokens) {
-        // TODO: Part 2
-         if (currentPatient == null && currentCaregiver == null) {
-            System.out.println("Please login first");
-            return;
+    // "1111100" -> Monday to Friday
+    private static Set<DayOfWeek> parseWeekdayMask(String mask) {
+        if (mask.length() != 7) {
+            return null;
+        }
+        Set<DayOfWeek> days = EnumSet.noneOf(DayOfWeek.class);
+        for (int i = 0; i < 7; i++) {
+            char c = mask.charAt(i);
+            if (c == '1') {
+                days.add(DayOfWeek.of(i + 1));
+            } else if (c != '0') {
+                return null;
+            }
         }
+        return days;
+    }
 
-        try{
-            ConnectionManager cm = new ConnectionManager();
-            Connection con = cm.createConnection();
-
-            if(currentPatient != null) {
-
-                String patientUsername = currentPatient.getUsername();
-
-                String selectAppoinment = "SELECT A.aid, A.vid, A.Time, A.cid " +
-                        "FROM Appointments A " +
-                        "WHERE A.pid = ? " +
-                        "ORDER BY A.aid";
+    private static void cancel(Session session, Arguments args) {
+        // TODO: Extra credit
+        String appointmentId = args.getString(1);
 
-                PreparedStatement statement = con.prepareStatement(selectAppoinment);
-                statement.setString(1, patientUsername);
-                ResultSet resultSet = statement.executeQuery();
+        Patient patient = session.getCurrentPatient();
+        Caregiver caregiver = session.getCurrentCaregiver();
+        try {
+            AppointmentService.CancelResult result = AppointmentService.cancel(appointmentId,
+                    patient == null ? null : patient.getUsername(),
+                    caregiver == null ? null : caregiver.getUsername());
+            if (result == AppointmentService.CancelResult.NOT_FOUND) {
+                session.fail("Appointment with ID " + appointmentId + " not found.");
+            } else if (result == AppointmentService.CancelResult.FORBIDDEN) {
+                session.fail("You don't have permission to cancel this appointment.");
+            } else {
+                session.out().println("Appointment with ID " + appointmentId + " canceled successfully.");
+            }
+        } catch (SQLException e) {
+            session.fail("Error occurred while canceling appointment.");
+            e.printStackTrace();
+        }
+    }
 
-                if(!appointmentExistsPatient(patientUsername)) {
-                    System.out.println("no appointment was reserved");
+    private static void cancelAll(Session session, Arguments args) {
+        // cancel_all <appointment_id> [<appointment_id> ...]
+        // cancel_all --file <file with one appointment id per line>
+        // cancel_all --date <from> [<to>]   (a caregiver's appointments on those dates)
+        Patient patient = session.getCurrentPatient();
+        AccountService.Role role = patient != null ? AccountService.Role.PATIENT : AccountService.Role.CAREGIVER;
+        String username = patient != null ? patient.getUsername() : session.getCurrentCaregiver().getUsername();
+        try {
+            if (args.is(1, "--date")) {
+                if (role != AccountService.Role.CAREGIVER) {
+                    session.fail("Please login as a caregiver first!");
                     return;
                 }
-
-                while(resultSet.next()) {
-                    System.out.println("Appointment ID: " + resultSet.getString("aid") + " "
-                            + "vaccine name: " + resultSet.getString("vid") + " "
-                            + "date: " + resultSet.getString("Time") + " "
-                            + "caregiver name: " + resultSet.getString("cid"));
+                if (args.length() < 3 || args.length() > 4 || !args.parseDate(2)
+                        || (args.length() == 4 && !args.parseDate(3))) {
+                    session.fail("Please enter a valid date!");
+                    return;
                 }
-
+                LocalDate from = args.getDate(2);
+                LocalDate to = args.length() == 4 ? args.getDate(3) : from;
+                int canceled = AppointmentService.cancelAll(username, from, to);
+                session.out().println("Canceled " + canceled + " appointments from " + from + " to " + to + ".");
+                return;
             }
-
-            if(currentCaregiver != null) {
-                String caregiverUsername = currentCaregiver.getUsername();
-
-                String selectAppoinment = "SELECT A.aid, A.vid, A.Time, A.pid " +
-                        "FROM Appointments A " +
-                        "WHERE A.cid = ? " +
-                        "ORDER BY A.aid";
-
-                PreparedStatement statement = con.prepareStatement(selectAppoinment);
-                statement.setString(1, caregiverUsername);
-                ResultSet resultSet = statement.executeQuery();
-
-                if(!appointmentExistsCare(caregiverUsername)) {
-                    System.out.println("no appointment was reserved");
+            // a repeated id counts once
+            Set<String> appointmentIds = new LinkedHashSet<>();
+            if (args.is(1, "--file")) {
+                // the file is read on this machine, so network clients send the ids instead
+                if (!session.isLocal()) {
+                    session.fail("--file is only available from the console; please list the appointment IDs instead.");
                     return;
                 }
-
-                while(!resultSet.next()) {
-                    System.out.println("Appointment ID: " + resultSet.getString("aid") + " "
-                            + "vaccine name: " + resultSet.getString("vid") + " "
-                            + "date: " + resultSet.getString("Time") + " "
-                            + "patient name: " + resultSet.getString("pid"));
+                if (args.length() != 3) {
+                    session.fail("Please try again!");
+                    return;
+                }
+                String file = args.getString(2);
+                try {
+                    for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+                        if (!line.isBlank()) {
+                            appointmentIds.add(line.strip());
+                        }
+                    }
+                } catch (IOException e) {
+                    session.fail("Could not read " + file + ": " + e.getMessage());
+                    return;
+                }
+            } else {
+                for (int i = 1; i < args.length(); i++) {
+                    appointmentIds.add(args.getString(i));
                 }
-
-
             }
-
-
-
-            cm.closeConnection();
-
-
-
+            int canceled = AppointmentService.cancelAll(role, username, new ArrayList<>(appointmentIds));
+            session.out().println("Canceled " + canceled + " appointments.");
+            if (canceled < appointmentIds.size()) {
+                session.fail((appointmentIds.size() - canceled) + " appointments were not found or are not yours.");
+            }
         } catch (SQLException e) {
-            System.out.println("Please try again!");
+            session.fail("Error occurred while canceling appointments.");
             e.printStackTrace();
         }
-
     }
 
-    private static boolean appointmentExistsPatient(String username) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
-
-        String selectUsername = "SELECT * FROM Appointments WHERE pid = ?";
+    private static void addDoses(Session session, Arguments args) {
+        // add_doses <vaccine> <number>
+        String vaccineName = args.getString(1);
+        int doses = args.getInt(2);
+        if (doses < 0) {
+            session.fail("The number of doses cannot be negative. Usage: " + COMMANDS.find("add_doses").getUsage());
+            return;
+        }
+        // the vaccine is created with these doses if it does not exist yet; 0 just creates it
         try {
-            PreparedStatement statement = con.prepareStatement(selectUsername);
-            statement.setString(1, username);
-            ResultSet resultSet = statement.executeQuery();
-            // returns false if the cursor is not before the first record or if there are no rows in the ResultSet.
-            return resultSet.isBeforeFirst();
+            InventoryService.getInstance().addOrCreate(vaccineName, doses);
         } catch (SQLException e) {
-            System.out.println("Error occurred when checking username");
+            session.fail("Error occurred when adding doses");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
+            return;
         }
-        return true;
+        session.out().println("Doses updated!");
     }
 
-    private static boolean appointmentExistsCare(String username) {
-        ConnectionManager cm = new ConnectionManager();
-        Connection con = cm.createConnection();
+    private static void showAppointments(Session session, Arguments args) {
+        // show_appointments [--from <date>] [--limit <n>] [--after <appointment_id>]
+        LocalDate from = null;
+        String afterId = null;
+        int limit = Integer.MAX_VALUE;
+        for (int i = 1; i < args.length(); i += 2) {
+            if (i + 1 == args.length()) {
+                session.fail("Please try again!");
+                return;
+            }
+            if (args.is(i, "--from") && args.parseDate(i + 1)) {
+                from = args.getDate(i + 1);
+            } else if (args.is(i, "--limit") && args.parseInt(i + 1) && args.getInt(i + 1) > 0) {
+                limit = args.getInt(i + 1);
+            } else if (args.is(i, "--after")) {
+                afterId = args.getString(i + 1);
+            } else {
+                session.fail("Please try again!");
+                return;
+            }
+        }
 
-        String selectUsername = "SELECT * FROM Appointments WHERE cid = ?";
+        boolean patient = session.getCurrentPatient() != null;
+        String username = patient ? session.getCurrentPatient().getUsername()
+                : session.getCurrentCaregiver().getUsername();
+        String counterpartLabel = patient ? " caregiver name: " : " patient name: ";
+        StringBuilder buffer = OUTPUT_BUFFER.get();
+        buffer.setLength(0);
+        // the id of the last row, for the next page
+        String[] last = new String[1];
+        int count;
         try {
-            PreparedStatement statement = con.prepareStatement(selectUsername);
-            statement.setString(1, username);
-            ResultSet resultSet = statement.executeQuery();
-            // returns false if the cursor is not before the first record or if there are no rows in the ResultSet.
-            return resultSet.isBeforeFirst();
+            // one query: an empty page is the "no appointments" answer
+            count = AppointmentService.forEachAppointment(patient ? AccountService.Role.PATIENT
+                            : AccountService.Role.CAREGIVER, username, from, afterId, limit,
+                    (appointmentId, vaccineName, date, counterpart) -> {
+                        buffer.append("Appointment ID: ").append(appointmentId)
+                                .append(" vaccine name: ").append(vaccineName)
+                                .append(" date: ").append(date)
+                                .append(counterpartLabel).append(counterpart)
+                                .append(System.lineSeparator());
+                        last[0] = appointmentId;
+                        drain(session, buffer);
+                    });
+        } catch (SQLException | IOException e) {
+            buffer.setLength(0);
+            session.fail("Please try again!");
+            e.printStackTrace();
+            return;
+        }
+        if (count == 0) {
+            buffer.append(afterId == null && from == null ? "no appointment was reserved" : "no more appointments")
+                    .append(System.lineSeparator());
+        } else if (count == limit) {
+            buffer.append("Next page: show_appointments");
+            if (from != null) {
+                buffer.append(" --from ").append(from);
+            }
+            buffer.append(" --limit ").append(limit).append(" --after ").append(last[0])
+                    .append(System.lineSeparator());
+        }
+        flush(session, buffer);
+    }
+
+    private static void importAccounts(Session session, Arguments args) {
+        // import_accounts <patient|caregiver> <csv_file>
+        if (!(args.is(1, "patient") || args.is(1, "caregiver"))) {
+            session.fail("Please try again!");
+            return;
+        }
+        AccountService.Role role = args.is(1, "patient")
+                ? AccountService.Role.PATIENT : AccountService.Role.CAREGIVER;
+        String file = args.getString(2);
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            AccountImporter.Report report = AccountImporter.fromConfig(role).importCsv(reader);
+            session.out().println(report);
+        } catch (IOException e) {
+            session.fail("Could not read " + file + ": " + e.getMessage());
         } catch (SQLException e) {
-            System.out.println("Error occurred when checking username");
+            session.fail("Error occurred when importing accounts");
             e.printStackTrace();
-        } finally {
-            cm.closeConnection();
         }
-        return true;
     }
-    private static void logout(String[] tokens) {
+
+    private static void logout(Session session, Arguments args) {
         // TODO: Part 2
-        if (currentCaregiver == null && currentPatient == null) {
-            System.out.println("Please login first.");
+        SessionRegistry.getInstance().remove(session.getToken());
+        session.setToken(null);
+        if (session.getCurrentCaregiver() != null) {
+            session.out().println("Successfully logged out!: " + session.getCurrentCaregiver().getUsername());
+            session.setCurrentCaregiver(null);
         } else {
-            if (currentCaregiver != null) {
-                System.out.println("Successfully logged out!: " + currentCaregiver.getUsername());
-                currentCaregiver = null;
-            } else if (currentPatient != null) {
-                System.out.println("Successfully logged out!: " + currentPatient.getUsername());
-                currentPatient = null;
-            } else {
-                System.out.println("Please try again!");
-            }
+            session.out().println("Successfully logged out!: " + session.getCurrentPatient().getUsername());
+            session.setCurrentPatient(null);
         }
     }
 }
@@ -0,0 +1,240 @@
+package scheduler;
+
+import scheduler.db.ConnectionManager;
+import scheduler.service.InventoryService;
+import scheduler.util.Config;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Line-oriented TCP front end: every client speaks the same command grammar as the console,
+// gets its own Session (and therefore its own logged-in user) and is served on its own virtual thread.
+public class SchedulerServer {
+    private final int port;
+    private final int maxConnections;
+    private final int idleTimeoutMillis;
+    private final long shutdownGraceMillis;
+
+    private final Semaphore connectionPermits;
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+    private final AtomicLong sessionIds = new AtomicLong();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong refused = new AtomicLong();
+    private volatile ServerSocket serverSocket;
+    private volatile Thread acceptor;
+    private volatile boolean running = false;
+
+    public SchedulerServer(int port, int maxConnections, int idleTimeoutMillis, long shutdownGraceMillis) {
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("Connection limit must be positive!");
+        }
+        this.port = port;
+        this.maxConnections = maxConnections;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.shutdownGraceMillis = shutdownGraceMillis;
+        this.connectionPermits = new Semaphore(maxConnections);
+    }
+
+    public static void main(String[] args) {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Config.getInt("scheduler.server.port", 4414);
+        SchedulerServer server = new SchedulerServer(port,
+                Config.getInt("scheduler.server.maxConnections", 512),
+                Config.getInt("scheduler.server.idleTimeoutMillis", 30 * 60 * 1000),
+                Config.getLong("scheduler.server.shutdownGraceMillis", 10_000));
+        try {
+            server.start();
+        } catch (IOException e) {
+            System.out.println("Failed to start server on port " + port);
+            e.printStackTrace();
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.shutdown();
+            InventoryService.getInstance().shutdown();
+            ConnectionManager.shutdown();
+        }, "scheduler-server-shutdown"));
+        System.out.println("Scheduler server listening on port " + server.getPort()
+                + " (max " + server.maxConnections + " connections)");
+        server.awaitTermination();
+    }
+
+    public synchronized void start() throws IOException {
+        if (running) {
+            throw new IllegalStateException("Server already started");
+        }
+        ServerSocket socket = new ServerSocket();
+        socket.setReuseAddress(true);
+        socket.bind(new InetSocketAddress(port), Math.min(maxConnections, 1024));
+        serverSocket = socket;
+        running = true;
+        acceptor = Thread.ofPlatform().name("scheduler-server-acceptor").start(this::acceptLoop);
+    }
+
+    public int getPort() {
+        ServerSocket socket = serverSocket;
+        return socket == null ? port : socket.getLocalPort();
+    }
+
+    public int getActiveConnections() {
+        return clients.size();
+    }
+
+    public long getAcceptedConnections() {
+        return accepted.get();
+    }
+
+    public long getRefusedConnections() {
+        return refused.get();
+    }
+
+    private void acceptLoop() {
+        long backoffMillis = 0;
+        while (running) {
+            Socket client;
+            try {
+                client = serverSocket.accept();
+            } catch (IOException e) {
+                if (!running || serverSocket.isClosed()) {
+                    break;
+                }
+                e.printStackTrace();
+                // e.g. out of file descriptors: wait (10 ms, doubling up to 1 s) instead of spinning
+                backoffMillis = Math.min(Math.max(backoffMillis * 2, 10), 1_000);
+                try {
+                    Thread.sleep(backoffMillis);
+                } catch (InterruptedException ie) {
+                    break;
+                }
+                continue;
+            }
+            backoffMillis = 0;
+            if (!connectionPermits.tryAcquire()) {
+                refused.incrementAndGet();
+                refuse(client);
+                continue;
+            }
+            accepted.incrementAndGet();
+            clients.add(client);
+            long id = sessionIds.incrementAndGet();
+            Thread.ofVirtual().name("session-" + id).start(() -> {
+                try {
+                    serve(client);
+                } finally {
+                    clients.remove(client);
+                    closeQuietly(client);
+                    connectionPermits.release();
+                }
+            });
+        }
+    }
+
+    private void serve(Socket client) {
+        try {
+            client.setSoTimeout(idleTimeoutMillis);
+            client.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(new BufferedWriter(
+                    new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8)));
+            Session session = new Session(out);
+            Scheduler.printMenu(out);
+            while (running) {
+                out.print("> ");
+                out.flush();
+                String line = in.readLine();
+                if (line == null || !Scheduler.execute(session, line)) {
+                    break;
+                }
+            }
+            out.flush();
+        } catch (SocketTimeoutException e) {
+            // idle client, drop it
+        } catch (SocketException e) {
+            // client went away or the server is shutting down
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void refuse(Socket client) {
+        try {
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8));
+            out.println("Server busy, please try again later.");
+            out.flush();
+        } catch (IOException e) {
+            // nothing to tell a client we cannot write to
+        } finally {
+            closeQuietly(client);
+        }
+    }
+
+    // Stops accepting connections, lets connected sessions finish their current command and
+    // disconnect on their own for up to the grace period, then closes whatever is still open.
+    public void shutdown() {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+        }
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // we are closing anyway
+        }
+        // running == false ends every session loop after its current command; idle
+        // clients blocked in readLine are woken up by shutting down their input
+        for (Socket client : clients) {
+            try {
+                client.shutdownInput();
+            } catch (IOException e) {
+                // already gone
+            }
+        }
+        try {
+            if (connectionPermits.tryAcquire(maxConnections, shutdownGraceMillis, TimeUnit.MILLISECONDS)) {
+                connectionPermits.release(maxConnections);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Socket client : clients) {
+            closeQuietly(client);
+        }
+    }
+
+    public void awaitTermination() {
+        Thread t = acceptor;
+        if (t == null) {
+            return;
+        }
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package scheduler;
+
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+
+import java.io.PrintWriter;
+
+// State of one user of the scheduler: the console, or one client connection in server mode.
+public class Session {
+    private final PrintWriter out;
+    // true for the console and batch files, which run as whoever started the process; commands
+    // that read files on this machine are only allowed there, never for network clients
+    private final boolean local;
+
+    // objects to keep track of the currently logged-in user
+    // Note: it is always true that at most one of currentCaregiver and currentPatient is not null
+    //       since only one user can be logged-in at a time per session
+    private volatile Caregiver currentCaregiver = null;
+    private volatile Patient currentPatient = null;
+
+    // token the login of this session can be resumed with (see SessionRegistry), if any
+    private volatile String token = null;
+
+    // number of commands of this session that ended in an error message
+    private long failures = 0;
+
+    public Session(PrintWriter out) {
+        this(out, false);
+    }
+
+    public Session(PrintWriter out, boolean local) {
+        this.out = out;
+        this.local = local;
+    }
+
+    public PrintWriter out() {
+        return out;
+    }
+
+    // reports a failed command to the user
+    public void fail(String message) {
+        failures++;
+        out.println(message);
+    }
+
+    public boolean isLocal() {
+        return local;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public Caregiver getCurrentCaregiver() {
+        return currentCaregiver;
+    }
+
+    public void setCurrentCaregiver(Caregiver currentCaregiver) {
+        this.currentCaregiver = currentCaregiver;
+    }
+
+    public Patient getCurrentPatient() {
+        return currentPatient;
+    }
+
+    public void setCurrentPatient(Patient currentPatient) {
+        this.currentPatient = currentPatient;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+    public boolean isLoggedIn() {
+        return currentCaregiver != null || currentPatient != null;
+    }
+}
@@ -0,0 +1,126 @@
+package scheduler;
+
+import scheduler.service.AccountService;
+import scheduler.service.CredentialCache;
+import scheduler.util.Config;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Maps opaque bearer tokens to sessions, so a client can come back to a login (HTTP requests,
+// or `resume <token>` on a new console or server connection) without sending its password
+// again. A token expires once it has not been used for scheduler.session.ttlMillis, and all
+// tokens of an account in the shared registry are revoked when the account is invalidated in
+// the CredentialCache.
+public class SessionRegistry {
+    private static final int TOKEN_BYTES = 32;
+    private static final SessionRegistry INSTANCE =
+            new SessionRegistry(Config.getLong("scheduler.session.ttlMillis", 1_800_000));
+
+    static {
+        CredentialCache.getInstance().addInvalidationListener(INSTANCE::revoke);
+    }
+
+    private final SecureRandom random = new SecureRandom();
+    private final ConcurrentHashMap<String, Entry> sessions = new ConcurrentHashMap<>();
+    private final long ttlNanos;
+    private final AtomicLong nextPurge;
+
+    public SessionRegistry(long ttlMillis) {
+        if (ttlMillis <= 0) {
+            throw new IllegalArgumentException("Session TTL must be positive!");
+        }
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.nextPurge = new AtomicLong(System.nanoTime() + ttlNanos);
+    }
+
+    public static SessionRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    public String register(Session session) {
+        purgeExpired();
+        while (true) {
+            byte[] bytes = new byte[TOKEN_BYTES];
+            random.nextBytes(bytes);
+            String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+            if (sessions.putIfAbsent(token, new Entry(session, System.nanoTime() + ttlNanos)) == null) {
+                return token;
+            }
+        }
+    }
+
+    // the session of a live token (which is kept alive for another TTL), or null
+    public Session get(String token) {
+        if (token == null) {
+            return null;
+        }
+        Entry entry = sessions.get(token);
+        if (entry == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        if (now - entry.expiresAt > 0) {
+            sessions.remove(token, entry);
+            return null;
+        }
+        entry.expiresAt = now + ttlNanos;
+        return entry.session;
+    }
+
+    // points a live token at another session, e.g. the new connection of a resumed login
+    public boolean rebind(String token, Session session) {
+        if (token == null) {
+            return false;
+        }
+        long now = System.nanoTime();
+        Entry rebound = sessions.computeIfPresent(token,
+                (t, entry) -> now - entry.expiresAt > 0 ? null : new Entry(session, now + ttlNanos));
+        return rebound != null;
+    }
+
+    public Session remove(String token) {
+        if (token == null) {
+            return null;
+        }
+        Entry entry = sessions.remove(token);
+        return entry == null ? null : entry.session;
+    }
+
+    // drops every token of the account
+    public void revoke(AccountService.Role role, String username) {
+        sessions.values().removeIf(entry -> {
+            Session session = entry.session;
+            return role == AccountService.Role.PATIENT
+                    ? session.getCurrentPatient() != null && session.getCurrentPatient().getUsername().equals(username)
+                    : session.getCurrentCaregiver() != null && session.getCurrentCaregiver().getUsername().equals(username);
+        });
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    // at most once per TTL, drop the tokens nobody came back for
+    private void purgeExpired() {
+        long now = System.nanoTime();
+        long next = nextPurge.get();
+        if (now - next < 0 || !nextPurge.compareAndSet(next, now + ttlNanos)) {
+            return;
+        }
+        sessions.values().removeIf(entry -> now - entry.expiresAt > 0);
+    }
+
+    private static class Entry {
+        private final Session session;
+        private volatile long expiresAt;
+
+        private Entry(Session session, long expiresAt) {
+            this.session = session;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package scheduler.db;
+
+// Every SQL string the application runs, declared once so that each pooled connection
+// can prepare it a single time and reuse it (see StatementCache).
+public enum SqlStatement {
+    // patients
+    INSERT_PATIENT("INSERT INTO Patients (Username, Salt, Hash, HashAlgo, Iterations) VALUES (?, ?, ?, ?, ?)"),
+    SELECT_PATIENT_CREDENTIALS("SELECT Salt, Hash, HashAlgo, Iterations FROM Patients WHERE Username = ?"),
+    UPDATE_PATIENT_CREDENTIALS("UPDATE Patients SET Salt = ?, Hash = ?, HashAlgo = ?, Iterations = ? WHERE Username = ?"),
+    PATIENT_EXISTS("SELECT Username FROM Patients WHERE Username = ?"),
+    COUNT_PATIENTS("SELECT COUNT(*) FROM Patients"),
+    SELECT_PATIENT_USERNAMES("SELECT Username FROM Patients"),
+
+    // caregivers
+    INSERT_CAREGIVER("INSERT INTO Caregivers (Username, Salt, Hash, HashAlgo, Iterations) VALUES (?, ?, ?, ?, ?)"),
+    SELECT_CAREGIVER_CREDENTIALS("SELECT Salt, Hash, HashAlgo, Iterations FROM Caregivers WHERE Username = ?"),
+    UPDATE_CAREGIVER_CREDENTIALS("UPDATE Caregivers SET Salt = ?, Hash = ?, HashAlgo = ?, Iterations = ? WHERE Username = ?"),
+    CAREGIVER_EXISTS("SELECT Username FROM Caregivers WHERE Username = ?"),
+    COUNT_CAREGIVERS("SELECT COUNT(*) FROM Caregivers"),
+    SELECT_CAREGIVER_USERNAMES("SELECT Username FROM Caregivers"),
+
+    // availabilities
+    INSERT_AVAILABILITY("INSERT INTO Availabilities VALUES (? , ?)"),
+    DELETE_AVAILABILITY("DELETE FROM Availabilities WHERE Username = ? AND Time = ?"),
+    SELECT_CAREGIVER_DATES("SELECT Time FROM Availabilities WHERE Username = ? AND Time BETWEEN ? AND ?"),
+    // a caregiver's free slots on days that close (see AppointmentStore.cancelAll)
+    DELETE_CAREGIVER_AVAILABILITIES("DELETE FROM Availabilities WHERE Username = ? AND Time BETWEEN ? AND ?"),
+    SELECT_ALL_AVAILABILITIES("SELECT Time, Username FROM Availabilities"),
+
+    // vaccines
+    INSERT_VACCINE("INSERT INTO vaccines VALUES (?, ?)"),
+    SELECT_VACCINE("SELECT Name, Doses FROM Vaccines WHERE Name = ?"),
+    SELECT_ALL_VACCINES("SELECT Name, Doses FROM Vaccines"),
+    // relative update used by the inventory write-behind; the delta may be negative
+    INCREMENT_VACCINE_DOSES("UPDATE Vaccines SET Doses = Doses + ? WHERE Name = ?"),
+
+    // write-behind checkpoints of the in-memory inventory (see InventoryService)
+    SELECT_INVENTORY_CHECKPOINT("SELECT Seq FROM InventoryCheckpoints WHERE Node = ?"),
+    INSERT_INVENTORY_CHECKPOINT("INSERT INTO InventoryCheckpoints VALUES (?, ?)"),
+    UPDATE_INVENTORY_CHECKPOINT("UPDATE InventoryCheckpoints SET Seq = ? WHERE Node = ?"),
+
+    // appointments
+    INSERT_APPOINTMENT("INSERT INTO Appointments VALUES (?, ?, ?, ?, ?)"),
+    SELECT_APPOINTMENT("SELECT * FROM Appointments WHERE aid = ?"),
+    DELETE_APPOINTMENT("DELETE FROM Appointments WHERE aid = ?"),
+    // bulk cancel (see AppointmentStore.cancelAll): the deleted rows come back through OUTPUT, so
+    // their slots can be given back in the same transaction; ids go ID_LIST_SIZE at a time
+    CANCEL_CAREGIVER_APPOINTMENTS("DELETE FROM Appointments " +
+            "OUTPUT DELETED.aid, DELETED.Time, DELETED.pid, DELETED.cid, DELETED.vid " +
+            "WHERE cid = ? AND Time BETWEEN ? AND ?"),
+    CANCEL_PATIENT_APPOINTMENTS_BY_ID("DELETE FROM Appointments " +
+            "OUTPUT DELETED.aid, DELETED.Time, DELETED.pid, DELETED.cid, DELETED.vid " +
+            "WHERE pid = ? AND aid IN (" + parameters(SqlStatement.ID_LIST_SIZE) + ")"),
+    CANCEL_CAREGIVER_APPOINTMENTS_BY_ID("DELETE FROM Appointments " +
+            "OUTPUT DELETED.aid, DELETED.Time, DELETED.pid, DELETED.cid, DELETED.vid " +
+            "WHERE cid = ? AND aid IN (" + parameters(SqlStatement.ID_LIST_SIZE) + ")"),
+    // appointments per caregiver, read once to seed CaregiverLoad (IX_Appointments_cid covers it)
+    COUNT_APPOINTMENTS_BY_CAREGIVER("SELECT cid, COUNT(*) AS Appointments FROM Appointments GROUP BY cid"),
+    // a page of a patient's or caregiver's appointments, keyset-paginated on aid (see V5__query_indexes.sql)
+    SELECT_PATIENT_APPOINTMENTS("SELECT TOP (?) A.aid, A.vid, A.Time, A.cid " +
+            "FROM Appointments A " +
+            "WHERE A.pid = ? AND A.aid > ? AND A.Time >= ? " +
+            "ORDER BY A.aid"),
+    SELECT_CAREGIVER_APPOINTMENTS("SELECT TOP (?) A.aid, A.vid, A.Time, A.pid " +
+            "FROM Appointments A " +
+            "WHERE A.cid = ? AND A.aid > ? AND A.Time >= ? " +
+            "ORDER BY A.aid"),
+
+    // schema migrations (see MigrationRunner); the lock keeps concurrent starts from racing
+    CREATE_SCHEMA_VERSION_TABLE("IF OBJECT_ID('SchemaVersion', 'U') IS NULL " +
+            "CREATE TABLE SchemaVersion (Version int PRIMARY KEY, Description varchar(255), " +
+            "Checksum varchar(64), AppliedAt datetime2)"),
+    SELECT_SCHEMA_VERSIONS("SELECT Version, Description, Checksum FROM SchemaVersion ORDER BY Version"),
+    INSERT_SCHEMA_VERSION("INSERT INTO SchemaVersion VALUES (?, ?, ?, ?)"),
+    LOCK_MIGRATIONS("DECLARE @result int; " +
+            "EXEC @result = sp_getapplock @Resource = 'scheduler-migrations', @LockMode = 'Exclusive', " +
+            "@LockOwner = 'Session', @LockTimeout = ?; " +
+            "SELECT @result"),
+    UNLOCK_MIGRATIONS("EXEC sp_releaseapplock @Resource = 'scheduler-migrations', @LockOwner = 'Session'");
+
+    // parameters of the IN lists above; a shorter list repeats its last id
+    public static final int ID_LIST_SIZE = 100;
+
+    private final String sql;
+
+    SqlStatement(String sql) {
+        this.sql = sql;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    private static String parameters(int n) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,95 @@
+package scheduler.store;
+
+import scheduler.db.JdbcAccountStore;
+import scheduler.db.JdbcAppointmentStore;
+import scheduler.db.JdbcAvailabilityStore;
+import scheduler.db.JdbcVaccineStore;
+import scheduler.db.MigrationRunner;
+import scheduler.util.Config;
+
+import java.io.IOException;
+import java.sql.SQLException;
+
+// The stores the application reads and writes through. scheduler.storage picks the backend:
+// "jdbc" (default) is the database behind ConnectionManager; "memory" keeps everything in
+// concurrent maps and skip lists in this process, for load tests and for running without a
+// database. Nothing in the memory backend survives a restart.
+// The jdbc backend first applies pending schema migrations (see MigrationRunner), unless
+// scheduler.migrations.enabled is false, e.g. for a database that is not SQL Server.
+public class Storage {
+    private static final Storage INSTANCE = fromConfig();
+
+    private final AccountStore accounts;
+    private final AvailabilityStore availabilities;
+    private final VaccineStore vaccines;
+    private final AppointmentStore appointments;
+    private final boolean durable;
+
+    public Storage(AccountStore accounts, AvailabilityStore availabilities, VaccineStore vaccines,
+                   AppointmentStore appointments, boolean durable) {
+        this.accounts = accounts;
+        this.availabilities = availabilities;
+        this.vaccines = vaccines;
+        this.appointments = appointments;
+        this.durable = durable;
+    }
+
+    public static Storage getInstance() {
+        return INSTANCE;
+    }
+
+    public static Storage jdbc() {
+        return new Storage(new JdbcAccountStore(), new JdbcAvailabilityStore(), new JdbcVaccineStore(),
+                new JdbcAppointmentStore(), true);
+    }
+
+    public static Storage memory() {
+        MemoryAvailabilityStore availabilities = new MemoryAvailabilityStore();
+        return new Storage(new MemoryAccountStore(), availabilities, new MemoryVaccineStore(),
+                new MemoryAppointmentStore(availabilities), false);
+    }
+
+    private static Storage fromConfig() {
+        String backend = Config.get("scheduler.storage", "jdbc");
+        switch (backend) {
+            case "jdbc":
+                if (Config.getBoolean("scheduler.migrations.enabled", true)) {
+                    migrate();
+                }
+                return jdbc();
+            case "memory":
+                return memory();
+            default:
+                throw new IllegalArgumentException("Unknown storage backend: " + backend);
+        }
+    }
+
+    private static void migrate() {
+        try {
+            MigrationRunner.fromConfig().migrate();
+        } catch (SQLException | IOException e) {
+            throw new IllegalStateException("Failed to migrate the database schema", e);
+        }
+    }
+
+    public AccountStore accounts() {
+        return accounts;
+    }
+
+    public AvailabilityStore availabilities() {
+        return availabilities;
+    }
+
+    public VaccineStore vaccines() {
+        return vaccines;
+    }
+
+    public AppointmentStore appointments() {
+        return appointments;
+    }
+
+    // whether the data outlives the process
+    public boolean isDurable() {
+        return durable;
+    }
+}
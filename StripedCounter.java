@@ -0,0 +1,142 @@
+package scheduler.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// A non-negative counter split over several cache-line-padded stripes so that concurrent
+// updates from different threads rarely touch the same memory. Every stripe stays >= 0, so
+// the total can never go below zero: a decrement only succeeds by taking from a stripe that
+// still has something left.
+// Taking more than 1 may have to collect from several stripes, and gives back what it collected
+// if there is not enough. While it holds that, a concurrent decrement could see the counter as
+// emptier than it is, so such takes run one at a time and announce themselves (borrowers,
+// borrows), and taking 1 only refuses after a scan that no such take overlapped; otherwise it
+// scans again. Taking 1 itself never holds anything, so it only reads those two.
+public class StripedCounter {
+    // longs per stripe: one 64-byte cache line
+    private static final int PAD = 8;
+
+    private final AtomicLongArray cells;
+    private final int stripes;
+    // takes of more than 1 in progress, and how many have ever started
+    private final AtomicInteger borrowers = new AtomicInteger();
+    private final AtomicLong borrows = new AtomicLong();
+    private final Object collectLock = new Object();
+
+    public StripedCounter(long initial) {
+        this(defaultStripes(), initial);
+    }
+
+    public StripedCounter(int stripes, long initial) {
+        if (Integer.bitCount(stripes) != 1) {
+            throw new IllegalArgumentException("Stripes must be a power of two");
+        }
+        if (initial < 0) {
+            throw new IllegalArgumentException("Counter cannot be negative!");
+        }
+        this.stripes = stripes;
+        this.cells = new AtomicLongArray(stripes * PAD);
+        // spread out, or every decrement would end up on the one stripe that has something
+        long share = initial / stripes;
+        long remainder = initial % stripes;
+        for (int i = 0; i < stripes; i++) {
+            cells.set(i * PAD, share + (i < remainder ? 1 : 0));
+        }
+    }
+
+    private static int defaultStripes() {
+        int n = Runtime.getRuntime().availableProcessors();
+        return Integer.highestOneBit(Math.max(1, n - 1)) << 1;
+    }
+
+    public void add(long delta) {
+        if (delta < 0) {
+            throw new IllegalArgumentException("Use tryDecrement to take from the counter");
+        }
+        cells.getAndAdd(home() * PAD, delta);
+    }
+
+    // takes n from the counter if at least n is available in total, all or nothing
+    public boolean tryDecrement(long n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("Amount must be positive!");
+        }
+        if (n > 1) {
+            return collect(n);
+        }
+        while (true) {
+            long started = borrows.get();
+            boolean alone = borrowers.get() == 0;
+            int start = home();
+            for (int i = 0; i < stripes; i++) {
+                int index = ((start + i) & (stripes - 1)) * PAD;
+                long value;
+                while ((value = cells.get(index)) > 0) {
+                    if (cells.compareAndSet(index, value, value - 1)) {
+                        return true;
+                    }
+                }
+            }
+            // nobody held anything while we looked, so the counter really is empty
+            if (alone && borrows.get() == started) {
+                return false;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    // takes n > 1, collecting from as many stripes as it takes; one at a time, so what a take
+    // holds is never missing from another's scan and it can decide in one pass
+    private boolean collect(long n) {
+        synchronized (collectLock) {
+            borrowers.incrementAndGet();
+            borrows.incrementAndGet();
+            try {
+                long taken = 0;
+                int start = home();
+                for (int i = 0; i < stripes && taken < n; i++) {
+                    int index = ((start + i) & (stripes - 1)) * PAD;
+                    while (taken < n) {
+                        long value = cells.get(index);
+                        if (value == 0) {
+                            break;
+                        }
+                        long take = Math.min(value, n - taken);
+                        if (cells.compareAndSet(index, value, value - take)) {
+                            taken += take;
+                        }
+                    }
+                }
+                if (taken < n) {
+                    // not enough in total: give back what we collected
+                    if (taken > 0) {
+                        cells.getAndAdd(start * PAD, taken);
+                    }
+                    return false;
+                }
+                return true;
+            } finally {
+                borrowers.decrementAndGet();
+            }
+        }
+    }
+
+    public boolean tryDecrement() {
+        return tryDecrement(1);
+    }
+
+    // sum of all stripes; exact when there are no concurrent updates
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < stripes; i++) {
+            sum += cells.get(i * PAD);
+        }
+        return sum;
+    }
+
+    private int home() {
+        return ThreadLocalRandom.current().nextInt(stripes);
+    }
+}
@@ -0,0 +1,126 @@
+package scheduler.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// ULID-style 128-bit ids: 48 bits of milliseconds since the epoch, a 16-bit node number, an 8-bit
+// stripe and a 56-bit sequence number, big-endian. Written as 26 Crockford base32 characters they
+// sort in creation order (to the millisecond), so new appointments are appended to the end of the
+// primary key index instead of scattered across it.
+// A thread draws its sequence numbers from the stripe its thread id maps to, so threads rarely
+// share a counter, and a stripe's sequence never repeats within the process. Together with the
+// node number that makes ids unique across scheduler nodes without any coordination.
+public class TimeOrderedIdGenerator implements IdGenerator {
+    public static final int BYTES = 16;
+    public static final int STRING_LENGTH = 26;
+
+    private static final int STRIPES = 256;
+    // longs per stripe: one 64-byte cache line
+    private static final int PAD = 8;
+    private static final long SEQUENCE_MASK = (1L << 56) - 1;
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+
+    private final int node;
+    private final AtomicLongArray sequences = new AtomicLongArray(STRIPES * PAD);
+
+    public TimeOrderedIdGenerator(int node) {
+        if (node < 0 || node > 0xFFFF) {
+            throw new IllegalArgumentException("Node number must fit in 16 bits");
+        }
+        this.node = node;
+    }
+
+    // scheduler.node.id as a number, or a 16-bit hash of it; give every node a distinct number
+    // (0-65535) to rule out collisions between nodes
+    public static int nodeFromConfig() {
+        String id = Config.get("scheduler.node.id", "default");
+        try {
+            return Integer.parseInt(id) & 0xFFFF;
+        } catch (NumberFormatException e) {
+            int h = id.hashCode();
+            return (h ^ (h >>> 16)) & 0xFFFF;
+        }
+    }
+
+    @Override
+    public String next() {
+        return encode(nextBytes());
+    }
+
+    public byte[] nextBytes() {
+        long millis = System.currentTimeMillis();
+        int stripe = stripe();
+        long sequence = sequences.getAndIncrement(stripe * PAD) & SEQUENCE_MASK;
+        long high = (millis << 16) | node;
+        long low = ((long) stripe << 56) | sequence;
+        byte[] id = new byte[BYTES];
+        for (int i = 0; i < 8; i++) {
+            id[i] = (byte) (high >>> (56 - 8 * i));
+            id[8 + i] = (byte) (low >>> (56 - 8 * i));
+        }
+        return id;
+    }
+
+    private static int stripe() {
+        long id = Thread.currentThread().threadId();
+        id *= 0x9E3779B97F4A7C15L;
+        return (int) (id >>> 56);
+    }
+
+    // 128 bits as 26 base32 characters; the first character carries only 3 bits
+    public static String encode(byte[] id) {
+        if (id.length != BYTES) {
+            throw new IllegalArgumentException("Id must be " + BYTES + " bytes");
+        }
+        char[] out = new char[STRING_LENGTH];
+        for (int i = 0; i < STRING_LENGTH; i++) {
+            int value = 0;
+            for (int j = 0; j < 5; j++) {
+                // 130 bits of characters for 128 bits of id: the first two are padding
+                int b = i * 5 + j - 2;
+                value = (value << 1) | (b < 0 ? 0 : (id[b >>> 3] >>> (7 - (b & 7))) & 1);
+            }
+            out[i] = ALPHABET[value];
+        }
+        return new String(out);
+    }
+
+    public static byte[] decode(String text) {
+        if (text.length() != STRING_LENGTH) {
+            throw new IllegalArgumentException("Id must be " + STRING_LENGTH + " characters");
+        }
+        byte[] id = new byte[BYTES];
+        for (int i = 0; i < STRING_LENGTH; i++) {
+            int value = indexOf(Character.toUpperCase(text.charAt(i)));
+            for (int j = 0; j < 5; j++) {
+                int b = i * 5 + j - 2;
+                int v = (value >>> (4 - j)) & 1;
+                if (b < 0) {
+                    if (v != 0) {
+                        throw new IllegalArgumentException("Id out of range: " + text);
+                    }
+                } else if (v != 0) {
+                    id[b >>> 3] |= (byte) (1 << (7 - (b & 7)));
+                }
+            }
+        }
+        return id;
+    }
+
+    // milliseconds since the epoch at which the id was generated
+    public static long timestamp(byte[] id) {
+        long millis = 0;
+        for (int i = 0; i < 6; i++) {
+            millis = (millis << 8) | (id[i] & 0xff);
+        }
+        return millis;
+    }
+
+    private static int indexOf(char c) {
+        for (int i = 0; i < ALPHABET.length; i++) {
+            if (ALPHABET[i] == c) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Not a base32 character: " + c);
+    }
+}
@@ -0,0 +1,171 @@
+package scheduler.service;
+
+import scheduler.store.AccountStore;
+import scheduler.store.Storage;
+import scheduler.util.BloomFilter;
+import scheduler.util.Config;
+
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// A Bloom filter of the usernames of each account table, so that checking a new username
+// (which nearly always is free) usually needs no query: only possible hits go to the table.
+// Each filter is built with one streaming scan on first use and sized for twice the rows found
+// (at least scheduler.usernames.expected) at scheduler.usernames.falsePositiveRate; every insert
+// adds to it. Usernames are lower-cased first, since the database compares them case-insensitively.
+// A username inserted by another process may be missed, in which case the insert itself fails on
+// the primary key, so uniqueness never depends on the filter.
+public class UsernameFilter {
+    private static final UsernameFilter INSTANCE = new UsernameFilter(
+            Config.getLong("scheduler.usernames.expected", 100_000),
+            Config.getDouble("scheduler.usernames.falsePositiveRate", 0.01));
+
+    private final long minExpected;
+    private final double falsePositiveRate;
+    private final Map<AccountService.Role, Filter> filters = new EnumMap<>(AccountService.Role.class);
+
+    public UsernameFilter(long minExpected, double falsePositiveRate) {
+        this.minExpected = minExpected;
+        this.falsePositiveRate = falsePositiveRate;
+        for (AccountService.Role role : AccountService.Role.values()) {
+            filters.put(role, new Filter());
+        }
+    }
+
+    public static UsernameFilter getInstance() {
+        return INSTANCE;
+    }
+
+    // false means the username is certainly not taken; true means ask the table
+    public boolean mightExist(AccountService.Role role, String username) throws SQLException {
+        Filter filter = filters.get(role);
+        if (filter.bloom(role).mightContain(normalize(username))) {
+            filter.possibleHits.increment();
+            return true;
+        }
+        filter.skipped.increment();
+        return false;
+    }
+
+    // the table said no after the filter said maybe
+    public void recordFalsePositive(AccountService.Role role) {
+        filters.get(role).falsePositives.increment();
+    }
+
+    // call after inserting a username
+    public void add(AccountService.Role role, String username) throws SQLException {
+        Filter filter = filters.get(role);
+        filter.bloom(role).add(normalize(username));
+        filter.added.increment();
+    }
+
+    private static String normalize(String username) {
+        return username.toLowerCase(Locale.ROOT);
+    }
+
+    private BloomFilter build(AccountService.Role role) throws SQLException {
+        AccountStore accounts = Storage.getInstance().accounts();
+        BloomFilter bloom = new BloomFilter(Math.max(minExpected, accounts.count(role) * 2), falsePositiveRate);
+        accounts.forEachUsername(role, username -> bloom.add(normalize(username)));
+        return bloom;
+    }
+
+    public Stats getStats(AccountService.Role role) {
+        Filter filter = filters.get(role);
+        BloomFilter bloom = filter.bloom;
+        return new Stats(role, bloom == null ? 0 : bloom.getBits(), bloom == null ? 0 : bloom.getHashes(),
+                bloom == null ? 0 : bloom.getFillRatio(), filter.added.sum(), filter.skipped.sum(),
+                filter.possibleHits.sum(), filter.falsePositives.sum());
+    }
+
+    private class Filter {
+        private volatile BloomFilter bloom = null;
+        private final LongAdder added = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final LongAdder possibleHits = new LongAdder();
+        private final LongAdder falsePositives = new LongAdder();
+
+        private BloomFilter bloom(AccountService.Role role) throws SQLException {
+            BloomFilter b = bloom;
+            if (b == null) {
+                synchronized (this) {
+                    b = bloom;
+                    if (b == null) {
+                        b = build(role);
+                        bloom = b;
+                    }
+                }
+            }
+            return b;
+        }
+    }
+
+    public static class Stats {
+        private final AccountService.Role role;
+        private final long bits;
+        private final int hashes;
+        private final double fillRatio;
+        private final long added;
+        private final long skipped;
+        private final long possibleHits;
+        private final long falsePositives;
+
+        private Stats(AccountService.Role role, long bits, int hashes, double fillRatio, long added, long skipped,
+                      long possibleHits, long falsePositives) {
+            this.role = role;
+            this.bits = bits;
+            this.hashes = hashes;
+            this.fillRatio = fillRatio;
+            this.added = added;
+            this.skipped = skipped;
+            this.possibleHits = possibleHits;
+            this.falsePositives = falsePositives;
+        }
+
+        public long getBits() {
+            return bits;
+        }
+
+        public int getHashes() {
+            return hashes;
+        }
+
+        public double getFillRatio() {
+            return fillRatio;
+        }
+
+        public long getAdded() {
+            return added;
+        }
+
+        // checks answered without a query
+        public long getSkipped() {
+            return skipped;
+        }
+
+        public long getPossibleHits() {
+            return possibleHits;
+        }
+
+        public long getFalsePositives() {
+            return falsePositives;
+        }
+
+        @Override
+        public String toString() {
+            return "Usernames{" +
+                    "role=" + role +
+                    ", bits=" + bits +
+                    ", hashes=" + hashes +
+                    ", fillRatio=" + String.format("%.4f", fillRatio) +
+                    ", added=" + added +
+                    ", skipped=" + skipped +
+                    ", possibleHits=" + possibleHits +
+                    ", falsePositives=" + falsePositives +
+                    '}';
+        }
+    }
+}
@@ -1,19 +1,10 @@
 package scheduler.util;
 
-import javax.crypto.SecretKeyFactory;
-import javax.crypto.spec.PBEKeySpec;
-import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
-import java.security.spec.InvalidKeySpecException;
-import java.security.spec.KeySpec;
 import java.util.Arrays;
-import java.util.UUID;
 
 public class Util {
-
-    // constants for handling password
-    private static final int HASH_STRENGTH = 10;
-    private static final int KEY_LENGTH = 16;
+    private static final IdGenerator ID_GENERATOR = IdGenerator.fromConfig();
 
     public static byte[] generateSalt() {
         // Generate a random cryptographic salt
@@ -23,20 +14,9 @@ public class Util {
         return salt;
     }
 
+    // hash with the current algorithm and work factor, computed on the hasher's worker pool
     public static byte[] generateHash(String password, byte[] salt) {
-        // Specify the hash parameters
-        KeySpec spec = new PBEKeySpec(password.toCharArray(), salt, HASH_STRENGTH, KEY_LENGTH);
-
-        // Generate the hash
-        SecretKeyFactory factory = null;
-        byte[] hash = null;
-        try {
-            factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
-            hash = factory.generateSecret(spec).getEncoded();
-        } catch (NoSuchAlgorithmException | InvalidKeySpecException ex) {
-            throw new IllegalStateException();
-        }
-        return hash;
+        return PasswordHasher.getInstance().hash(password, salt);
     }
 
     public static byte[] trim(byte[] bytes)
@@ -50,7 +30,8 @@ public class Util {
         return Arrays.copyOf(bytes, i + 1);
     }
 
-    public static String generateUUID() {
-        return UUID.randomUUID().toString();
+    // a new appointment id, time-ordered by default (see IdGenerator)
+    public static String generateId() {
+        return ID_GENERATOR.next();
     }
 }
@@ -0,0 +1,22 @@
+package scheduler.store;
+
+import java.sql.SQLException;
+import java.util.Map;
+
+// Vaccines and the write-behind checkpoints of the in-memory inventory (see InventoryService).
+public interface VaccineStore {
+
+    // null if there is no such vaccine
+    Integer find(String vaccineName) throws SQLException;
+
+    Map<String, Integer> findAll() throws SQLException;
+
+    // fails (SQLIntegrityConstraintViolationException) if the vaccine exists
+    void insert(String vaccineName, int doses) throws SQLException;
+
+    // the last journal sequence number applied for the node, 0 (and recorded) for a new node
+    long checkpoint(String nodeId) throws SQLException;
+
+    // adds the deltas to the doses and moves the node's checkpoint to seq, atomically
+    void applyDeltas(Map<String, Long> deltas, String nodeId, long seq) throws SQLException;
+}
@@ -0,0 +1,504 @@
+package scheduler.bench;
+
+import scheduler.Scheduler;
+import scheduler.Session;
+import scheduler.db.ConnectionManager;
+import scheduler.service.AccountService;
+import scheduler.service.AvailabilityIndex;
+import scheduler.service.InventoryService;
+import scheduler.service.ReservationCoordinator;
+import scheduler.service.ReservationEngine;
+import scheduler.store.Storage;
+import scheduler.util.Config;
+import scheduler.util.JsonWriter;
+import scheduler.util.LatencyHistogram;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Replays synthetic patient traffic against the command layer (Scheduler.execute), on a data set
+// seeded by DataGenerator. scheduler.workload.users virtual users each keep a session and pick
+// their next command from scheduler.workload.mix: sign up, log in, search, reserve or cancel one
+// of their own appointments. Dates are drawn with scheduler.workload.dayWeights (Monday first),
+// so the popular days run out first. With scheduler.workload.rate > 0 commands arrive as a
+// Poisson process at that many per second in total and latency counts from when a command should
+// have started; otherwise every user runs flat out.
+// Afterwards the doses and slots are counted again: available plus booked must not have changed,
+// no slot may be booked twice or booked and still available, and the flushed inventory must
+// match the in-memory one. Results go to scheduler.workload.output; the exit status is 1 if the
+// check failed.
+// Usage: WorkloadGenerator
+public class WorkloadGenerator {
+
+    enum Action {
+        SIGNUP, LOGIN, SEARCH, RESERVE, CANCEL
+    }
+
+    private final DataGenerator data;
+    private final int users;
+    private final int seconds;
+    private final double rate;
+    private final double[] mix;
+    private final double[] dateWeights;
+    private final long seed;
+    // keeps the usernames of repeated runs apart
+    private final String runId = Long.toString(System.currentTimeMillis(), 36);
+
+    private final Map<Action, Counters> counters = new EnumMap<>(Action.class);
+    private final LongAdder reserved = new LongAdder();
+    private final LongAdder noSlot = new LongAdder();
+    private final LongAdder noDoses = new LongAdder();
+    private final LongAdder cancelSkipped = new LongAdder();
+
+    public WorkloadGenerator(DataGenerator data, int users, int seconds, double rate, double[] mix,
+                             double[] dayWeights, long seed) {
+        if (users <= 0 || seconds <= 0 || rate < 0) {
+            throw new IllegalArgumentException("Workload settings must be positive!");
+        }
+        this.data = data;
+        this.users = users;
+        this.seconds = seconds;
+        this.rate = rate;
+        this.mix = cumulative(mix);
+        this.seed = seed;
+        double[] weights = new double[data.getDates()];
+        for (int d = 0; d < weights.length; d++) {
+            weights[d] = dayWeights[data.date(d).getDayOfWeek().getValue() - 1];
+        }
+        this.dateWeights = cumulative(weights);
+        for (Action action : Action.values()) {
+            counters.put(action, new Counters());
+        }
+    }
+
+    public static WorkloadGenerator fromConfig(DataGenerator data) {
+        double[] mix = new double[Action.values().length];
+        for (String part : Config.get("scheduler.workload.mix", "signup=2,login=8,search=40,reserve=40,cancel=10")
+                .split(",")) {
+            String[] kv = part.split("=");
+            mix[Action.valueOf(kv[0].trim().toUpperCase(Locale.ROOT)).ordinal()] = Double.parseDouble(kv[1].trim());
+        }
+        String[] days = Config.get("scheduler.workload.dayWeights", "4,1,1,1,1,0.5,0.5").split(",");
+        if (days.length != 7) {
+            throw new IllegalArgumentException("scheduler.workload.dayWeights needs 7 weights, Monday first");
+        }
+        double[] dayWeights = new double[7];
+        for (int i = 0; i < 7; i++) {
+            dayWeights[i] = Double.parseDouble(days[i].trim());
+        }
+        return new WorkloadGenerator(data,
+                Config.getInt("scheduler.workload.users", 16),
+                Config.getInt("scheduler.workload.seconds", 30),
+                Config.getDouble("scheduler.workload.rate", 0),
+                mix, dayWeights,
+                Config.getLong("scheduler.workload.seed", 42));
+    }
+
+    public static void main(String[] args) {
+        Path output = Paths.get(Config.get("scheduler.workload.output", "workload-results.json"));
+        DataGenerator data = DataGenerator.fromConfig();
+        boolean passed = false;
+        try {
+            WorkloadGenerator workload = WorkloadGenerator.fromConfig(data);
+            if (data.seed()) {
+                System.out.println("Seeded data set");
+            }
+            Ledger before = workload.ledger();
+            ReservationEngine.Stats engineBefore = ReservationEngine.getInstance().getStats();
+            double elapsed = workload.run();
+            ReservationEngine.Stats engineAfter = ReservationEngine.getInstance().getStats();
+            Ledger after = workload.ledger();
+            List<String> violations = workload.check(before, after);
+            workload.print(elapsed, engineBefore, engineAfter, violations);
+            workload.write(output, elapsed, engineBefore, engineAfter, violations);
+            System.out.println("Results written to " + output);
+            passed = violations.isEmpty();
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            InventoryService.getInstance().shutdown();
+            ConnectionManager.shutdown();
+        }
+        if (!passed) {
+            System.exit(1);
+        }
+    }
+
+    // runs the virtual users for the configured time; returns the seconds it took
+    public double run() throws InterruptedException {
+        VirtualUser[] virtualUsers = new VirtualUser[users];
+        CountDownLatch start = new CountDownLatch(1);
+        long duration = seconds * 1_000_000_000L;
+        for (int u = 0; u < users; u++) {
+            virtualUsers[u] = new VirtualUser(u, start, duration);
+            virtualUsers[u].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (VirtualUser user : virtualUsers) {
+            user.join();
+        }
+        return (System.nanoTime() - begin) / 1e9;
+    }
+
+    // doses and slots of the data set as they are now; nothing may be running
+    private Ledger ledger() throws SQLException, IOException {
+        Ledger ledger = new Ledger();
+        InventoryService inventory = InventoryService.getInstance();
+        for (int v = 0; v < data.getVaccines(); v++) {
+            Integer available = inventory.getAvailable(data.vaccine(v));
+            if (available == null || available < 0) {
+                ledger.violations.add("Vaccine " + data.vaccine(v) + " has " + available + " doses");
+            }
+            ledger.doses.put(data.vaccine(v), available == null ? 0L : available);
+        }
+        LocalDate first = data.date(0);
+        LocalDate last = data.date(data.getDates() - 1);
+        for (int c = 0; c < data.getCaregivers(); c++) {
+            String caregiver = data.caregiver(c);
+            Set<LocalDate> free = Storage.getInstance().availabilities().dates(caregiver, first, last);
+            Set<LocalDate> booked = new HashSet<>();
+            Storage.getInstance().appointments().forEach(AccountService.Role.CAREGIVER, caregiver, appointment -> {
+                LocalDate date = appointment.getDate();
+                if (date.isBefore(first) || date.isAfter(last)) {
+                    return;
+                }
+                if (!booked.add(date)) {
+                    ledger.violations.add(caregiver + " is booked twice on " + date);
+                }
+                if (free.contains(date)) {
+                    ledger.violations.add(caregiver + " is booked and still available on " + date);
+                }
+                ledger.doses.computeIfPresent(appointment.getVaccineName(), (name, doses) -> doses + 1);
+            });
+            ledger.slots += free.size() + booked.size();
+        }
+        return ledger;
+    }
+
+    // Every dose and slot is either still available or booked, so the sums must be what they were
+    // before the run. Assumes nobody else books the data set's vaccines or its caregivers' dates.
+    private List<String> check(Ledger before, Ledger after) throws SQLException {
+        List<String> violations = new ArrayList<>(before.violations);
+        violations.addAll(after.violations);
+        if (before.slots != after.slots) {
+            violations.add("Slots available plus booked went from " + before.slots + " to " + after.slots);
+        }
+        for (Map.Entry<String, Long> entry : before.doses.entrySet()) {
+            long now = after.doses.get(entry.getKey());
+            if (now != entry.getValue()) {
+                violations.add("Doses of " + entry.getKey() + " available plus booked went from "
+                        + entry.getValue() + " to " + now);
+            }
+        }
+        InventoryService inventory = InventoryService.getInstance();
+        inventory.flush();
+        for (String vaccine : before.doses.keySet()) {
+            Integer stored = Storage.getInstance().vaccines().find(vaccine);
+            Integer available = inventory.getAvailable(vaccine);
+            if (stored == null || !stored.equals(available)) {
+                violations.add("Vaccine " + vaccine + " has " + available + " doses in memory but " + stored
+                        + " in storage after a flush");
+            }
+        }
+        AvailabilityIndex.Reconciliation reconciliation = AvailabilityIndex.getInstance().reconcile();
+        if (!reconciliation.isConsistent()) {
+            violations.add("Availability index had drifted from storage: " + reconciliation);
+        }
+        return violations;
+    }
+
+    private void print(double elapsed, ReservationEngine.Stats engineBefore, ReservationEngine.Stats engineAfter,
+                       List<String> violations) {
+        long total = 0;
+        for (Map.Entry<Action, Counters> entry : counters.entrySet()) {
+            LatencyHistogram.Snapshot latency = entry.getValue().latency.snapshot();
+            total += latency.getCount();
+            System.out.printf("%-8s %10d ops %10.1f ops/s  failed=%-8d p50=%.3f ms  p99=%.3f ms  p99.9=%.3f ms"
+                            + "  max=%.3f ms%n",
+                    entry.getKey().name().toLowerCase(Locale.ROOT), latency.getCount(), latency.getCount() / elapsed,
+                    entry.getValue().failures.sum(), latency.percentileNanos(0.5) / 1e6,
+                    latency.percentileNanos(0.99) / 1e6, latency.percentileNanos(0.999) / 1e6,
+                    latency.getMaxNanos() / 1e6);
+        }
+        long attempts = engineAfter.getAttempts() - engineBefore.getAttempts();
+        long conflicts = engineAfter.getConflicts() - engineBefore.getConflicts();
+        long slotsLost = engineAfter.getSlotsLost() - engineBefore.getSlotsLost();
+        System.out.printf("total    %10d ops %10.1f ops/s in %.1f s%n", total, total / elapsed, elapsed);
+        System.out.printf("reservations (%s): reserved=%d, noSlot=%d, noDoses=%d, successRate=%.4f, conflictRate=%.4f, "
+                        + "slotsLost=%d, cancelsWithoutAppointment=%d%n",
+                ReservationEngine.getInstance().getStrategy().getName(), reserved.sum(), noSlot.sum(), noDoses.sum(),
+                successRate(), attempts == 0 ? 0.0 : (double) conflicts / attempts, slotsLost, cancelSkipped.sum());
+        System.out.println(ReservationCoordinator.getInstance().getStats());
+        if (violations.isEmpty()) {
+            System.out.println("Invariant check passed: no dose or slot oversold.");
+        } else {
+            System.out.println("Invariant check FAILED:");
+            for (String violation : violations) {
+                System.out.println("  " + violation);
+            }
+        }
+    }
+
+    private void write(Path output, double elapsed, ReservationEngine.Stats engineBefore,
+                       ReservationEngine.Stats engineAfter, List<String> violations) throws IOException {
+        try (BufferedWriter file = Files.newBufferedWriter(output, StandardCharsets.UTF_8);
+             JsonWriter json = new JsonWriter(file)) {
+            json.beginObject();
+            json.field("timestamp", Instant.now().toString());
+            json.field("java", System.getProperty("java.version"));
+            json.field("users", users);
+            json.field("seconds", elapsed);
+            json.field("rate", rate);
+            json.field("patients", data.getPatients());
+            json.field("caregivers", data.getCaregivers());
+            json.field("dates", data.getDates());
+            json.field("vaccines", data.getVaccines());
+            json.name("actions").beginObject();
+            for (Map.Entry<Action, Counters> entry : counters.entrySet()) {
+                LatencyHistogram.Snapshot latency = entry.getValue().latency.snapshot();
+                json.name(entry.getKey().name().toLowerCase(Locale.ROOT)).beginObject();
+                json.field("ops", latency.getCount());
+                json.field("failures", entry.getValue().failures.sum());
+                json.field("opsPerSecond", latency.getCount() / elapsed);
+                json.field("meanNanos", latency.getMeanNanos());
+                json.field("p50Nanos", latency.percentileNanos(0.5));
+                json.field("p99Nanos", latency.percentileNanos(0.99));
+                json.field("p999Nanos", latency.percentileNanos(0.999));
+                json.field("maxNanos", latency.getMaxNanos());
+                json.endObject();
+            }
+            json.endObject();
+            json.name("reservations").beginObject();
+            json.field("strategy", ReservationEngine.getInstance().getStrategy().getName());
+            json.field("reserved", reserved.sum());
+            json.field("noSlot", noSlot.sum());
+            json.field("noDoses", noDoses.sum());
+            json.field("successRate", successRate());
+            json.field("attempts", engineAfter.getAttempts() - engineBefore.getAttempts());
+            json.field("conflicts", engineAfter.getConflicts() - engineBefore.getConflicts());
+            json.field("slotsLost", engineAfter.getSlotsLost() - engineBefore.getSlotsLost());
+            json.field("cancelsWithoutAppointment", cancelSkipped.sum());
+            json.endObject();
+            ReservationCoordinator.Stats coalescing = ReservationCoordinator.getInstance().getStats();
+            json.name("coalescing").beginObject();
+            json.field("batches", coalescing.getBatches());
+            json.field("fullBatches", coalescing.getFullBatches());
+            json.field("meanBatch", coalescing.getMeanBatch());
+            json.field("largestBatch", coalescing.getLargestBatch());
+            json.field("completedPerSecond", coalescing.getCompletedPerSecond());
+            json.field("queueingP50Nanos", coalescing.getQueueing().percentileNanos(0.5));
+            json.field("queueingP99Nanos", coalescing.getQueueing().percentileNanos(0.99));
+            json.endObject();
+            json.name("violations").beginArray();
+            for (String violation : violations) {
+                json.value(violation);
+            }
+            json.endArray();
+            json.endObject();
+        }
+    }
+
+    private double successRate() {
+        long requests = counters.get(Action.RESERVE).latency.getCount();
+        return requests == 0 ? 0.0 : (double) reserved.sum() / requests;
+    }
+
+    private static double[] cumulative(double[] weights) {
+        double[] sums = new double[weights.length];
+        double sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] < 0) {
+                throw new IllegalArgumentException("Weights must not be negative!");
+            }
+            sum += weights[i];
+            sums[i] = sum;
+        }
+        if (sum <= 0) {
+            throw new IllegalArgumentException("At least one weight must be positive!");
+        }
+        return sums;
+    }
+
+    private static int pick(double[] cumulative, SplittableRandom random) {
+        double r = random.nextDouble() * cumulative[cumulative.length - 1];
+        for (int i = 0; i < cumulative.length; i++) {
+            if (r < cumulative[i]) {
+                return i;
+            }
+        }
+        return cumulative.length - 1;
+    }
+
+    private static class Counters {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder failures = new LongAdder();
+    }
+
+    private static class Ledger {
+        // per vaccine of the data set: doses available plus doses booked, whatever case the booking used
+        private final Map<String, Long> doses = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        // slots of the data set's caregivers and dates, available plus booked
+        private long slots = 0;
+        private final List<String> violations = new ArrayList<>();
+    }
+
+    private class VirtualUser extends Thread {
+        private final int index;
+        private final CountDownLatch start;
+        private final long duration;
+        private final SplittableRandom random;
+        private final StringWriter output = new StringWriter();
+        private final Session session = new Session(new PrintWriter(output, true));
+        // accounts this user signed up, logged in with as well as the generated ones
+        private final List<String> signedUp = new ArrayList<>();
+        // appointments of the patient currently logged in, booked by this user
+        private final List<String> appointments = new ArrayList<>();
+
+        private VirtualUser(int index, CountDownLatch start, long duration) {
+            super("virtual-user-" + index);
+            this.index = index;
+            this.start = start;
+            this.duration = duration;
+            this.random = new SplittableRandom(seed + index);
+        }
+
+        @Override
+        public void run() {
+            try {
+                start.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            long deadline = System.nanoTime() + duration;
+            long next = System.nanoTime();
+            perform(Action.LOGIN, next);
+            while (true) {
+                long begin;
+                if (rate > 0) {
+                    // exponential gaps between arrivals; a late user does not skip commands
+                    next += (long) (-Math.log(1 - random.nextDouble()) * users / rate * 1e9);
+                    if (next >= deadline) {
+                        break;
+                    }
+                    long wait = next - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    begin = next;
+                } else {
+                    begin = System.nanoTime();
+                    if (begin >= deadline) {
+                        break;
+                    }
+                }
+                perform(Action.values()[pick(mix, random)], begin);
+            }
+            if (session.isLoggedIn()) {
+                execute("logout");
+            }
+        }
+
+        private void perform(Action action, long begin) {
+            long failures = session.getFailures();
+            try {
+                switch (action) {
+                    case SIGNUP:
+                        signUp();
+                        break;
+                    case LOGIN:
+                        logIn();
+                        break;
+                    case SEARCH:
+                        execute("search_caregiver_schedule " + date());
+                        break;
+                    case RESERVE:
+                        reserve();
+                        break;
+                    case CANCEL:
+                        if (appointments.isEmpty()) {
+                            cancelSkipped.increment();
+                            return;
+                        }
+                        execute("cancel " + appointments.remove(random.nextInt(appointments.size())));
+                        break;
+                }
+            } catch (RuntimeException e) {
+                // counted as a failure like any other
+                session.fail(e.toString());
+            }
+            Counters c = counters.get(action);
+            c.latency.record(System.nanoTime() - begin);
+            if (session.getFailures() != failures) {
+                c.failures.increment();
+            }
+        }
+
+        private void signUp() {
+            String username = data.getPrefix() + "_w" + runId + "_" + index + "_" + signedUp.size();
+            if (execute("create_patient " + username + " " + DataGenerator.PASSWORD).startsWith("Created user")) {
+                signedUp.add(username);
+            }
+        }
+
+        private void logIn() {
+            if (session.isLoggedIn()) {
+                execute("logout");
+            }
+            String username = !signedUp.isEmpty() && random.nextInt(4) == 0
+                    ? signedUp.get(random.nextInt(signedUp.size()))
+                    : data.patient(random.nextInt(data.getPatients()));
+            appointments.clear();
+            execute("login_patient " + username + " " + DataGenerator.PASSWORD);
+        }
+
+        private void reserve() {
+            String vaccine = data.vaccine(random.nextInt(data.getVaccines()));
+            // some in upper case: the inventory must still count them against the one stock
+            if (random.nextInt(4) == 0) {
+                vaccine = vaccine.toUpperCase(Locale.ROOT);
+            }
+            String result = execute("reserve " + date() + " " + vaccine);
+            if (result.startsWith("Appointment ID: ")) {
+                reserved.increment();
+                appointments.add(result.substring("Appointment ID: ".length(), result.indexOf(',')));
+            } else if (result.startsWith("no caregiver available")) {
+                noSlot.increment();
+            } else if (result.startsWith("Not enough available doses!")) {
+                noDoses.increment();
+            }
+        }
+
+        private LocalDate date() {
+            return data.date(pick(dateWeights, random));
+        }
+
+        // runs a command and returns what it printed
+        private String execute(String command) {
+            output.getBuffer().setLength(0);
+            Scheduler.execute(session, command);
+            return output.toString();
+        }
+    }
+}
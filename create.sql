@@ -1,13 +1,19 @@
+-- The current schema, for reference. Databases are created and upgraded by the scripts in
+-- migrations/, which the application applies at startup (see MigrationRunner).
 CREATE TABLE Patients(
     Username VARCHAR(255) PRIMARY KEY,
     Salt BINARY(16),
-    Hash BINARY(16)
+    Hash BINARY(16),
+    HashAlgo varchar(32),
+    Iterations int
 )
 
 CREATE TABLE Caregivers (
     Username varchar(255),
     Salt BINARY(16),
     Hash BINARY(16),
+    HashAlgo varchar(32),
+    Iterations int,
     PRIMARY KEY (Username)
 );
 
@@ -28,6 +34,16 @@ CREATE TABLE Appointments(
     Time date,
     pid VARCHAR(255) REFERENCES Patients(Username),
     cid VARCHAR(255) REFERENCES Caregivers(Username),
-    vid VARCHAR(255) REFERENCES Vaccine(Name)
-    
+    vid VARCHAR(255) REFERENCES Vaccines(Name)
 )
+
+CREATE INDEX IX_Appointments_pid ON Appointments (pid, aid) INCLUDE (Time, cid, vid);
+CREATE INDEX IX_Appointments_cid ON Appointments (cid, aid) INCLUDE (Time, pid, vid);
+
+CREATE TABLE InventoryCheckpoints (
+    Node varchar(255),
+    Seq bigint,
+    PRIMARY KEY (Node)
+);
+
+CREATE INDEX IX_Availabilities_Username ON Availabilities (Username, Time);
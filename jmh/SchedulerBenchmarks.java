@@ -0,0 +1,172 @@
+package scheduler.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+import scheduler.Scheduler;
+import scheduler.Session;
+import scheduler.db.ConnectionManager;
+import scheduler.model.Caregiver;
+import scheduler.model.Patient;
+import scheduler.model.Vaccine;
+import scheduler.service.AppointmentService;
+import scheduler.service.InventoryService;
+import scheduler.service.Reservation;
+import scheduler.service.ReservationEngine;
+import scheduler.util.Util;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+// The hot paths of the scheduler against a data set seeded by DataGenerator: password hashing,
+// patient and caregiver login, taking doses, search and reserve. Every path runs on one thread
+// (SingleThreaded) and on four (MultiThreaded; JMH's -t overrides the count). The forks use the
+// in-memory storage backend unless -jvmArgsAppend says otherwise (-Dscheduler.storage=jdbc and
+// scheduler.db.url for a database), and the data set is sized with the scheduler.bench.* keys.
+// Run with gradle :jmh:jmh, which writes the results to jmh/build/jmh-results.json.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsPrepend = {"-Dscheduler.storage=memory"})
+public abstract class SchedulerBenchmarks {
+    private static final byte[] SALT = Util.generateSalt();
+
+    @State(Scope.Benchmark)
+    public static class Data {
+        DataGenerator data;
+
+        @Setup(Level.Trial)
+        public void seed() throws SQLException {
+            data = DataGenerator.fromConfig();
+            data.seed();
+        }
+
+        @TearDown(Level.Trial)
+        public void shutdown() {
+            InventoryService.getInstance().shutdown();
+            ConnectionManager.shutdown();
+        }
+    }
+
+    // threads interleave over the data set instead of all hitting the same rows
+    @State(Scope.Thread)
+    public static class Cursor {
+        int thread;
+        int threads;
+        long next;
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams params) {
+            thread = params.getThreadIndex();
+            threads = params.getThreadCount();
+            next = thread;
+        }
+
+        long next() {
+            long i = next;
+            next += threads;
+            return i;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class PatientSession {
+        Session session;
+
+        @Setup(Level.Trial)
+        public void logIn(Data data) throws SQLException {
+            session = new Session(new PrintWriter(Writer.nullWriter()));
+            session.setCurrentPatient(new Patient.PatientGetter(data.data.patient(0), DataGenerator.PASSWORD).get());
+        }
+    }
+
+    // reservations that found no slot or dose, next to the reserved ones in the results
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Reservations {
+        public long reserved;
+        public long missed;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            reserved = 0;
+            missed = 0;
+        }
+    }
+
+    @Benchmark
+    public byte[] generateHash() {
+        return Util.generateHash(DataGenerator.PASSWORD, SALT);
+    }
+
+    @Benchmark
+    public Patient patientLogin(Data data, Cursor cursor) throws SQLException {
+        DataGenerator d = data.data;
+        return new Patient.PatientGetter(d.patient((int) (cursor.next() % d.getPatients())), DataGenerator.PASSWORD)
+                .get();
+    }
+
+    @Benchmark
+    public Caregiver caregiverLogin(Data data, Cursor cursor) throws SQLException {
+        DataGenerator d = data.data;
+        return new Caregiver.CaregiverGetter(d.caregiver((int) (cursor.next() % d.getCaregivers())),
+                DataGenerator.PASSWORD).get();
+    }
+
+    @Benchmark
+    public void decreaseDoses(Data data, Cursor cursor) throws SQLException {
+        Vaccine vaccine = new Vaccine.VaccineGetter(data.data.vaccine(cursor.thread % data.data.getVaccines())).get();
+        vaccine.decreaseAvailableDoses(1);
+    }
+
+    @Benchmark
+    public void search(Data data, Cursor cursor, PatientSession patient, Blackhole blackhole) {
+        Session session = patient.session;
+        long failures = session.getFailures();
+        Scheduler.execute(session, "search_caregiver_schedule " + data.data.date((int) (cursor.next() % data.data.getDates())));
+        blackhole.consume(session.getFailures() == failures);
+    }
+
+    // A booked appointment is canceled right away (and timed with it): the data set has only
+    // caregivers * dates slots, and without giving them back every run would soon measure nothing
+    // but reservations that find no slot.
+    @Benchmark
+    public Reservation reserve(Data data, Cursor cursor, Reservations reservations) throws SQLException {
+        DataGenerator d = data.data;
+        long i = cursor.next();
+        Reservation reservation = ReservationEngine.getInstance().reserve(d.patient((int) (i % d.getPatients())),
+                Date.valueOf(d.date((int) (i % d.getDates()))), d.vaccine((int) (i % d.getVaccines())));
+        if (reservation.isReserved()) {
+            reservations.reserved++;
+            AppointmentService.cancel(reservation.getAppointmentId(), null, reservation.getCaregiverUsername());
+        } else {
+            reservations.missed++;
+        }
+        return reservation;
+    }
+
+    @Threads(1)
+    public static class SingleThreaded extends SchedulerBenchmarks {
+    }
+
+    @Threads(4)
+    public static class MultiThreaded extends SchedulerBenchmarks {
+    }
+}
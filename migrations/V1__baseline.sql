@@ -0,0 +1,40 @@
+-- The original schema. Databases created from create.sql before migrations existed already have
+-- these tables, so each one is only created when it is missing.
+-- The broken foreign key of Appointments.vid is left to V4.
+IF OBJECT_ID('Patients', 'U') IS NULL
+CREATE TABLE Patients (
+    Username varchar(255) PRIMARY KEY,
+    Salt BINARY(16),
+    Hash BINARY(16)
+);
+
+IF OBJECT_ID('Caregivers', 'U') IS NULL
+CREATE TABLE Caregivers (
+    Username varchar(255),
+    Salt BINARY(16),
+    Hash BINARY(16),
+    PRIMARY KEY (Username)
+);
+
+IF OBJECT_ID('Availabilities', 'U') IS NULL
+CREATE TABLE Availabilities (
+    Time date,
+    Username varchar(255) REFERENCES Caregivers,
+    PRIMARY KEY (Time, Username)
+);
+
+IF OBJECT_ID('Vaccines', 'U') IS NULL
+CREATE TABLE Vaccines (
+    Name varchar(255),
+    Doses int,
+    PRIMARY KEY (Name)
+);
+
+IF OBJECT_ID('Appointments', 'U') IS NULL
+CREATE TABLE Appointments (
+    aid varchar(255) PRIMARY KEY,
+    Time date,
+    pid varchar(255),
+    cid varchar(255),
+    vid varchar(255)
+);
@@ -0,0 +1,6 @@
+-- Hash parameters of each account (see PasswordHasher); rows without them are legacy hashes.
+IF COL_LENGTH('Patients', 'HashAlgo') IS NULL
+ALTER TABLE Patients ADD HashAlgo varchar(32), Iterations int;
+
+IF COL_LENGTH('Caregivers', 'HashAlgo') IS NULL
+ALTER TABLE Caregivers ADD HashAlgo varchar(32), Iterations int;
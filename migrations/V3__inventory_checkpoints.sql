@@ -0,0 +1,7 @@
+-- Journal sequence each node has written its inventory deltas up to (see InventoryService).
+IF OBJECT_ID('InventoryCheckpoints', 'U') IS NULL
+CREATE TABLE InventoryCheckpoints (
+    Node varchar(255),
+    Seq bigint,
+    PRIMARY KEY (Node)
+);
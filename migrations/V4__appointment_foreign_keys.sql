@@ -0,0 +1,23 @@
+-- create.sql pointed Appointments.vid at a table named Vaccine, which does not exist, so the
+-- Appointments table either failed to create or was created without its foreign keys.
+-- Add each key of Appointments unless an equivalent one is already there.
+IF NOT EXISTS (SELECT 1 FROM sys.foreign_key_columns fkc
+               JOIN sys.columns c ON c.object_id = fkc.parent_object_id AND c.column_id = fkc.parent_column_id
+               WHERE fkc.parent_object_id = OBJECT_ID('Appointments') AND c.name = 'pid'
+                 AND fkc.referenced_object_id = OBJECT_ID('Patients'))
+ALTER TABLE Appointments WITH CHECK
+    ADD CONSTRAINT FK_Appointments_Patients FOREIGN KEY (pid) REFERENCES Patients (Username);
+
+IF NOT EXISTS (SELECT 1 FROM sys.foreign_key_columns fkc
+               JOIN sys.columns c ON c.object_id = fkc.parent_object_id AND c.column_id = fkc.parent_column_id
+               WHERE fkc.parent_object_id = OBJECT_ID('Appointments') AND c.name = 'cid'
+                 AND fkc.referenced_object_id = OBJECT_ID('Caregivers'))
+ALTER TABLE Appointments WITH CHECK
+    ADD CONSTRAINT FK_Appointments_Caregivers FOREIGN KEY (cid) REFERENCES Caregivers (Username);
+
+IF NOT EXISTS (SELECT 1 FROM sys.foreign_key_columns fkc
+               JOIN sys.columns c ON c.object_id = fkc.parent_object_id AND c.column_id = fkc.parent_column_id
+               WHERE fkc.parent_object_id = OBJECT_ID('Appointments') AND c.name = 'vid'
+                 AND fkc.referenced_object_id = OBJECT_ID('Vaccines'))
+ALTER TABLE Appointments WITH CHECK
+    ADD CONSTRAINT FK_Appointments_Vaccines FOREIGN KEY (vid) REFERENCES Vaccines (Name);
@@ -0,0 +1,14 @@
+-- Indexes for the per-user queries; each covers its query, so it is answered from the index alone.
+-- show_appointments for patients: their appointments in aid order
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE object_id = OBJECT_ID('Appointments') AND name = 'IX_Appointments_pid')
+CREATE INDEX IX_Appointments_pid ON Appointments (pid, aid) INCLUDE (Time, cid, vid);
+
+-- show_appointments for caregivers
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE object_id = OBJECT_ID('Appointments') AND name = 'IX_Appointments_cid')
+CREATE INDEX IX_Appointments_cid ON Appointments (cid, aid) INCLUDE (Time, pid, vid);
+
+-- The primary key of Availabilities is already (Time, Username), which serves the lookups by date
+-- and the deletes of reserve. A caregiver's dates (range upload, the workload check) need the
+-- other order.
+IF NOT EXISTS (SELECT 1 FROM sys.indexes WHERE object_id = OBJECT_ID('Availabilities') AND name = 'IX_Availabilities_Username')
+CREATE INDEX IX_Availabilities_Username ON Availabilities (Username, Time);
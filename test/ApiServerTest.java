@@ -0,0 +1,172 @@
+package scheduler.http;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import scheduler.SessionRegistry;
+import scheduler.util.JsonReader;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The endpoints over real HTTP, against the memory backend the test task runs with. Every test
+// makes its own accounts, since the backend is shared by the whole run.
+class ApiServerTest {
+    private static final Pattern APPOINTMENT_ID = Pattern.compile("\"appointmentId\":\"([^\"]+)\"");
+    private static final Pattern NEXT = Pattern.compile("\"next\":\"([^\"]+)\"");
+    private static final AtomicInteger NAMES = new AtomicInteger();
+
+    private static ApiServer api;
+    private static HttpClient client;
+
+    @BeforeAll
+    static void start() throws IOException {
+        api = new ApiServer(0, new SessionRegistry(60_000));
+        api.start();
+        client = HttpClient.newHttpClient();
+    }
+
+    @AfterAll
+    static void stop() {
+        api.stop(0);
+    }
+
+    @Test
+    void rejectsMissingAndUnknownTokens() throws Exception {
+        assertEquals(401, send("GET", "/appointments", null, null).statusCode());
+        assertEquals(401, send("GET", "/schedule?date=2031-01-01", "no-such-token", null).statusCode());
+        assertEquals(401, send("DELETE", "/sessions", "no-such-token", null).statusCode());
+    }
+
+    @Test
+    void rejectsWrongPasswords() throws Exception {
+        String patient = createAccount("patients");
+        HttpResponse<String> response = send("POST", "/sessions/patient", null,
+                "{\"username\":\"" + patient + "\",\"password\":\"Wr0ng!pass\"}");
+        assertEquals(401, response.statusCode());
+        assertEquals("Login failed.", JsonReader.parseObject(response.body()).get("error"));
+    }
+
+    @Test
+    void keepsPatientsAndCaregiversToTheirOwnEndpoints() throws Exception {
+        String patient = login("patient", createAccount("patients"));
+        String caregiver = login("caregiver", createAccount("caregivers"));
+        assertEquals(403, send("POST", "/vaccines/Pfizer/doses", patient, "{\"doses\":5}").statusCode());
+        assertEquals(403, send("POST", "/availabilities", patient, "{\"date\":\"2031-01-01\"}").statusCode());
+        assertEquals(403, send("POST", "/reservations", caregiver,
+                "{\"date\":\"2031-01-01\",\"vaccine\":\"Pfizer\"}").statusCode());
+    }
+
+    @Test
+    void loggingOutEndsTheSession() throws Exception {
+        String token = login("patient", createAccount("patients"));
+        assertEquals(204, send("DELETE", "/sessions", token, null).statusCode());
+        assertEquals(401, send("GET", "/appointments", token, null).statusCode());
+    }
+
+    @Test
+    void refusesNoDosesOrFewer() throws Exception {
+        String caregiver = login("caregiver", createAccount("caregivers"));
+        String vaccine = "vax" + NAMES.incrementAndGet();
+        assertEquals(400, send("POST", "/vaccines/" + vaccine + "/doses", caregiver, "{\"doses\":0}").statusCode());
+        assertEquals(400, send("POST", "/vaccines/" + vaccine + "/doses", caregiver, "{\"doses\":-3}").statusCode());
+        assertEquals(400, send("POST", "/vaccines/" + vaccine + "/doses", caregiver, "{\"doses\":\"x\"}").statusCode());
+        HttpResponse<String> added = send("POST", "/vaccines/" + vaccine + "/doses", caregiver, "{\"doses\":7}");
+        assertEquals(200, added.statusCode());
+        assertEquals("7", JsonReader.parseObject(added.body()).get("doses"));
+    }
+
+    @Test
+    void pagesThroughAppointments() throws Exception {
+        String caregiver = login("caregiver", createAccount("caregivers"));
+        String vaccine = "vax" + NAMES.incrementAndGet();
+        assertEquals(200, send("POST", "/vaccines/" + vaccine + "/doses", caregiver, "{\"doses\":10}").statusCode());
+        String patient = login("patient", createAccount("patients"));
+        // a year of its own, so other tests' caregivers do not take these bookings
+        LocalDate first = LocalDate.of(2040 + NAMES.incrementAndGet() % 50, 3, 1);
+        List<String> booked = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            String date = first.plusDays(i).toString();
+            assertEquals(201, send("POST", "/availabilities", caregiver, "{\"date\":\"" + date + "\"}").statusCode());
+            HttpResponse<String> reserved = send("POST", "/reservations", patient,
+                    "{\"date\":\"" + date + "\",\"vaccine\":\"" + vaccine + "\"}");
+            assertEquals(201, reserved.statusCode(), reserved.body());
+            booked.add(JsonReader.parseObject(reserved.body()).get("appointmentId"));
+        }
+
+        List<String> seen = new ArrayList<>();
+        String after = null;
+        int pages = 0;
+        do {
+            HttpResponse<String> page = send("GET", "/appointments?limit=2" + (after == null ? "" : "&after=" + after),
+                    patient, null);
+            assertEquals(200, page.statusCode());
+            Matcher ids = APPOINTMENT_ID.matcher(page.body());
+            int count = 0;
+            while (ids.find()) {
+                seen.add(ids.group(1));
+                count++;
+            }
+            assertTrue(count <= 2, page.body());
+            Matcher next = NEXT.matcher(page.body());
+            after = next.find() ? next.group(1) : null;
+            pages++;
+        } while (after != null && pages < 10);
+        assertNull(after);
+        assertEquals(5, seen.size());
+        assertEquals(new HashSet<>(booked), new HashSet<>(seen));
+
+        HttpResponse<String> fromThird = send("GET", "/appointments?from=" + first.plusDays(2), patient, null);
+        assertEquals(200, fromThird.statusCode());
+        Matcher ids = APPOINTMENT_ID.matcher(fromThird.body());
+        int count = 0;
+        while (ids.find()) {
+            count++;
+        }
+        assertEquals(3, count);
+        assertFalse(NEXT.matcher(fromThird.body()).find());
+
+        assertEquals(400, send("GET", "/appointments?limit=0", patient, null).statusCode());
+    }
+
+    private static String createAccount(String kind) throws Exception {
+        String username = "api" + kind.charAt(0) + NAMES.incrementAndGet() + "_" + System.nanoTime();
+        HttpResponse<String> response = send("POST", "/" + kind, null,
+                "{\"username\":\"" + username + "\",\"password\":\"Passw0rd!x\"}");
+        assertEquals(201, response.statusCode(), response.body());
+        return username;
+    }
+
+    private static String login(String role, String username) throws Exception {
+        HttpResponse<String> response = send("POST", "/sessions/" + role, null,
+                "{\"username\":\"" + username + "\",\"password\":\"Passw0rd!x\"}");
+        assertEquals(200, response.statusCode(), response.body());
+        Map<String, String> body = JsonReader.parseObject(response.body());
+        return body.get("token");
+    }
+
+    private static HttpResponse<String> send(String method, String path, String token, String body) throws Exception {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create("http://localhost:" + api.getPort() + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body));
+        if (token != null) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
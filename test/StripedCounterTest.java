@@ -0,0 +1,145 @@
+package scheduler.util;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StripedCounterTest {
+    private static final int THREADS = 8;
+
+    @Test
+    void startsWithTheWholeValue() {
+        StripedCounter counter = new StripedCounter(8, 1003);
+        assertEquals(1003, counter.sum());
+        // every stripe got a share, so all of it can be taken one at a time
+        for (int i = 0; i < 1003; i++) {
+            assertTrue(counter.tryDecrement());
+        }
+        assertFalse(counter.tryDecrement());
+        assertEquals(0, counter.sum());
+    }
+
+    @Test
+    void takesAllOrNothing() {
+        StripedCounter counter = new StripedCounter(4, 10);
+        assertFalse(counter.tryDecrement(11));
+        assertEquals(10, counter.sum());
+        assertTrue(counter.tryDecrement(10));
+        assertEquals(0, counter.sum());
+        assertThrows(IllegalArgumentException.class, () -> counter.tryDecrement(0));
+        assertThrows(IllegalArgumentException.class, () -> counter.add(-1));
+    }
+
+    // threads race to take everything, one or several at a time: exactly the starting value is
+    // taken, and nothing is left
+    @RepeatedTest(20)
+    void neverGoesBelowZero() throws InterruptedException {
+        long initial = 100_000;
+        StripedCounter counter = new StripedCounter(8, initial);
+        AtomicLong taken = new AtomicLong();
+        run(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (true) {
+                int n = 1 + random.nextInt(3);
+                if (counter.tryDecrement(n)) {
+                    taken.addAndGet(n);
+                } else if (!counter.tryDecrement()) {
+                    return;
+                } else {
+                    taken.incrementAndGet();
+                }
+            }
+        });
+        assertEquals(initial, taken.get());
+        assertEquals(0, counter.sum());
+    }
+
+    // Takes that are bound to fail collect from every stripe and give it back, while other threads
+    // take a little and put it back. There is always more than those can hold between them, so
+    // they must never be refused.
+    @RepeatedTest(20)
+    void neverFalselyRefuses() throws InterruptedException {
+        int takers = THREADS / 2;
+        long initial = 3L * takers + 1;
+        StripedCounter counter = new StripedCounter(8, initial);
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicLong refused = new AtomicLong();
+        AtomicLong taken = new AtomicLong();
+        List<Runnable> tasks = new ArrayList<>();
+        for (int t = 0; t < THREADS - takers; t++) {
+            tasks.add(() -> {
+                while (!stop.get()) {
+                    assertFalse(counter.tryDecrement(initial + 1));
+                }
+            });
+        }
+        for (int t = 0; t < takers; t++) {
+            int n = 1 + t % 3;
+            tasks.add(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    if (counter.tryDecrement(n)) {
+                        taken.incrementAndGet();
+                        counter.add(n);
+                    } else {
+                        refused.incrementAndGet();
+                    }
+                }
+            });
+        }
+        CountDownLatch takersDone = new CountDownLatch(takers);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            Runnable task = tasks.get(i);
+            boolean taker = i >= THREADS - takers;
+            threads.add(new Thread(() -> {
+                try {
+                    task.run();
+                } finally {
+                    if (taker) {
+                        takersDone.countDown();
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        takersDone.await();
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, refused.get());
+        assertEquals(takers * 20_000L, taken.get());
+        assertEquals(initial, counter.sum());
+    }
+
+    private static void run(Runnable task) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                task.run();
+            }));
+        }
+        threads.forEach(Thread::start);
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+}